@@ -1,2 +1,9 @@
 #!/bin/bash
-JRE_HOME=/usr
\ No newline at end of file
+JRE_HOME=/usr
+
+# Java options of vyhodb server and command line utilities, for instance
+# page size of storage (must be the same for storage creation and usage):
+# VDB_OPTS=-Dcom.vyhodb.pageSize=4096
+# Count of pages in log segment file, used when storage is created (65536 by default):
+# VDB_OPTS=-Dcom.vyhodb.logSegmentSize=16384
+VDB_OPTS=
\ No newline at end of file
@@ -9,7 +9,7 @@ VDB_BIN=$(dirname $0)
 if [ -f $JRE_HOME/bin/java ]
 then
 	export CLASSPATH=$CLASSPATH:$VDB_BIN/../lib/*
-	"$JRE_HOME/bin/java" com.vyhodb.admin.clu.Backup $@
+	"$JRE_HOME/bin/java" $VDB_OPTS com.vyhodb.admin.clu.Backup $@
 else
 	. $VDB_BIN/no-env.sh
 fi
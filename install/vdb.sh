@@ -15,7 +15,7 @@ cd $VDB_HOME
 if [ -f $JRE_HOME/bin/java ]
 then
 	export CLASSPATH=$CLASSPATH:./lib/*:./services/*
-	"$JRE_HOME/bin/java" -server -XX:CompileThreshold=1 com.vyhodb.server.Standalone $@
+	"$JRE_HOME/bin/java" $VDB_OPTS -server -XX:CompileThreshold=1 com.vyhodb.server.Standalone $@
 else
 	. bin-sh/no-env.sh
 fi
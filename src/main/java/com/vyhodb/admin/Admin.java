@@ -183,6 +183,27 @@ public abstract class Admin {
      */
     public abstract void remoteClearSlave(InetSocketAddress adminAddress) throws IOException;
 
+    /**
+     * Compacts data file of running vyhodb server.
+     * <p>
+     * Moves blocks of records, reachable from root record, into free space
+     * closer to the beginning of data file and cuts free space off the end.
+     * Compaction runs in small Modify transactions, so that server keeps
+     * processing other transactions. Storages created by vyhodb versions
+     * without free space management aren't compacted.
+     * <p>
+     * Server runs compaction in background thread, this method polls its status
+     * and returns when it's finished. If compaction is already running, method
+     * waits for it instead of starting new one.
+     * 
+     * @param adminAddress
+     *            socket address of vyhodb server's Admin component
+     * @return number of bytes cut off the end of space
+     * @throws IOException
+     *             if compaction failed or server doesn't support compaction
+     */
+    public abstract long remoteCompact(InetSocketAddress adminAddress) throws IOException;
+
     /**
      * Returns Log Info of running vyhodb server.
      * 
@@ -28,8 +28,10 @@ import com.vyhodb.admin.LogInfo;
 import com.vyhodb.admin.WrongPageIdException;
 import com.vyhodb.storage.pagefile.IOUtils;
 import com.vyhodb.storage.pagefile.Source;
+import com.vyhodb.storage.pagefile.SourceInflater;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
@@ -42,11 +44,25 @@ import java.util.UUID;
  */
 public final class AdminClient implements Source {
 
+    private static final long COMPACT_POLL_INTERVAL = 100;  // milliseconds
+
     private final long _startTime;
     private final SocketChannel _sc;
     private final ByteBuffer _smallBuffer = ByteBuffer.allocateDirect(Response.SIZE);
+    private final boolean _compression;
+    private SourceInflater _inflater;
+    private boolean _compressedResponse;
     
     public AdminClient(InetSocketAddress adminAddress, InetSocketAddress localAddress) throws IOException {
+        this(adminAddress, localAddress, false);
+    }
+    
+    /**
+     * @param compression if true, data and log pages are requested compressed
+     */
+    public AdminClient(InetSocketAddress adminAddress, InetSocketAddress localAddress, boolean compression) throws IOException {
+        _compression = compression;
+        
         _sc = SocketChannel.open();
         configure(_sc);
         
@@ -78,24 +94,32 @@ public final class AdminClient implements Source {
             } catch(IOException iex) {
             }
         }
+        
+        if (_inflater != null) {
+            try {
+                _inflater.close();
+            } catch(IOException iex) {
+            }
+            _inflater = null;
+        }
     }
     
     public void readOneLogPage(long logPageId) throws IOException, WrongPageIdException
     {
-        Request.newReadOneLogPage(logPageId).send(_sc, _smallBuffer);
+        send(Request.newReadOneLogPage(logPageId));
         Response.receive(_sc, _smallBuffer);
     }
     
     public long syncLog(long next) throws IOException, WrongPageIdException
     {
-        Request.newSyncLog(next).send(_sc, _smallBuffer);
-        return Response.receive(_sc, _smallBuffer).next;
+        send(Request.newSyncLog(next, _compression));
+        return receivePages().next;
     }
     
     public Response readData() throws IOException, WrongPageIdException
     {
-        Request.newReadData().send(_sc, _smallBuffer);
-        return Response.receive(_sc, _smallBuffer);
+        send(Request.newReadData(_compression));
+        return receivePages();
     }
     
     public void checkLastLog(UUID masterLogId, long next, UUID lastTrxId, int lastCrc) throws IOException, WrongPageIdException
@@ -111,12 +135,31 @@ public final class AdminClient implements Source {
 
     @Override
     public int read(ByteBuffer buffer, int offset, int count) throws IOException {
+        if (_compressedResponse) {
+            if (_inflater == null) {
+                _inflater = new SourceInflater(_sc);
+            }
+            return _inflater.read(buffer, offset, count);
+        }
+        
         return IOUtils.readNIO(_sc, buffer, offset, count);
     }
 
     private void send(Request request) throws IOException
     {
         request.send(_sc, _smallBuffer);
+        _compressedResponse = false;
+    }
+    
+    /**
+     * Receives response, which is followed by pages. Pages are read compressed 
+     * only if server confirms it, earlier versions send them uncompressed.
+     */
+    private Response receivePages() throws IOException, WrongPageIdException
+    {
+        final Response response = Response.receive(_sc, _smallBuffer);
+        _compressedResponse = response.isCompressed();
+        return response;
     }
     
     public void shrink(long shrinkStart) throws IOException, WrongPageIdException
@@ -137,6 +180,40 @@ public final class AdminClient implements Source {
         Response.receive(_sc, _smallBuffer);
     }
     
+    /**
+     * Starts compaction on server side and polls its status until it's finished.
+     * 
+     * @return number of reclaimed bytes
+     */
+    public long compact() throws IOException, WrongPageIdException
+    {
+        // Earlier versions don't respond to unknown commands at all
+        send(Request.newPing());
+        final short protocol = Response.receive(_sc, _smallBuffer).protocol;
+        if (protocol < Response.PROTOCOL_COMPACT)
+            throw new IOException("Server doesn't support compaction. Admin protocol version: " + protocol);
+        
+        send(Request.newCompact());
+        final int sequence = Response.receive(_sc, _smallBuffer).sequence;
+        
+        Response status;
+        do {
+            try {
+                Thread.sleep(COMPACT_POLL_INTERVAL);
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException("Interrupted while waiting for compaction.");
+            }
+            
+            send(Request.newCompactStatus());
+            status = Response.receive(_sc, _smallBuffer);
+        } while (status.sequence < sequence);
+        
+        if ((status.flags & Response.FLAG_COMPACT_FAILED) != 0)
+            throw new IOException("Compaction failed on server side. See server log for details.");
+        
+        return status.reclaimed;
+    }
+    
     public LogInfo getLogInfo() throws IOException, WrongPageIdException
     {
         send(Request.newGetLogInfo());
@@ -52,6 +52,7 @@ public class AdminListener implements Runnable {
     private final BufferPool _pool;
     private final Server _parentStorage;
     private final Set<AdminThread> _threads;
+    private final CompactionRunner _compaction;
     
     private volatile boolean _isClosed = false;
     private long _threadCounter;
@@ -62,6 +63,7 @@ public class AdminListener implements Runnable {
         _threads = new HashSet<>();
         _connectionPrefix = connectionPrefix;
         _pageStorage = pageStorage;
+        _compaction = new CompactionRunner(parentStorage, listenerPrefix + ". Compaction");
         
         // Allocates buffer pool
         _pool = new BufferPool(config);
@@ -152,6 +154,10 @@ public class AdminListener implements Runnable {
         }
     }
     
+    CompactionRunner getCompaction() {
+        return _compaction;
+    }
+    
     synchronized void notifyThreadClosed(AdminThread thread) {
         _threads.remove(thread);
     }
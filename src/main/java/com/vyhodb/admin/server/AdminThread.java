@@ -56,6 +56,7 @@ final class AdminThread implements Runnable {
 
     private volatile boolean _isClosed = false;
     private ByteBuffer _buffer;
+    private DestinationDeflater _deflater;
     
     AdminThread(AdminListener parentListener, Server parentStorage, PageStorage pageStorage, SocketChannel sc, BufferPool pool, String threadName)
     {
@@ -105,7 +106,7 @@ final class AdminThread implements Runnable {
                         return;
 
                     case Request.COMMAND_READ_DATA:
-                        readData();
+                        readData(request);
                         break;
                         
                     case Request.COMMAND_CHECK_LOG:
@@ -139,6 +140,14 @@ final class AdminThread implements Runnable {
                     case Request.COMMAND_PING:
                         ping();
                         break; 
+                        
+                    case Request.COMMAND_COMPACT:
+                        compact();
+                        break;
+                        
+                    case Request.COMMAND_COMPACT_STATUS:
+                        compactStatus();
+                        break;
                 }
             }
         }
@@ -159,6 +168,14 @@ final class AdminThread implements Runnable {
             if (_buffer != null) 
                 _pool.returnBuffer(_buffer);
             
+            // Releases deflater
+            if (_deflater != null) {
+                try {
+                    _deflater.close();
+                } catch (IOException ex) {
+                }
+            }
+            
             // Closes socket
             close();
         }
@@ -167,18 +184,18 @@ final class AdminThread implements Runnable {
     }
     
     @SuppressWarnings("resource")
-    private void readData() throws IOException
+    private void readData(Request request) throws IOException
     {
         // Sends response
         LogInfo logInfo = _pageStorage.getLogInfo();
-        Response.newReadData(logInfo).send(_sc, _buffer);
+        Response.newReadData(logInfo, request.isCompressed()).send(_sc, _buffer);
         
         // Reads and sends pages
         final long dataLength = logInfo.getDataLength();
         if (dataLength > 0)
         {
             Source source = new SourceBackupData(_pageStorage);
-            Destination destination = new DestinationNIO(_sc);
+            Destination destination = newDestination(request);
             destination.transferFrom(source, _buffer, dataLength);
         }
     }
@@ -196,18 +213,30 @@ final class AdminThread implements Runnable {
         }
 
         // Sends response
-        Response.newSyncLog(logInfo).send(_sc, _buffer);
+        Response.newSyncLog(logInfo, request.isCompressed()).send(_sc, _buffer);
         
         // Sends log pages
         final long count = logInfo.getNext() - request.next;
         if (count > 0)
         {
             Source source = new SourceLog(_pageStorage, request.next);
-            Destination destination = new DestinationNIO(_sc);
+            Destination destination = newDestination(request);
             destination.transferFrom(source, _buffer, count);
         }
     }
     
+    private Destination newDestination(Request request)
+    {
+        if (request.isCompressed()) {
+            if (_deflater == null) {
+                _deflater = new DestinationDeflater(_sc);
+            }
+            return _deflater;
+        }
+        
+        return new DestinationNIO(_sc);
+    }
+    
     private void readOneLogPage(Request request) throws WrongPageIdException, IOException
     {
         LogInfo logInfo = _pageStorage.getLogInfo();
@@ -321,6 +350,16 @@ final class AdminThread implements Runnable {
         send(Response.newGetInfo(logInfo));
     }
     
+    private void compact() throws IOException
+    {
+        send(Response.newCompact(_parentListener.getCompaction().start()));
+    }
+    
+    private void compactStatus() throws IOException
+    {
+        send(_parentListener.getCompaction().getStatus());
+    }
+    
     private void ping() throws IOException
     {
         send(Response.newOk());
@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.admin.server;
+
+import com.vyhodb.server.Loggers;
+import com.vyhodb.server.Server;
+import com.vyhodb.storage.space.modify.Compactor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs space compaction in background thread, so that admin connection isn't 
+ * blocked for the whole compaction. Only one compaction runs at a time, clients 
+ * poll its status by sequence number.
+ *
+ * @author Igor Vykhodtcev
+ */
+final class CompactionRunner implements Runnable {
+    private final Logger _logger = LoggerFactory.getLogger(Loggers.LOGGER_NAME_ADMIN);
+    private final Server _parentStorage;
+    private final String _threadName;
+    
+    private Thread _thread;
+    private int _started;
+    private int _finished;
+    private long _reclaimed;
+    private boolean _failed;
+    
+    CompactionRunner(Server parentStorage, String threadName)
+    {
+        _parentStorage = parentStorage;
+        _threadName = threadName;
+    }
+    
+    /**
+     * Starts new compaction, if there is no running one.
+     * 
+     * @return sequence number of started or running compaction
+     */
+    synchronized int start()
+    {
+        if (_thread == null) {
+            _started++;
+            _thread = new Thread(this, _threadName);
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+        return _started;
+    }
+    
+    synchronized Response getStatus()
+    {
+        return Response.newCompactStatus(_finished, _reclaimed, _failed);
+    }
+    
+    @Override
+    public void run() {
+        Compactor compactor = new Compactor(_parentStorage);
+        boolean failed = true;
+        try
+        {
+            compactor.compact();
+            failed = false;
+            _logger.info("Compaction completed. Relocated containers: {}, reclaimed bytes: {}", compactor.getRelocated(), compactor.getReclaimed());
+        }
+        catch(RuntimeException ex)
+        {
+            _logger.warn("Compaction failed", ex);
+        }
+        finally
+        {
+            // Status is updated even if thread dies by Error, so next compaction can be started
+            synchronized (this) {
+                _finished = _started;
+                _reclaimed = compactor.getReclaimed();
+                _failed = failed;
+                _thread = null;
+            }
+        }
+    }
+}
@@ -40,6 +40,10 @@ public final class Request {
     public static final int PREAMBULA = -19134761; 
     public static final int SIZE = 68;
     
+    // Pages are sent compressed in response to READ_DATA and SYNC_LOG commands, 
+    // if server supports it, see Response.FLAG_COMPRESSED
+    public static final short FLAG_COMPRESSED = 1;
+    
     public static final int COMMAND_CLOSE = 1;
     public static final int COMMAND_READ_DATA = 2;
     public static final int COMMAND_SYNC_LOG = 3;
@@ -50,6 +54,8 @@ public final class Request {
     public static final int COMMAND_CLEAR_SLAVE = 8;
     public static final int COMMAND_STORAGE_CLOSE = 9;
     public static final int COMMAND_PING = 10;
+    public static final int COMMAND_COMPACT = 11;
+    public static final int COMMAND_COMPACT_STATUS = 12;
     
     public int command;
     public UUID masterLogId = PrimitiveUtils.UUID_ZERO;
@@ -60,6 +66,11 @@ public final class Request {
     public long shrinkStart;
     public long storageCloseTimeout;
     
+    // Extension is sent in place of lastTrxId, which is used by CHECK_LOG only, 
+    // so requests of earlier versions are read as protocol version 0 without flags.
+    public short protocol = Response.PROTOCOL_VERSION;
+    public short flags;
+    
     private void read(ByteBuffer buffer) throws IOException
     {
         if (buffer.getInt() != PREAMBULA)
@@ -68,6 +79,9 @@ public final class Request {
         command = buffer.getInt();
         masterLogId = PrimitiveUtils.getUUID(buffer);
         next = buffer.getLong();
+        final int extension = buffer.position();
+        protocol = buffer.getShort(extension);
+        flags = buffer.getShort(extension + 2);
         lastTrxId = PrimitiveUtils.getUUID(buffer);
         lastCrc = buffer.getInt();
         shrinkStart = buffer.getLong();
@@ -81,12 +95,32 @@ public final class Request {
         buffer.putInt(command);
         PrimitiveUtils.putUUID(masterLogId, buffer);
         buffer.putLong(next);
-        PrimitiveUtils.putUUID(lastTrxId, buffer);
+        if (PrimitiveUtils.UUID_ZERO.equals(lastTrxId)) {
+            buffer.putShort(protocol);
+            buffer.putShort(flags);
+            buffer.putLong(0L);
+            buffer.putInt(0);
+        }
+        else {
+            PrimitiveUtils.putUUID(lastTrxId, buffer);
+        }
         buffer.putInt(lastCrc);
         buffer.putLong(shrinkStart);
         buffer.putLong(storageCloseTimeout);
     }
     
+    public boolean isCompressed()
+    {
+        return (flags & FLAG_COMPRESSED) != 0;
+    }
+    
+    private void setCompressed(boolean compressed)
+    {
+        if (compressed) {
+            flags |= FLAG_COMPRESSED;
+        }
+    }
+    
     public static Request receive(SocketChannel sc, ByteBuffer buffer) throws IOException
     {
         buffer.clear();
@@ -109,10 +143,11 @@ public final class Request {
         IOUtils.writeNIO(sc, buffer);
     }
 
-    public static Request newReadData()
+    public static Request newReadData(boolean compressed)
     {
         Request request = new Request();
         request.command = COMMAND_READ_DATA;
+        request.setCompressed(compressed);
         return request;
     }
     
@@ -124,11 +159,12 @@ public final class Request {
         return request;
     }
     
-    public static Request newSyncLog(long next)
+    public static Request newSyncLog(long next, boolean compressed)
     {
         Request request = new Request();
         request.command = COMMAND_SYNC_LOG;
         request.next = next;
+        request.setCompressed(compressed);
         return request;
     }
     
@@ -172,6 +208,20 @@ public final class Request {
         return request;
     }
     
+    public static Request newCompact()
+    {
+        Request request = new Request();
+        request.command = COMMAND_COMPACT;
+        return request;
+    }
+    
+    public static Request newCompactStatus()
+    {
+        Request request = new Request();
+        request.command = COMMAND_COMPACT_STATUS;
+        return request;
+    }
+    
     public static Request newClearSlave()
     {
         Request request = new Request();
@@ -42,6 +42,23 @@ public class Response {
     public static final int PREAMBULA = 891568201;
     public static final int SIZE = 76;
     
+    /**
+     * Admin protocol version of this server. Servers, which don't know about 
+     * versions, send zero.
+     */
+    public static final short PROTOCOL_VERSION = 1;
+    
+    /**
+     * Minimal protocol version, which supports COMPACT and COMPACT_STATUS commands.
+     */
+    public static final short PROTOCOL_COMPACT = 1;
+    
+    public static final short FLAG_COMPACT_FAILED = 1;
+    
+    // Pages, which follow READ_DATA and SYNC_LOG responses, are compressed. 
+    // Earlier versions ignore compression request and don't set it.
+    public static final short FLAG_COMPRESSED = 2;
+    
     public static final int RESULT_OK = 1;
     public static final int RESULT_EXCEPTION = 2;
     public static final int RESULT_WRONG_LOG_PAGE_ID = 3;
@@ -59,6 +76,13 @@ public class Response {
     public UUID masterLogId = PrimitiveUtils.UUID_ZERO;
     public boolean successfulStop;
     public short version;
+    
+    // Extension is sent in place of logId, which is used by GET_LOG_INFO only, 
+    // so earlier versions, sending zero logId, are read as protocol version 0.
+    public short protocol = PROTOCOL_VERSION;
+    public short flags;
+    public int sequence;
+    public long reclaimed;
         
     private void read(ByteBuffer buffer) throws IOException, WrongPageIdException
     {
@@ -67,6 +91,11 @@ public class Response {
         
         result = buffer.getInt();
 
+        final int extension = buffer.position();
+        protocol = buffer.getShort(extension);
+        flags = buffer.getShort(extension + 2);
+        sequence = buffer.getInt(extension + 4);
+        reclaimed = buffer.getLong(extension + 8);
         logId = PrimitiveUtils.getUUID(buffer);
         start = buffer.getLong();
         checkpoint = buffer.getLong();
@@ -85,7 +114,15 @@ public class Response {
         buffer.putInt(PREAMBULA);
         buffer.putInt(result);
         
-        PrimitiveUtils.putUUID(logId, buffer);
+        if (PrimitiveUtils.UUID_ZERO.equals(logId)) {
+            buffer.putShort(protocol);
+            buffer.putShort(flags);
+            buffer.putInt(sequence);
+            buffer.putLong(reclaimed);
+        }
+        else {
+            PrimitiveUtils.putUUID(logId, buffer);
+        }
         buffer.putLong(start);
         buffer.putLong(checkpoint);
         buffer.putLong(next);
@@ -134,7 +171,7 @@ public class Response {
             throw new IOException("Some exception occurred on server side.");
     }
     
-    public static Response newReadData(LogInfo logInfo)
+    public static Response newReadData(LogInfo logInfo, boolean compressed)
     {
         Response response = new Response();
         
@@ -142,11 +179,14 @@ public class Response {
         response.dataLength = logInfo.getDataLength();
         response.next = logInfo.getNext();
         response.masterLogId = logInfo.getLogId();
+        if (compressed) {
+            response.flags |= FLAG_COMPRESSED;
+        }
         
         return response;
     }
     
-    public static Response newSyncLog(LogInfo logInfo)
+    public static Response newSyncLog(LogInfo logInfo, boolean compressed)
     {
         Response response = new Response();
         
@@ -154,10 +194,18 @@ public class Response {
         response.dataLength = logInfo.getDataLength();
         response.next = logInfo.getNext();
         response.masterLogId = logInfo.getLogId();
+        if (compressed) {
+            response.flags |= FLAG_COMPRESSED;
+        }
         
         return response;
     }
     
+    public boolean isCompressed()
+    {
+        return (flags & FLAG_COMPRESSED) != 0;
+    }
+    
     public static Response newWrongLogPage()
     {
         Response response = new Response();
@@ -193,6 +241,32 @@ public class Response {
         return response;
     }
     
+    /**
+     * @param sequence number of started or already running compaction
+     */
+    public static Response newCompact(int sequence)
+    {
+        Response response = new Response();
+        response.result = RESULT_OK;
+        response.sequence = sequence;
+        return response;
+    }
+    
+    /**
+     * @param sequence number of the last finished compaction
+     */
+    public static Response newCompactStatus(int sequence, long reclaimed, boolean failed)
+    {
+        Response response = new Response();
+        response.result = RESULT_OK;
+        response.sequence = sequence;
+        response.reclaimed = reclaimed;
+        if (failed) {
+            response.flags |= FLAG_COMPACT_FAILED;
+        }
+        return response;
+    }
+    
     public static Response newGetInfo(LogInfo logInfo)
     {
         Response response = new Response();
@@ -56,18 +56,20 @@ public abstract class AbstractAgent implements Runnable {
     
     private final InetSocketAddress _masterSocketAddress;
     private final InetSocketAddress _localSocketAddress;
+    private final boolean _compression;
     
     protected final String threadName;
     
     private final ByteBuffer _pageBuffer = ByteBuffer.allocateDirect(PageHeader.PAGE_SIZE);
     
-    protected AbstractAgent(PageStorage pageStorage, String threadName, String masterHost, int masterPort)
+    protected AbstractAgent(PageStorage pageStorage, String threadName, String masterHost, int masterPort, boolean compression)
     {
         
         _pageStorage = pageStorage;
         
         _masterSocketAddress = new InetSocketAddress(masterHost, masterPort);
         _localSocketAddress = new InetSocketAddress(0);
+        _compression = compression;
         
         this.threadName = threadName;
         _thread = new Thread(this, threadName);
@@ -82,7 +84,7 @@ public abstract class AbstractAgent implements Runnable {
     
     protected final AdminClient newReplicationClient() throws IOException
     {
-        return new AdminClient(_masterSocketAddress, _localSocketAddress);
+        return new AdminClient(_masterSocketAddress, _localSocketAddress, _compression);
     }
     
     protected final void checkSlave(AdminClient client) throws IOException, WrongPageIdException, SlaveStoppedException
@@ -161,7 +163,7 @@ public abstract class AbstractAgent implements Runnable {
             // Commits transaction
             if (trxSize > 0) {
                 destination.flush();
-                _pageStorage.commitModify(trxSize);
+                _pageStorage.commitModify(trxSize, destination.getPageCount());
             } 
             else {
                 _pageStorage.rollbackModify();
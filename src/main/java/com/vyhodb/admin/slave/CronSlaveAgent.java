@@ -51,8 +51,8 @@ class CronSlaveAgent extends AbstractAgent {
     private AdminClient _client;
     private volatile boolean _isClosed = false;
     
-    CronSlaveAgent(PageStorage pageStorage, CriticalExceptionHandler criticalExceptionHandler, String threadName, String masterHost, int masterPort, String cron) {
-        super(pageStorage, threadName, masterHost, masterPort);
+    CronSlaveAgent(PageStorage pageStorage, CriticalExceptionHandler criticalExceptionHandler, String threadName, String masterHost, int masterPort, boolean compression, String cron) {
+        super(pageStorage, threadName, masterHost, masterPort, compression);
         
         _criticalExceptionHandler = criticalExceptionHandler;
         _pattern = new SchedulingPattern(cron);
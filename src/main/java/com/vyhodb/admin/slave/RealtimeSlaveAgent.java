@@ -46,8 +46,8 @@ import java.io.IOException;
     private final CriticalExceptionHandler _criticalExceptionHandler;
 
     RealtimeSlaveAgent(PageStorage pageStorage, CriticalExceptionHandler criticalExceptionHandler, String threadName, 
-            String masterHost, int masterPort, long checkTimeout, long connectionTTL) {
-        super(pageStorage, threadName, masterHost, masterPort);
+            String masterHost, int masterPort, boolean compression, long checkTimeout, long connectionTTL) {
+        super(pageStorage, threadName, masterHost, masterPort, compression);
         
         _criticalExceptionHandler = criticalExceptionHandler;
         _checkTimeout = checkTimeout;
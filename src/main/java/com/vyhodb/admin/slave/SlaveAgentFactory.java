@@ -42,12 +42,12 @@ public class SlaveAgentFactory {
         if (mode.equalsIgnoreCase(SLAVE_MODE_REALTIME))
         {
             return new RealtimeSlaveAgent(pageStorage,  criticalExceptionHandler,
-                    "SRA. Realtime", config.getSlaveMasterHost(), config.getSlaveMasterPort(), config.getSlaveCheckTimeout(), config.getSlaveTTL());
+                    "SRA. Realtime", config.getSlaveMasterHost(), config.getSlaveMasterPort(), config.isSlaveCompression(), config.getSlaveCheckTimeout(), config.getSlaveTTL());
         }
         else if (mode.equalsIgnoreCase(SLAVE_MODE_CRON))
         {
             return new CronSlaveAgent(pageStorage, criticalExceptionHandler, 
-                    "SRA. Cron", config.getSlaveMasterHost(), config.getSlaveMasterPort(), config.getSlaveCronString());
+                    "SRA. Cron", config.getSlaveMasterHost(), config.getSlaveMasterPort(), config.isSlaveCompression(), config.getSlaveCronString());
         }
         
         
@@ -36,4 +36,5 @@ public interface SlaveConfig {
     public long getSlaveTTL();
     public long getSlaveCheckTimeout();
     public String getSlaveCronString();
+    public boolean isSlaveCompression();
 }
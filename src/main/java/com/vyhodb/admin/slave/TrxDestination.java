@@ -24,6 +24,7 @@
 
 package com.vyhodb.admin.slave;
 
+import com.vyhodb.storage.pagefile.DeltaPage;
 import com.vyhodb.storage.pagefile.Destination;
 import com.vyhodb.storage.pagefile.PageHeader;
 import com.vyhodb.storage.pagefile.Source;
@@ -33,6 +34,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 /**
+ * Copies master log pages into slave log as is (slave log is identical to master's one), 
+ * delta pages are materialized when transaction is applied.
  *
  * @author Igor Vykhodtcev
  */
@@ -43,6 +46,7 @@ class TrxDestination implements Destination {
     private long _next;
     private long _bufferStart;
     private final int _bufferCapacity;
+    private long _pageCount;
     
     TrxDestination(PageStorage pageStorage, ByteBuffer logBuffer, long next)
     {
@@ -65,9 +69,17 @@ class TrxDestination implements Destination {
         int bufferPos = (int)(logPageId - _bufferStart);
         PageHeader.copyPages(buffer, 0, _logBuffer, bufferPos, 1);
         
+        _pageCount += PageHeader.isDelta(buffer, 0) ? DeltaPage.getRecordCount(buffer, 0) : 1;
         return 1;
     }
     
+    /**
+     * @return count of data page images of written pages
+     */
+    public long getPageCount() {
+        return _pageCount;
+    }
+    
     public void flush() {
         if (_bufferStart != _next) {
             _pageStorage.logAppend(_bufferStart, _logBuffer, (int) (_next - _bufferStart));
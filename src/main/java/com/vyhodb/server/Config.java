@@ -53,18 +53,39 @@ public class Config implements StorageConfig, RsiConfig, AdminConfig, SlaveConfi
     @Prop(name="space.dictionary")
     private String _storageDictionary = EMPTY;
     
+    @Prop(name="space.dictionary.autoSize")
+    private int _storageDictionaryAutoSize = 65536;
+    
     @Prop(name="storage.durable")
     private String _storageDurable = "false";
     
+    @Prop(name="storage.groupCommit.maxBatch")
+    private int _storageGroupCommitMaxBatch = 32;
+    
+    @Prop(name="storage.groupCommit.maxWait")
+    private long _storageGroupCommitMaxWait = 0;    // microseconds
+    
     @Prop(name="storage.cacheSize")
     private int _storageCacheSize = 50000;
     
+    @Prop(name="storage.cacheWays")
+    private int _storageCacheWays = 8;
+    
     @Prop(name="storage.bankCount")
     private int _storageBankCount = 10;
     
     @Prop(name="storage.readDescriptorCount")
     private int _storageReadingQueueLength = 20;
     
+    @Prop(name="storage.dataMapped")
+    private String _storageDataMapped = "false";
+    
+    @Prop(name="storage.cacheWarmup")
+    private String _storageCacheWarmup = "false";
+    
+    @Prop(name="storage.cacheWarmupInterval")
+    private int _storageCacheWarmupInterval = 600;  // seconds
+    
     @Prop(name="storage.modifyBufferSize")
     private int _storageModifyBufferSize = 25000;   // 25mb for 1024 page
     
@@ -83,6 +104,9 @@ public class Config implements StorageConfig, RsiConfig, AdminConfig, SlaveConfi
     @Prop(name="space.record.modifyCacheSize")
     private int _storageRecordModifyCacheSize = 300;
     
+    @Prop(name="space.record.readCacheSize")
+    private int _storageRecordReadCacheSize = 10000;
+    
     @Prop(name="space.mapping.inMemorySize")
     private int _spaceMappingInMemorySize = 3000000;
     
@@ -146,6 +170,9 @@ public class Config implements StorageConfig, RsiConfig, AdminConfig, SlaveConfi
     @Prop(name="slave.cron")
     private String _slaveCron = "60 * * * *"; //
     
+    @Prop(name="slave.compression")
+    private String _slaveCompression = "false";
+    
     public Config(Properties properties) throws IOException {
         apply(properties);
     }
@@ -259,6 +286,16 @@ public class Config implements StorageConfig, RsiConfig, AdminConfig, SlaveConfi
         return toBool(_storageDurable);
     }
 
+    @Override
+    public int getGroupCommitMaxBatch() {
+        return _storageGroupCommitMaxBatch;
+    }
+
+    @Override
+    public long getGroupCommitMaxWait() {
+        return _storageGroupCommitMaxWait;
+    }
+
     @Override
     public boolean isAdminEnabled() {
         return toBool(_adminEnabled);
@@ -313,6 +350,11 @@ public class Config implements StorageConfig, RsiConfig, AdminConfig, SlaveConfi
     public String getSlaveCronString() {
         return _slaveCron;
     }
+    
+    @Override
+    public boolean isSlaveCompression() {
+        return toBool(_slaveCompression);
+    }
 
     @Override
     public int getAdminBufferSize() {
@@ -324,21 +366,51 @@ public class Config implements StorageConfig, RsiConfig, AdminConfig, SlaveConfi
         return _storageRecordModifyCacheSize;
     }
 
+    @Override
+    public int getRecordReadCacheSize() {
+        return _storageRecordReadCacheSize;
+    }
+
     @Override
     public int getBankCount() {
         return _storageBankCount;
     }
 
+    @Override
+    public int getCacheWays() {
+        return _storageCacheWays;
+    }
+
     @Override
     public int getReadingQueueLength() {
         return _storageReadingQueueLength;
     }
 
+    @Override
+    public boolean isDataMapped() {
+        return toBool(_storageDataMapped);
+    }
+
+    @Override
+    public boolean isCacheWarmup() {
+        return toBool(_storageCacheWarmup);
+    }
+
+    @Override
+    public int getCacheWarmupInterval() {
+        return _storageCacheWarmupInterval;
+    }
+
     @Override
     public String getDictionaryFilename() {
         return _storageDictionary;
     }
 
+    @Override
+    public int getDictionaryAutoSize() {
+        return _storageDictionaryAutoSize;
+    }
+
     @Override
     public boolean isBalancerEnabled() {
         return toBool(_rsiBalancerEnabled);
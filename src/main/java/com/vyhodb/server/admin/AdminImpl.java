@@ -30,12 +30,14 @@ import com.vyhodb.admin.server.Response;
 import com.vyhodb.server.Server;
 import com.vyhodb.server.TrxSpace;
 import com.vyhodb.space.Record;
+import com.vyhodb.storage.data.CacheWarmup;
 import com.vyhodb.storage.data.DataFile;
 import com.vyhodb.storage.log.LogFile;
 import com.vyhodb.storage.pagefile.BackupHeader;
 import com.vyhodb.storage.pagefile.Destination;
 import com.vyhodb.storage.pagefile.HeaderFile;
 import com.vyhodb.storage.pagefile.PageHeader;
+import com.vyhodb.storage.rm.BlockManager;
 import com.vyhodb.utils.Utils;
 
 import java.io.IOException;
@@ -65,6 +67,13 @@ public final class AdminImpl extends Admin {
         _localAddress = localAddress;
     }
     
+    @Override
+    public void removeStorageFiles(String logFilename, String dataFilename) throws IOException {
+        super.removeStorageFiles(logFilename, dataFilename);
+        LogFile.deleteSegments(logFilename);
+        CacheWarmup.deleteFile(dataFilename);
+    }
+    
     public void newStorage(String logFilename, String dataFilename) throws IOException
     {
         if (Utils.isEmpty(logFilename)) {
@@ -90,6 +99,8 @@ public final class AdminImpl extends Admin {
             props.setProperty("storage.cacheSize", "0");
             props.setProperty("storage.modifyBufferSize", "5");
             props.setProperty("storage.logBufferSize", "5");
+            // Temporary field name must not be interned into dictionary
+            props.setProperty("space.dictionary.autoSize", "0");
             
             storage = Server.start(props);
             
@@ -140,6 +151,7 @@ public final class AdminImpl extends Admin {
             ByteBuffer emptyPage = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
             PageHeader.emptyPage(emptyPage, 0);
             PageHeader.setPageId(0, emptyPage, 0);
+            BlockManager.initSpaceHeader(emptyPage);
             
             dataFile.position(0L);
             dataFile.write(emptyPage, 0, 1);
@@ -363,8 +375,9 @@ public final class AdminImpl extends Admin {
             throw new IllegalArgumentException("[listener.getCloseStageListener()] is null");
         }
         
+        // Data and log pages are transferred compressed
         HeaderFile backupFile = new HeaderFile(backupFilename, false);
-        try (AdminClient client = new AdminClient(adminAddress, _localAddress)) {
+        try (AdminClient client = new AdminClient(adminAddress, _localAddress, true)) {
             try {
                 // Reads data
                 dataListener.started();
@@ -435,6 +448,17 @@ public final class AdminImpl extends Admin {
         }
     }
     
+    public long remoteCompact(InetSocketAddress adminAddress) throws IOException
+    {
+        if (adminAddress == null) {
+            throw new IllegalArgumentException("[adminAddress] is null");
+        }
+        
+        try (AdminClient server = new AdminClient(adminAddress, _localAddress)) {
+            return server.compact();
+        }
+    }
+    
     public void remoteStorageClose(InetSocketAddress adminAddress, long storageCloseTimeout) throws IOException
     {
         if (adminAddress == null) {
@@ -494,6 +518,16 @@ public final class AdminImpl extends Admin {
     }
     
     public static LogFile commonShrink(long start, String logFilename, ByteBuffer buffer) throws IOException {
+        // Segmented log is shrinked in place by removing segments below start
+        LogFile logFile = new LogFile(logFilename, true);
+        if (logFile.isSegmented()) {
+            logFile.setSuccessfulStop(false);
+            logFile.shrink(start);
+            return logFile;
+        }
+        logFile.close();
+        
+        // Log of previous version is copied into new segmented one
         final String oldLogFilename = logFilename + ".old";
         
         // Renames old log file and opens it
@@ -33,18 +33,33 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
 
+/**
+ * Server dictionary: built-in names, names from dictionary file (positive codes) 
+ * and names interned automatically (codes go down from {@linkplain #AUTO_CODE_FIRST}).
+ * Automatic names are loaded from storage by {@linkplain TrxDictionary} and are 
+ * replaced as a whole, so readers never lock.
+ */
 public final class DictionaryImpl implements Dictionary {
 
     private static final String FILE_CHARSET = "UTF-8";
     
+    public static final int AUTO_CODE_FIRST = -13;
+    
     private Int2ObjectOpenHashMap<String> _code2string;
     private Object2IntOpenHashMap<String> _string2code;
     
+    private final int _autoSize;
+    private volatile AutoNames _auto = new AutoNames(Collections.<String>emptyList());
+    
     public DictionaryImpl(StorageConfig config) throws IOException {
+        _autoSize = config.getDictionaryAutoSize();
         Properties properties = readProperties(config);
        
         _code2string = new Int2ObjectOpenHashMap<>(properties.size());
@@ -129,12 +144,71 @@ public final class DictionaryImpl implements Dictionary {
 
     @Override
     public int resolve(String fieldName) {
-        return _string2code.getInt(fieldName);
+        final int code = _string2code.getInt(fieldName);
+        return (code != CODE_NOT_EXIST) ? code : _auto.codes.getInt(fieldName);
     }
 
     @Override
     public String resolve(int fieldNameKey) {
-        return _code2string.get(fieldNameKey);
+        final String result = _code2string.get(fieldNameKey);
+        if (result != null || !isAutoCode(fieldNameKey)) 
+            return result;
+        
+        final List<String> names = _auto.names;
+        final int index = toIndex(fieldNameKey);
+        return (index < names.size()) ? names.get(index) : null;
+    }
+    
+    /**
+     * @return max count of automatic names, 0 - names aren't interned
+     */
+    public int getAutoSize() {
+        return _autoSize;
+    }
+    
+    public int getAutoCount() {
+        return _auto.names.size();
+    }
+    
+    public List<String> getAutoNames() {
+        return _auto.names;
+    }
+    
+    /**
+     * Replaces automatic names by specified ones, if they are newer. Names are 
+     * only appended, so newer list is longer.
+     */
+    public synchronized void update(List<String> names) {
+        if (names.size() > _auto.names.size()) {
+            _auto = new AutoNames(names);
+        }
+    }
+    
+    public static boolean isAutoCode(int code) {
+        return code <= AUTO_CODE_FIRST && code != CODE_NOT_EXIST;
+    }
+    
+    public static int toCode(int index) {
+        return AUTO_CODE_FIRST - index;
+    }
+    
+    public static int toIndex(int code) {
+        return AUTO_CODE_FIRST - code;
+    }
+    
+    private static final class AutoNames {
+        private final List<String> names;
+        private final Object2IntOpenHashMap<String> codes;
+        
+        AutoNames(List<String> names) {
+            this.names = Collections.unmodifiableList(new ArrayList<>(names));
+            this.codes = new Object2IntOpenHashMap<>(names.size());
+            this.codes.defaultReturnValue(CODE_NOT_EXIST);
+            
+            for (int i = 0; i < names.size(); i++) {
+                this.codes.put(names.get(i), toCode(i));
+            }
+        }
     }
 
 }
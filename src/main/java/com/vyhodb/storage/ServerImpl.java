@@ -37,6 +37,7 @@ import com.vyhodb.storage.rm.RecordManager;
 import com.vyhodb.storage.space.Dictionary;
 import com.vyhodb.storage.space.modify.TrxSpaceModify;
 import com.vyhodb.storage.space.read.TrxSpaceRead;
+import com.vyhodb.storage.space.readcache.RecordCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,7 +60,8 @@ public final class ServerImpl extends Server implements CriticalExceptionHandler
     private AdminListener _adminServer;
     private AbstractAgent _slaveAgent;
     private PageStorage _pageStorage;
-    private Dictionary _dictionary;
+    private DictionaryImpl _dictionary;
+    private RecordCache _recordCache;
     private volatile boolean _isClosed = false;
     private Thread _shutdownHook;
     private Config _config;
@@ -84,6 +86,10 @@ public final class ServerImpl extends Server implements CriticalExceptionHandler
         try {
             _pageStorage = new PageStorageImpl(this, _config);
             
+            if (_config.getRecordReadCacheSize() > 0) {
+                _recordCache = new RecordCache(_pageStorage.getPageVersions(), _config.getRecordReadCacheSize());
+            }
+            
             if (_config.isAdminEnabled())
             {
                 _adminServer = new AdminListener(this, _pageStorage, "Admin", "Admin connection", _config);
@@ -156,6 +162,10 @@ public final class ServerImpl extends Server implements CriticalExceptionHandler
                 _pageStorage = null;
             }
             
+            if (_recordCache != null) {
+                _logger.info("Record cache statistics. Hits: {}, misses: {}.", _recordCache.getHits(), _recordCache.getMisses());
+            }
+            
             _logger.info("vyhodb server closed.");
         }
     }
@@ -177,9 +187,12 @@ public final class ServerImpl extends Server implements CriticalExceptionHandler
             throw new ServerClosedException();
         }
         
-        PageTrx pTrx = new ReadTrxImpl(_pageStorage);
+        ReadTrxImpl pTrx = new ReadTrxImpl(_pageStorage);
         pTrx.start();
-        return new TrxSpaceRead(buildRM(pTrx));
+        
+        final BlockManager bm = new BlockManager(pTrx);
+        final TrxDictionary dictionary = new TrxDictionary(_dictionary, bm, _config, false);
+        return new TrxSpaceRead(buildRM(bm, dictionary), _recordCache, pTrx.getSnapshot());
         //return new TrxSpaceReadCache(buildRM(pTrx));
     }
 
@@ -193,7 +206,10 @@ public final class ServerImpl extends Server implements CriticalExceptionHandler
         
         PageTrx pTrx = new ModifyTrxImpl(_pageStorage, trxId, _config);
         pTrx.start();
-        return new TrxSpaceModify(buildRM(pTrx), _config);
+        
+        final BlockManager bm = new BlockManager(pTrx);
+        final TrxDictionary dictionary = new TrxDictionary(_dictionary, bm, _config, true);
+        return new TrxSpaceModify(buildRM(bm, dictionary), dictionary, _config);
     }
     
     @Override
@@ -219,11 +235,10 @@ public final class ServerImpl extends Server implements CriticalExceptionHandler
         return _pageStorage.getLogInfo().getNext();
     }
     
-    private RecordManager buildRM(PageTrx pageTrx)
+    private RecordManager buildRM(BlockManager bm, Dictionary dictionary)
     {
-        final BlockManager bm = new BlockManager(pageTrx);
         final Descriptor dm = new Descriptor(bm);
-        return new RecordManager(bm, dm, _dictionary, _config);
+        return new RecordManager(bm, dm, dictionary, _config);
     }
     
     private class Shutdown implements Runnable {
@@ -37,6 +37,13 @@ public interface StorageConfig {
     int getModifyBufferSize();
     
     boolean isDurable();
+    
+    int getGroupCommitMaxBatch();
+    
+    /**
+     * @return max wait in microseconds
+     */
+    long getGroupCommitMaxWait();
 
     String getDataFilename();
 
@@ -50,12 +57,33 @@ public interface StorageConfig {
     
     int getRecordModifyCacheSize();
     
+    /**
+     * @return size (in records) of decoded records cache shared by read transactions, 0 - disabled
+     */
+    int getRecordReadCacheSize();
+    
     int getBankCount();
     
+    int getCacheWays();
+    
     int getReadingQueueLength();
     
+    boolean isDataMapped();
+    
+    boolean isCacheWarmup();
+    
+    /**
+     * @return interval in seconds between saves of cached page ids, 0 - saved on close only
+     */
+    int getCacheWarmupInterval();
+    
     String getDictionaryFilename();
     
+    /**
+     * @return max count of field and link names interned into storage automatically, 0 - disabled
+     */
+    int getDictionaryAutoSize();
+    
     int getMappingInMemorySize();
     String getMappingDirectory();
 }
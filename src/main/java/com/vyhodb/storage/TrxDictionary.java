@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage;
+
+import com.vyhodb.server.TransactionRolledbackException;
+import com.vyhodb.storage.rm.BlockManager;
+import com.vyhodb.storage.rm.Descriptor;
+import com.vyhodb.storage.rm.RecordManager;
+import com.vyhodb.storage.rm.SystemReader;
+import com.vyhodb.storage.rm.SystemWriter;
+import com.vyhodb.storage.space.Container;
+import com.vyhodb.storage.space.Dictionary;
+import com.vyhodb.storage.space.DictionaryContainer;
+import com.vyhodb.storage.space.SpaceInternal;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transaction view of server dictionary.
+ * <p>
+ * Modify transaction interns unknown names: their codes are pending until 
+ * commit, when all automatic names are written into dictionary container, 
+ * so they are logged, replicated and backed up together with records. 
+ * Unknown code (interned by another server, for instance by master) is 
+ * resolved by reloading dictionary container.
+ * 
+ * @author Igor Vykhodtcev
+ */
+public final class TrxDictionary implements Dictionary {
+
+    private final DictionaryImpl _server;
+    private final BlockManager _blockManager;
+    private final StorageConfig _config;
+    private final boolean _modify;
+    
+    private RecordManager _reader;
+    private boolean _reloaded = false;
+    
+    private ArrayList<String> _pending;
+    private Object2IntOpenHashMap<String> _pendingCodes;
+    private int _pendingBase;
+    private List<String> _flushed;
+    
+    public TrxDictionary(DictionaryImpl server, BlockManager blockManager, StorageConfig config, boolean modify) {
+        _server = server;
+        _blockManager = blockManager;
+        _config = config;
+        _modify = modify;
+    }
+    
+    @Override
+    public int resolve(String fieldName) {
+        int code = _server.resolve(fieldName);
+        if (code != CODE_NOT_EXIST || !_modify) 
+            return code;
+        
+        if (_pending != null) {
+            code = _pendingCodes.getInt(fieldName);
+            if (code != CODE_NOT_EXIST) 
+                return code;
+        }
+        
+        return intern(fieldName);
+    }
+
+    @Override
+    public String resolve(int fieldNameKey) {
+        String result = resolve0(fieldNameKey);
+        
+        if (result == null && !_reloaded && DictionaryImpl.isAutoCode(fieldNameKey)) {
+            reload();
+            result = resolve0(fieldNameKey);
+        }
+        
+        return result;
+    }
+    
+    private String resolve0(int code) {
+        final String result = _server.resolve(code);
+        if (result != null || _pending == null) 
+            return result;
+        
+        final int index = DictionaryImpl.toIndex(code) - _pendingBase;
+        return (index >= 0 && index < _pending.size()) ? _pending.get(index) : null;
+    }
+    
+    private int intern(String name) {
+        if (!_blockManager.isDictionarySupported()) 
+            return CODE_NOT_EXIST;
+        
+        // Name might have been interned by previous transaction on other server
+        if (!_reloaded) {
+            reload();
+            
+            final int code = _server.resolve(name);
+            if (code != CODE_NOT_EXIST) 
+                return code;
+        }
+        
+        if (_pending == null) {
+            _pending = new ArrayList<>();
+            _pendingCodes = new Object2IntOpenHashMap<>();
+            _pendingCodes.defaultReturnValue(CODE_NOT_EXIST);
+            _pendingBase = _server.getAutoCount();
+        }
+        
+        final int index = _pendingBase + _pending.size();
+        if (index >= _server.getAutoSize()) 
+            return CODE_NOT_EXIST;
+        
+        final int code = DictionaryImpl.toCode(index);
+        _pending.add(name);
+        _pendingCodes.put(name, code);
+        return code;
+    }
+    
+    private void reload() {
+        _reloaded = true;
+        
+        final long id = _blockManager.getDictionaryId();
+        if (id == SpaceInternal.NULL) 
+            return;
+        
+        // Own record manager, because dictionary is reloaded while 
+        // record is being decoded or encoded
+        if (_reader == null) {
+            _reader = new RecordManager(_blockManager, new Descriptor(_blockManager), _server, _config);
+        }
+        
+        final SystemReader reader = _reader.readRecord(id);
+        if (reader == null || reader.getShort() != Container.CONTAINER_TYPE_DICTIONARY) 
+            throw new TransactionRolledbackException("Dictionary container is corrupted. Id:" + id);
+        
+        final DictionaryContainer container = new DictionaryContainer();
+        container.read(reader);
+        _server.update(container.getNames());
+    }
+    
+    /**
+     * Writes all automatic names into dictionary container. Must be invoked 
+     * by modify transaction after records have been written.
+     */
+    public void flush(RecordManager rm) {
+        if (_pending == null || _pending.isEmpty()) 
+            return;
+        
+        final DictionaryContainer container = new DictionaryContainer();
+        container.addAll(_server.getAutoNames().subList(0, _pendingBase));
+        container.addAll(_pending);
+        
+        long id = _blockManager.getDictionaryId();
+        if (id == SpaceInternal.NULL) {
+            id = rm.newRecord();
+            _blockManager.setDictionaryId(id);
+        }
+        
+        final SystemWriter writer = rm.startUpdate();
+        Container.writeContainer(writer, container);
+        rm.endUpdate(id, SpaceInternal.NULL);
+        
+        _flushed = container.getNames();
+    }
+    
+    /**
+     * Publishes names of committed transaction.
+     */
+    public void committed() {
+        if (_flushed != null) {
+            _server.update(_flushed);
+        }
+    }
+}
@@ -25,60 +25,156 @@
 package com.vyhodb.storage.cache;
 
 import com.vyhodb.storage.pagefile.PageHeader;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Part of set-associative read cache. Consists of sets, each set holds [ways] slots.
+ * Page can be placed in any slot of its set, victim is chosen by CLOCK algorithm
+ * (slot referenced since last pass of the hand gets second chance).
+ * <p>
+ * Writers are serialized by bank monitor. Readers don't lock: each slot has 
+ * version stamp (odd while slot is being written), reader copies page and 
+ * validates stamp afterwards, retrying on conflict. Only after several failed 
+ * attempts reader falls back to bank monitor.
+ * <p>
+ * Memory is split into segments (64 MB of pages each), so bank isn't 
+ * limited by ByteBuffer size. Segment is allocated lazily by the first write 
+ * into it, slots of not allocated segment are empty. Fresh direct memory is 
+ * zeroed, so zero is used as empty slot mark and index needs no initialization 
+ * (page 0 is never stored in bank).
+ * <p>
+ * Neither position nor limit of segment buffers is ever changed, all access is 
+ * done by absolute operations, so they can be shared between threads.
+ * 
+ * @author Igor Vykhodtcev
+ */
 final class Bank {
 
     public static final int LONG_MULTIPLICATOR = 3;
-    public static final long EMPTY = -1L;
+    public static final long EMPTY = 0L;
+    
+    /**
+     * Slots per segment, 64 MB of pages.
+     */
+    public static final int SEGMENT_SHIFT = 26 - PageHeader.PAGE_SIZE_MULTIPLICATOR;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+    
+    private static final int OPTIMISTIC_ATTEMPTS = 4;
     
-    private final int _start;
-    private final ByteBuffer _buffer;
-    private final ByteBuffer _index;
+    private final int _startSet;
+    private final int _ways;
+    private final int _size;
+    private final AtomicReferenceArray<Segment> _segments;
+    private final boolean[] _referenced;
+    private final byte[] _hands;
+    private final AtomicIntegerArray _stamps;
     
-    Bank(int start, int size) {
-        _start = start;
-        _index = ByteBuffer.allocateDirect(size << LONG_MULTIPLICATOR);
-        _buffer = ByteBuffer.allocateDirect(size << PageHeader.PAGE_SIZE_MULTIPLICATOR);
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private long _evictions = 0;
+    
+    Bank(int startSet, int setCount, int ways) {
+        final int size = setCount * ways;
         
-        fillLong(_index, EMPTY, size);
+        _startSet = startSet;
+        _ways = ways;
+        _size = size;
+        _segments = new AtomicReferenceArray<>(((size - 1) >>> SEGMENT_SHIFT) + 1);
+        _referenced = new boolean[size];
+        _hands = new byte[setCount];
+        _stamps = new AtomicIntegerArray(size);
     }
     
-    synchronized boolean getPage(long pageId, int index, ByteBuffer page, int pageIndex)
+    boolean getPage(long pageId, int set, ByteBuffer page, int pageIndex)
     {
-        final int pageOffset = index - _start;
-        final int keyOffset = pageOffset << LONG_MULTIPLICATOR;
-        final long key = _index.getLong(keyOffset);
-                
-        if (key == pageId)
-        {
-            PageHeader.copyPages(_buffer, pageOffset, page, pageIndex, 1);
+        final int offset = pageIndex << PageHeader.PAGE_SIZE_MULTIPLICATOR;
+        
+        page.limit(offset + PageHeader.PAGE_SIZE);
+        return read(pageId, set, page, offset, 0, PageHeader.PAGE_SIZE);
+    }
+    
+    /**
+     * Copies page payload, starting from [offset], into destination buffer 
+     * until destination buffer has no remaining or payload ends.
+     */
+    boolean getPayload(long pageId, int set, int offset, ByteBuffer destBuffer)
+    {
+        final int position = destBuffer.position();
+        final int length = Math.min(PageHeader.PAGE_PAYLOAD - offset, destBuffer.remaining());
+        
+        if (read(pageId, set, destBuffer, position, offset, length)) {
+            destBuffer.position(position + length);
             return true;
         }
-        else
-        {
+        else {
             return false;
         }
     }
     
-    synchronized void putPage(long pageId, int index, ByteBuffer page, int pageIndex)
+    boolean containsPage(long pageId, int set)
+    {
+        return find(pageId, set) >= 0;
+    }
+    
+    private boolean read(long pageId, int set, ByteBuffer dst, int dstOffset, int offset, int length)
+    {
+        int slot;
+        int stamp;
+        
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            slot = find(pageId, set);
+            if (slot < 0) {
+                _misses.increment();
+                return false;
+            }
+            
+            stamp = _stamps.get(slot);
+            if ((stamp & 1) == 0 && getIndex(slot) == pageId) {
+                readSlot(slot, dst, dstOffset, offset, length);
+                
+                VarHandle.acquireFence();
+                if (_stamps.get(slot) == stamp) {
+                    _referenced[slot] = true;
+                    _hits.increment();
+                    return true;
+                }
+            }
+        }
+        
+        return readLocked(pageId, set, dst, dstOffset, offset, length);
+    }
+    
+    synchronized void putPage(long pageId, int set, ByteBuffer page, int pageIndex)
     {
-        final int pageOffset = index - _start;
-        PageHeader.copyPages(page, pageIndex, _buffer, pageOffset, 1);
+        int slot = find(pageId, set);
+        if (slot < 0) {
+            slot = victim(set);
+        }
         
-        final int keyOffset = pageOffset << LONG_MULTIPLICATOR;
-        _index.putLong(keyOffset, pageId);
+        beginWrite(slot);
+        if (getIndex(slot) != pageId) {
+            _referenced[slot] = false;
+            setIndex(slot, pageId);
+        }
+        writeSlot(slot, page, pageIndex);
+        endWrite(slot);
     }
     
-    synchronized boolean removePage(long pageId, int index)
+    synchronized boolean removePage(long pageId, int set)
     {
-        final int pageOffset = index - _start;
-        final int keyOffset = pageOffset << LONG_MULTIPLICATOR;
-        final long key = _index.getLong(keyOffset);
+        final int slot = find(pageId, set);
         
-        if (key == pageId) {
-            _index.putLong(keyOffset, EMPTY);
+        if (slot >= 0) {
+            beginWrite(slot);
+            setIndex(slot, EMPTY);
+            _referenced[slot] = false;
+            endWrite(slot);
             return true;
         }
         else {
@@ -86,11 +182,147 @@ final class Bank {
         }
     }
     
-    private static void fillLong(ByteBuffer buffer, long value, int count) {
-        buffer.clear();
-        for (int i = 0; i < count; i++) {
-            buffer.putLong(value);
+    /**
+     * Adds ids of occupied slots. Doesn't lock, so result is just a hint.
+     */
+    void collectPageIds(LongArrayList pageIds) {
+        long pageId;
+        
+        for (int slot = 0; slot < _size; slot++) {
+            pageId = getIndex(slot);
+            if (pageId != EMPTY) {
+                pageIds.add(pageId);
+            }
+        }
+    }
+    
+    long getHits() {
+        return _hits.sum();
+    }
+    
+    long getMisses() {
+        return _misses.sum();
+    }
+    
+    synchronized long getEvictions() {
+        return _evictions;
+    }
+    
+    /**
+     * Slow path for reader, which failed to validate stamp several times.
+     * Slot can't be modified while monitor is held.
+     */
+    private synchronized boolean readLocked(long pageId, int set, ByteBuffer dst, int dstOffset, int offset, int length) {
+        final int slot = find(pageId, set);
+        
+        if (slot >= 0) {
+            readSlot(slot, dst, dstOffset, offset, length);
+            _referenced[slot] = true;
+            _hits.increment();
+            return true;
+        }
+        else {
+            _misses.increment();
+            return false;
+        }
+    }
+    
+    private void beginWrite(int slot) {
+        _stamps.incrementAndGet(slot);
+        VarHandle.storeStoreFence();
+    }
+    
+    private void endWrite(int slot) {
+        _stamps.incrementAndGet(slot);
+    }
+    
+    private void readSlot(int slot, ByteBuffer dst, int dstOffset, int offset, int length) {
+        final Segment segment = _segments.get(slot >>> SEGMENT_SHIFT);
+        dst.put(dstOffset, segment.pages, ((slot & SEGMENT_MASK) << PageHeader.PAGE_SIZE_MULTIPLICATOR) + offset, length);
+    }
+    
+    private void writeSlot(int slot, ByteBuffer page, int pageIndex) {
+        final int offset = pageIndex << PageHeader.PAGE_SIZE_MULTIPLICATOR;
+        
+        page.limit(offset + PageHeader.PAGE_SIZE);
+        segment(slot).pages.put((slot & SEGMENT_MASK) << PageHeader.PAGE_SIZE_MULTIPLICATOR, page, offset, PageHeader.PAGE_SIZE);
+    }
+    
+    private long getIndex(int slot) {
+        final Segment segment = _segments.get(slot >>> SEGMENT_SHIFT);
+        return (segment == null) ? EMPTY : segment.index.getLong((slot & SEGMENT_MASK) << LONG_MULTIPLICATOR);
+    }
+    
+    private void setIndex(int slot, long pageId) {
+        segment(slot).index.putLong((slot & SEGMENT_MASK) << LONG_MULTIPLICATOR, pageId);
+    }
+    
+    /**
+     * Returns segment of slot, allocating it if necessary. Called under bank monitor.
+     */
+    private Segment segment(int slot) {
+        final int index = slot >>> SEGMENT_SHIFT;
+        Segment segment = _segments.get(index);
+        
+        if (segment == null) {
+            segment = new Segment(Math.min(SEGMENT_MASK + 1, _size - (index << SEGMENT_SHIFT)));
+            _segments.set(index, segment);
+        }
+        
+        return segment;
+    }
+    
+    private int find(long pageId, int set) {
+        final int first = (set - _startSet) * _ways;
+        final int last = first + _ways;
+        
+        for (int slot = first; slot < last; slot++) {
+            if (getIndex(slot) == pageId)
+                return slot;
+        }
+        
+        return -1;
+    }
+    
+    private int victim(int set) {
+        final int setOffset = set - _startSet;
+        final int first = setOffset * _ways;
+        final int last = first + _ways;
+        
+        // Empty slot
+        for (int slot = first; slot < last; slot++) {
+            if (getIndex(slot) == EMPTY)
+                return slot;
+        }
+        
+        // CLOCK
+        int hand = _hands[setOffset];
+        int slot;
+        while (true) {
+            slot = first + hand;
+            hand = (hand + 1 == _ways) ? 0 : hand + 1;
+            
+            if (_referenced[slot]) {
+                _referenced[slot] = false;
+            }
+            else {
+                _hands[setOffset] = (byte) hand;
+                _evictions++;
+                return slot;
+            }
+        }
+    }
+    
+    /**
+     * Page ids and pages of contiguous range of slots.
+     */
+    private static final class Segment {
+        private final ByteBuffer index;
+        private final ByteBuffer pages;
+        
+        Segment(int size) {
+            index = ByteBuffer.allocateDirect(size << LONG_MULTIPLICATOR);
+            pages = ByteBuffer.allocateDirect(size << PageHeader.PAGE_SIZE_MULTIPLICATOR);
         }
-        buffer.clear();
     }
 }
@@ -34,6 +34,29 @@ public interface Cache {
     public boolean getPage(long pageId, ByteBuffer buffer, int pageIndex);
     public void putPage(long pageId, ByteBuffer buffer, int pageIndex);
     
+    /**
+     * Copies payload of cached page, starting from [offset], into destination buffer.
+     * 
+     * @return false if page isn't cached
+     */
+    public boolean getPayload(long pageId, int offset, ByteBuffer destBuffer);
+    
+    /**
+     * Checks presence of page without copying it. Result is just a hint, page
+     * can be evicted right after check.
+     */
+    public boolean containsPage(long pageId);
+    
     public void removePages(ByteBuffer buffer, int offset, int count);
     public void putPages(ByteBuffer buffer, int offset, int count);
+    
+    /**
+     * Returns ids of currently cached pages in no particular order. Result is 
+     * just a hint, used for cache warm-up.
+     */
+    public long[] getPageIds();
+    
+    public long getHits();
+    public long getMisses();
+    public long getEvictions();
 }
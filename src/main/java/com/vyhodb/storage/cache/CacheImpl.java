@@ -26,12 +26,16 @@ package com.vyhodb.storage.cache;
 
 import com.vyhodb.server.Loggers;
 import com.vyhodb.storage.pagefile.PageHeader;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 
 /**
+ * Set-associative read cache. Page is mapped to set (pageId % setCount)
+ * and can occupy any of [ways] slots of it.
+ * <p>
  * Important !!!!!
  * 
  * Don't use HashMap approach for calculating index in hash, namely,
@@ -42,53 +46,75 @@ import java.nio.ByteBuffer;
 public final class CacheImpl implements Cache {
 
     private static final String STORAGE_CACHE_MAX_SIZE = "Specified cache size is more than max supported cache size. Max cache size (in pages):";
-    private static final String BANK_ALLOCATED = "Read cache bank allocated: {} pages";
+    private static final String BANK_RESERVED = "Read cache bank reserved: {} pages";
     
-    public static final int MAX_BANK_SIZE = Integer.MAX_VALUE / PageHeader.PAGE_SIZE - 2;
+    /**
+     * Bank memory is segmented, so its size (in pages) is limited by slot arrays only.
+     */
+    public static final int MAX_BANK_SIZE = Integer.MAX_VALUE - 8;
     public static final int MAX_CACHE_SIZE = Integer.MAX_VALUE - 1;   // In pages
+    public static final int MAX_WAYS = 64;
    
     private final Logger _logger = LoggerFactory.getLogger(Loggers.LOGGER_NAME_SERVER);
     private final int _size;
-    private final int _bankSize;
+    private final int _setCount;
+    private final int _bankSetCount;
     private final ZeroBuffer _zeroBuffer;
     private final Bank[] _banks;
     
-    public CacheImpl(int size, int bankCount) {
+    public CacheImpl(int size, int bankCount, int ways) {
         if (size > MAX_CACHE_SIZE) throw new IllegalArgumentException(STORAGE_CACHE_MAX_SIZE + MAX_CACHE_SIZE);
+        if (ways < 1 || ways > MAX_WAYS) throw new IllegalArgumentException("Illegal cache ways count: " + ways + ". Cache ways count must be: 1 <= [ways] <= " + MAX_WAYS);
+        
+        // Small cache has less ways
+        if (ways > size) {
+            ways = size;
+        }
         
         _size = size;
         if (_size == 0)
         {
-            _bankSize = 0;
+            _setCount = 0;
+            _bankSetCount = 0;
             _banks = null;
             _zeroBuffer = null;
             return;
         }
                 
         _zeroBuffer = new ZeroBuffer();
+        
+        // Set count is rounded up, so configured capacity isn't lost
+        _setCount = size / ways + ((size % ways > 0) ? 1 : 0);
+        if (size % ways > 0) {
+            _logger.info("Read cache size is rounded up to whole sets. Effective cache size: {} pages, ways: {}.", (long) _setCount * ways, ways);
+        }
                 
-        int estimatedBankSize = _size / bankCount;
-        _bankSize = estimatedBankSize > MAX_BANK_SIZE ? MAX_BANK_SIZE : estimatedBankSize;
-        int reminder = size % _bankSize;
-        bankCount = size / _bankSize + ((reminder > 0) ? 1 : 0);
+        int estimatedBankSetCount = _setCount / bankCount;
+        if (estimatedBankSetCount == 0) {
+            estimatedBankSetCount = 1;
+        }
+        final int maxBankSetCount = MAX_BANK_SIZE / ways;
+        _bankSetCount = estimatedBankSetCount > maxBankSetCount ? maxBankSetCount : estimatedBankSetCount;
+        int reminder = _setCount % _bankSetCount;
+        bankCount = _setCount / _bankSetCount + ((reminder > 0) ? 1 : 0);
         
         _banks = new Bank[bankCount];
-        int counter = size;
+        int counter = _setCount;
         int i = 0;
         while (counter > 0)
         {
-            if (counter >= _bankSize)
+            if (counter >= _bankSetCount)
             {
-                _banks[i] = new Bank(i * _bankSize, _bankSize);
-                _logger.debug(BANK_ALLOCATED, _bankSize);
+                _banks[i] = new Bank(i * _bankSetCount, _bankSetCount, ways);
+                _logger.debug(BANK_RESERVED, _bankSetCount * ways);
             }
             else
             {
-                _banks[i] = new Bank(i * _bankSize, counter);
-                _logger.debug(BANK_ALLOCATED, counter);
+                _banks[i] = new Bank(i * _bankSetCount, counter, ways);
+                _logger.debug(BANK_RESERVED, counter * ways);
             }
 
-            counter -= _bankSize;
+            counter -= _bankSetCount;
             i++;
         }
     }
@@ -103,10 +129,42 @@ public final class CacheImpl implements Cache {
             return _zeroBuffer.getPage(buffer, pageIndex);
         }
         
-        int index = (int) (pageId % _size);
-        int bankIndex = index / _bankSize;
+        int set = (int) (pageId % _setCount);
+        int bankIndex = set / _bankSetCount;
         
-        return _banks[bankIndex].getPage(pageId, index, buffer, pageIndex);
+        return _banks[bankIndex].getPage(pageId, set, buffer, pageIndex);
+    }
+
+    @Override
+    public boolean getPayload(long pageId, int offset, ByteBuffer destBuffer) {
+        if (_size == 0) {
+            return false;
+        }
+                    
+        if (pageId == 0) {
+            return _zeroBuffer.getPayload(offset, destBuffer);
+        }
+        
+        int set = (int) (pageId % _setCount);
+        int bankIndex = set / _bankSetCount;
+        
+        return _banks[bankIndex].getPayload(pageId, set, offset, destBuffer);
+    }
+
+    @Override
+    public boolean containsPage(long pageId) {
+        if (_size == 0) {
+            return false;
+        }
+                    
+        if (pageId == 0) {
+            return _zeroBuffer.containsPage();
+        }
+        
+        int set = (int) (pageId % _setCount);
+        int bankIndex = set / _bankSetCount;
+        
+        return _banks[bankIndex].containsPage(pageId, set);
     }
 
     @Override
@@ -120,10 +178,10 @@ public final class CacheImpl implements Cache {
             return;
         }
         
-        int index = (int) (pageId % _size);
-        int bankIndex = index / _bankSize;
+        int set = (int) (pageId % _setCount);
+        int bankIndex = set / _bankSetCount;
         
-        _banks[bankIndex].putPage(pageId, index, buffer, pageIndex);
+        _banks[bankIndex].putPage(pageId, set, buffer, pageIndex);
     }
 
     @Override
@@ -131,10 +189,10 @@ public final class CacheImpl implements Cache {
         if (_size == 0) return;
         
         long pageId;
-        int index;
+        int set;
         int bankIndex;
         
-        for (int i = offset; i < count; i++) {
+        for (int i = offset; i < offset + count; i++) {
             pageId = PageHeader.getPageId(buffer, i);
             
             if (pageId == 0) {
@@ -142,10 +200,10 @@ public final class CacheImpl implements Cache {
                 continue;
             }
             
-            index = (int) (pageId % _size);
-            bankIndex = index / _bankSize;
+            set = (int) (pageId % _setCount);
+            bankIndex = set / _bankSetCount;
             
-            _banks[bankIndex].removePage(pageId, index);
+            _banks[bankIndex].removePage(pageId, set);
         }
     }
 
@@ -153,7 +211,7 @@ public final class CacheImpl implements Cache {
     public void putPages(ByteBuffer buffer, int offset, int count) {
         if (_size == 0) return;
         
-        for (int i = offset; i < count; i++) {
+        for (int i = offset; i < offset + count; i++) {
             putPage(
                     PageHeader.getPageId(buffer, i), 
                     buffer, 
@@ -162,6 +220,53 @@ public final class CacheImpl implements Cache {
         }
     }
 
+    @Override
+    public long[] getPageIds() {
+        LongArrayList pageIds = new LongArrayList();
+        if (_size > 0) {
+            if (_zeroBuffer.containsPage()) {
+                pageIds.add(0L);
+            }
+            for (Bank bank : _banks) {
+                bank.collectPageIds(pageIds);
+            }
+        }
+        return pageIds.toLongArray();
+    }
+
+    @Override
+    public long getHits() {
+        long hits = 0;
+        if (_banks != null) {
+            for (Bank bank : _banks) {
+                hits += bank.getHits();
+            }
+        }
+        return hits;
+    }
+
+    @Override
+    public long getMisses() {
+        long misses = 0;
+        if (_banks != null) {
+            for (Bank bank : _banks) {
+                misses += bank.getMisses();
+            }
+        }
+        return misses;
+    }
+
+    @Override
+    public long getEvictions() {
+        long evictions = 0;
+        if (_banks != null) {
+            for (Bank bank : _banks) {
+                evictions += bank.getEvictions();
+            }
+        }
+        return evictions;
+    }
+
     private class ZeroBuffer {
         private final ByteBuffer _page;
         private boolean _inCache = false;
@@ -185,6 +290,20 @@ public final class CacheImpl implements Cache {
             }
         }
         
+        synchronized boolean getPayload(int offset, ByteBuffer destBuffer) {
+            if (_inCache) {
+                PageHeader.copyPayload(_page, 0, offset, destBuffer);
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+        
+        synchronized boolean containsPage() {
+            return _inCache;
+        }
+        
         synchronized void removePage() {
             _inCache = false;
         }
@@ -0,0 +1,221 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage.data;
+
+import com.vyhodb.server.Loggers;
+import com.vyhodb.storage.pagefile.PageHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Persists ids of cached pages into [dataFilename].warmup file (on close and 
+ * periodically) and reloads those pages in background thread after start.
+ * <p>
+ * Saved ids are sorted and read by runs of contiguous pages, so warm-up is done 
+ * by large sequential reads. File is bound to log id, file of another storage 
+ * (e.g. after restore) is ignored.
+ * 
+ * @author Igor Vykhodtcev
+ */
+public final class CacheWarmup implements Runnable {
+
+    public static final String FILE_SUFFIX = ".warmup";
+    
+    private static final int PREAMBULA = 0x56574D55;
+    private static final int BUFFER_PAGES = 256;
+    
+    private final Logger _logger = LoggerFactory.getLogger(Loggers.LOGGER_NAME_SERVER);
+    private final DataImpl _data;
+    private final Path _path;
+    private final long _interval;
+    
+    private volatile boolean _isClosed = false;
+    private Thread _thread;
+    
+    CacheWarmup(DataImpl data, String dataFilename, int interval) {
+        _data = data;
+        _path = getPath(dataFilename);
+        _interval = interval * 1000L;
+    }
+    
+    synchronized void start() {
+        _thread = new Thread(this, "vyhodb cache warmup");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            warmUp();
+            
+            if (_interval <= 0) 
+                return;
+            
+            while (await()) {
+                save(_path, _data.getLogId(), _data.getCachedPageIds());
+            }
+        }
+        catch(Exception ex) {
+            if (!_isClosed) {
+                _logger.warn("Cache warm-up failed.", ex);
+            }
+        }
+    }
+    
+    private void warmUp() throws IOException {
+        final long[] pageIds = load(_path, _data.getLogId());
+        if (pageIds == null) 
+            return;
+        
+        final long started = System.currentTimeMillis();
+        final long size = _data.size();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_PAGES << PageHeader.PAGE_SIZE_MULTIPLICATOR);
+        
+        Arrays.sort(pageIds);
+        
+        int i = 0;
+        int start;
+        while (i < pageIds.length && !_isClosed) {
+            start = i++;
+            while (i < pageIds.length && pageIds[i] == pageIds[i - 1] + 1) {
+                i++;
+            }
+            
+            // Data file could be shrunk since ids were saved
+            if (pageIds[start] < 0 || pageIds[i - 1] >= size)
+                continue;
+            
+            _data.warmUp(pageIds[start], i - start, buffer);
+        }
+        
+        _logger.info("Cache warm-up finished. Pages: {}, time: {} ms.", pageIds.length, System.currentTimeMillis() - started);
+    }
+    
+    /**
+     * Waits for next periodic save.
+     * 
+     * @return false if warm-up is closed
+     */
+    private synchronized boolean await() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + _interval;
+        long timeout;
+        
+        while (!_isClosed && (timeout = deadline - System.currentTimeMillis()) > 0) {
+            wait(timeout);
+        }
+        
+        return !_isClosed;
+    }
+    
+    /**
+     * Stops background thread and saves ids of cached pages. Thread isn't 
+     * interrupted, because interruption closes data file channel it reads from.
+     */
+    void close() throws IOException {
+        final Thread thread;
+        synchronized (this) {
+            _isClosed = true;
+            thread = _thread;
+            notifyAll();
+        }
+        
+        if (thread != null) {
+            try {
+                thread.join();
+            }
+            catch(InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        save(_path, _data.getLogId(), _data.getCachedPageIds());
+    }
+    
+    public static Path getPath(String dataFilename) {
+        return Paths.get(dataFilename + FILE_SUFFIX);
+    }
+    
+    public static void deleteFile(String dataFilename) throws IOException {
+        Files.deleteIfExists(getPath(dataFilename));
+    }
+    
+    /**
+     * Writes ids into temporary file at first and renames it afterwards, so 
+     * crash during saving doesn't leave broken file.
+     */
+    public static void save(Path path, UUID logId, long[] pageIds) throws IOException {
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(PREAMBULA);
+            out.writeLong(logId.getMostSignificantBits());
+            out.writeLong(logId.getLeastSignificantBits());
+            out.writeInt(pageIds.length);
+            for (long pageId : pageIds) {
+                out.writeLong(pageId);
+            }
+        }
+        
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * @return null if file doesn't exist or belongs to another storage
+     */
+    public static long[] load(Path path, UUID logId) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != PREAMBULA)
+                return null;
+            
+            UUID fileLogId = new UUID(in.readLong(), in.readLong());
+            if (!fileLogId.equals(logId))
+                return null;
+            
+            final long[] pageIds = new long[in.readInt()];
+            for (int i = 0; i < pageIds.length; i++) {
+                pageIds[i] = in.readLong();
+            }
+            return pageIds;
+        }
+        catch(NoSuchFileException nsfe) {
+            return null;
+        }
+    }
+}
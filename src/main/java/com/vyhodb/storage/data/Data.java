@@ -35,19 +35,65 @@ import java.util.UUID;
  * @author Igor Vykhodtcev
  */
 public interface Data {
+    /**
+     * Snapshot which sees all applied page versions.
+     */
+    public static final long LATEST_SNAPSHOT = Long.MAX_VALUE;
+    
     /**
      * 
      * @return data size (minus header page)
      */
     public long size()throws IOException;
     public UUID getLogId();
-    public void readData(long pageId, ByteBuffer buffer, int pageIndex)  throws IOException;
+    public void readData(long pageId, ByteBuffer buffer, int pageIndex, long snapshot)  throws IOException;
+    
+    /**
+     * Copies page payload (starting from [offset]) into destination buffer if page is 
+     * in read cache and isn't overridden by modify buffer for specified snapshot.
+     * 
+     * @return false if nothing has been copied
+     */
+    public boolean readDataCached(long pageId, int offset, ByteBuffer destBuffer, long snapshot);
+    
+    /**
+     * Reads runs of contiguous pages, which are neither in modify buffer nor in read cache, 
+     * from data file by single read operation each and puts them into read cache.
+     * 
+     * @param buffer used for reading, max run length is limited by its size
+     */
+    public void prefetch(long pageId, int count, ByteBuffer buffer, long snapshot) throws IOException;
+    
+    /**
+     * Starts background loading of pages, which were cached before previous close.
+     * Must be called after log recovery.
+     */
+    public void startWarmup();
     public void readDataAdmin(long pageId, ByteBuffer buffer, int pageIndex)  throws IOException;
     
     public long getModifyBufferRemaining();
-    public void apply(Source source, long count) throws IOException;
-    public void applyDirect(Source source, long count) throws IOException;
+    public long getModifyBufferCapacity();
+    
+    /**
+     * @return true if page has been applied to active half of modify buffer
+     */
+    public boolean containsActivePage(long pageId);
+    public void apply(Source source, long count, long version) throws IOException;
+    public void applyDirect(Source source, long count, long version) throws IOException;
+    
+    /**
+     * Versions of the latest modifications of data pages.
+     */
+    public PageVersions getPageVersions();
     public void checkpoint()  throws IOException;
     
+    /**
+     * Cuts data file down to [dataLength] pages. Must be invoked right after 
+     * checkpoint, when modify buffer is empty and no read transaction is active.
+     */
+    public void truncate(long dataLength) throws IOException;
+    public void swapModifyBuffer();
+    public void flushModifyBuffer() throws IOException;
+    
     public void close()  throws IOException;
 }
@@ -27,6 +27,7 @@ package com.vyhodb.storage.data;
 import com.vyhodb.server.PrimitiveUtils;
 import com.vyhodb.storage.pagefile.Header;
 import com.vyhodb.storage.pagefile.HeaderFile;
+import com.vyhodb.storage.pagefile.PageHeader;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -79,18 +80,27 @@ public class DataFile extends HeaderFile {
         
         public UUID logId;
         
+        /**
+         * 0 in data files created before page size became configurable
+         */
+        public int pageSize = PageHeader.PAGE_SIZE;
+        
         @Override
         public void read(ByteBuffer buffer) throws IOException {
             if (HEADER_DATA_PREAMBULA != buffer.getInt())
                 throw new IOException("Wrong data file preambula. Specified data file is corrupted or isn't a proper data file.");
             
             logId = PrimitiveUtils.getUUID(buffer);
+            pageSize = buffer.getInt();
+            
+            PageHeader.checkPageSize(pageSize == 0 ? PageHeader.LEGACY_PAGE_SIZE : pageSize);
         }
 
         @Override
         public void write(ByteBuffer buffer) {
             buffer.putInt(HEADER_DATA_PREAMBULA);
             PrimitiveUtils.putUUID(logId, buffer);
+            buffer.putInt(pageSize);
         }
         
     }
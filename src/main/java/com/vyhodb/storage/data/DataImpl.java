@@ -24,11 +24,15 @@
 
 package com.vyhodb.storage.data;
 
+import com.vyhodb.server.Loggers;
 import com.vyhodb.server.ServerClosedException;
 import com.vyhodb.storage.StorageConfig;
 import com.vyhodb.storage.cache.Cache;
 import com.vyhodb.storage.cache.CacheImpl;
+import com.vyhodb.storage.pagefile.PageHeader;
 import com.vyhodb.storage.pagefile.Source;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -40,15 +44,21 @@ import java.util.UUID;
  */
 public class DataImpl implements Data {
 
+    private final Logger _logger = LoggerFactory.getLogger(Loggers.LOGGER_NAME_SERVER);
     private final SyncDataFile _file;
     private final Cache _readCache;
     private final ModifyCache _modifyCache;
+    private final PageVersions _pageVersions = new PageVersions();
+    private final boolean _isPrefetchEnabled;
+    private final CacheWarmup _warmup;
     private volatile boolean _isClosed = false;
        
     public DataImpl(StorageConfig config) throws IOException {
+        _isPrefetchEnabled = config.getCacheSize() > 0;
         _file = new SyncDataFile(config);
-        _readCache = new CacheImpl(config.getCacheSize(), config.getBankCount());
-        _modifyCache = new ModifyCacheImpl(_file, _readCache, config.getModifyBufferSize());
+        _readCache = new CacheImpl(config.getCacheSize(), config.getBankCount(), config.getCacheWays());
+        _modifyCache = new ModifyCacheImpl(_file, _readCache, _pageVersions, config.getModifyBufferSize());
+        _warmup = (_isPrefetchEnabled && config.isCacheWarmup()) ? new CacheWarmup(this, config.getDataFilename(), config.getCacheWarmupInterval()) : null;
     }
 
     @Override
@@ -57,20 +67,92 @@ public class DataImpl implements Data {
     }
 
     @Override
-    public void readData(long pageId, ByteBuffer buffer, int pageIndex) throws IOException {
+    public void readData(long pageId, ByteBuffer buffer, int pageIndex, long snapshot) throws IOException {
         if (_isClosed) 
             throw new ServerClosedException();
         
-        if (_modifyCache.getPage(pageId, buffer, pageIndex))
+        final long version = _pageVersions.getVersion(pageId);
+        if (_modifyCache.getPage(pageId, buffer, pageIndex, snapshot))
             return;
         
         if (!_readCache.getPage(pageId, buffer, pageIndex))
         {
             _file.readPage(pageId, buffer, pageIndex);
-            _readCache.putPage(pageId, buffer, pageIndex);
+            _modifyCache.putReadPages(buffer, pageIndex, 1, version);
         }
     }
 
+    @Override
+    public boolean readDataCached(long pageId, int offset, ByteBuffer destBuffer, long snapshot) {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        if (_modifyCache.containsPage(pageId, snapshot))
+            return false;
+        
+        return _readCache.getPayload(pageId, offset, destBuffer);
+    }
+
+    @Override
+    public void prefetch(long pageId, int count, ByteBuffer buffer, long snapshot) throws IOException {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        if (!_isPrefetchEnabled)
+            return;
+        
+        // Single missed page is read by regular way
+        load(pageId, count, buffer, snapshot, 2);
+    }
+    
+    /**
+     * Puts pages, which aren't cached yet, into read cache. Used by cache warm-up.
+     */
+    void warmUp(long pageId, int count, ByteBuffer buffer) throws IOException {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        load(pageId, count, buffer, LATEST_SNAPSHOT, 1);
+    }
+    
+    long[] getCachedPageIds() {
+        return _readCache.getPageIds();
+    }
+    
+    /**
+     * Reads runs of not cached pages, runs shorter than [minRun] are skipped. 
+     * Pages modified since loading has started aren't put into read cache, 
+     * checkpoint might have put newer images already.
+     */
+    private void load(long pageId, int count, ByteBuffer buffer, long snapshot, int minRun) throws IOException {
+        final long version = _pageVersions.getVersion(pageId, pageId + count - 1);
+        final int maxRun = PageHeader.getBufferSize(buffer);
+        int i = 0;
+        int start;
+        int run;
+        
+        while (i < count) {
+            while (i < count && isCached(pageId + i, snapshot)) {
+                i++;
+            }
+            
+            start = i;
+            while (i < count && i - start < maxRun && !isCached(pageId + i, snapshot)) {
+                i++;
+            }
+            
+            run = i - start;
+            if (run >= minRun) {
+                _file.readPages(pageId + start, buffer, 0, run);
+                _modifyCache.putReadPages(buffer, 0, run, version);
+            }
+        }
+    }
+    
+    private boolean isCached(long pageId, long snapshot) {
+        return _modifyCache.containsPage(pageId, snapshot) || _readCache.containsPage(pageId);
+    }
+
     /**
      * Tries to read page from cache at first, and from disk at second.
      * Doesn't put read page from disk into cache.
@@ -84,7 +166,7 @@ public class DataImpl implements Data {
         if (_isClosed) 
             throw new ServerClosedException();
             
-        if (_modifyCache.getPage(pageId, buffer, pageIndex))
+        if (_modifyCache.getPage(pageId, buffer, pageIndex, LATEST_SNAPSHOT))
             return;
 
         if (_readCache.getPage(pageId, buffer, pageIndex))
@@ -100,11 +182,36 @@ public class DataImpl implements Data {
         
         _modifyCache.checkpoint();
     }
+    
+    @Override
+    public void truncate(long dataLength) throws IOException {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        _file.truncate(dataLength);
+    }
+
+    @Override
+    public void startWarmup() {
+        if (_warmup != null) {
+            _warmup.start();
+        }
+    }
 
     @Override
     public synchronized void close() throws IOException  {
         if (!_isClosed)
         {
+            if (_warmup != null) {
+                try {
+                    _warmup.close();
+                }
+                catch(IOException ex) {
+                    _logger.warn("Can't save cached page ids.", ex);
+                }
+            }
+            
+            _logger.info("Read cache statistics. Hits: {}, misses: {}, evictions: {}.", _readCache.getHits(), _readCache.getMisses(), _readCache.getEvictions());
             _file.close();
             _isClosed = true;
         }
@@ -119,19 +226,53 @@ public class DataImpl implements Data {
     }
 
     @Override
-    public void apply(Source source, long count) throws IOException {
+    public long getModifyBufferCapacity() {
+        return _modifyCache.getModifyBufferCapacity();
+    }
+    
+    @Override
+    public boolean containsActivePage(long pageId) {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        return _modifyCache.containsActivePage(pageId);
+    }
+    
+    @Override
+    public void swapModifyBuffer() {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        _modifyCache.swap();
+    }
+    
+    @Override
+    public void flushModifyBuffer() throws IOException {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        _modifyCache.flush();
+    }
+
+    @Override
+    public void apply(Source source, long count, long version) throws IOException {
         if (_isClosed) 
             throw new ServerClosedException();
         
-        _modifyCache.apply(source, count);
+        _modifyCache.apply(source, count, version);
     }
     
     @Override
-    public void applyDirect(Source source, long count) throws IOException {
+    public void applyDirect(Source source, long count, long version) throws IOException {
         if (_isClosed) 
             throw new ServerClosedException();
         
-        _modifyCache.applyDirect(source, count);   
+        _modifyCache.applyDirect(source, count, version);   
+    }
+
+    @Override
+    public PageVersions getPageVersions() {
+        return _pageVersions;
     }
 
     @Override
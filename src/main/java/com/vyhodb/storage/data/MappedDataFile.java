@@ -0,0 +1,191 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage.data;
+
+import com.vyhodb.storage.pagefile.Crc;
+import com.vyhodb.storage.pagefile.IOUtils;
+import com.vyhodb.storage.pagefile.PageHeader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read-only view of data file, mapped into memory by segments.
+ * <p>
+ * Segment is mapped lazily, up to current file size. Reading page beyond 
+ * mapped part of segment (file has grown) remaps segment. Mapped segments 
+ * are accessed by absolute operations only, so reads share lock, which is 
+ * taken exclusively by closing only.
+ * <p>
+ * Segments (including replaced by remapping) are unmapped on closing, 
+ * so file isn't locked and address space is released without waiting for GC.
+ * They are unmapped by truncation too, because touching mapped page beyond 
+ * the end of file crashes JVM instead of throwing exception.
+ * 
+ * @author Igor Vykhodtcev
+ */
+final class MappedDataFile {
+
+    public static final int SEGMENT_SIZE_MULTIPLICATOR = 30;    // 1 Gb
+    public static final long SEGMENT_SIZE = 1L << SEGMENT_SIZE_MULTIPLICATOR;
+    
+    private final String _fileName;
+    private final FileChannel _fc;
+    private final ThreadLocal<Crc> _crc = new ThreadLocal<Crc>() {
+        @Override
+        protected Crc initialValue() {
+            return new Crc();
+        }
+    };
+    
+    private volatile MappedByteBuffer[] _segments = new MappedByteBuffer[0];
+    
+    // Segments replaced by remapping can be still read by other threads, guarded by this
+    private final ArrayList<MappedByteBuffer> _replaced = new ArrayList<>();
+    private final ReentrantReadWriteLock _closeLock = new ReentrantReadWriteLock();
+    private boolean _isClosed = false;
+    
+    MappedDataFile(String fileName) throws IOException {
+        _fileName = fileName;
+        _fc = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+    }
+    
+    void readPage(long pageId, ByteBuffer buffer, int pageIndex) throws IOException {
+        _closeLock.readLock().lock();
+        try {
+            if (_isClosed) 
+                throw new ClosedChannelException();
+            
+            readPage0(pageId, buffer, pageIndex);
+        }
+        finally {
+            _closeLock.readLock().unlock();
+        }
+    }
+    
+    private void readPage0(long pageId, ByteBuffer buffer, int pageIndex) throws IOException {
+        // Skips header page
+        final long position = (pageId + 1) << PageHeader.PAGE_SIZE_MULTIPLICATOR;
+        final int segmentIndex = (int) (position >>> SEGMENT_SIZE_MULTIPLICATOR);
+        final int offset = (int) (position & (SEGMENT_SIZE - 1));
+        
+        MappedByteBuffer[] segments = _segments;
+        MappedByteBuffer segment = segmentIndex < segments.length ? segments[segmentIndex] : null;
+        if (segment == null || segment.capacity() < offset + PageHeader.PAGE_SIZE) {
+            segment = remap(segmentIndex, offset + PageHeader.PAGE_SIZE);
+        }
+        
+        final int bufferOffset = pageIndex << PageHeader.PAGE_SIZE_MULTIPLICATOR;
+        buffer.limit(bufferOffset + PageHeader.PAGE_SIZE);
+        buffer.put(bufferOffset, segment, offset, PageHeader.PAGE_SIZE);
+        
+        if (! _crc.get().validateCrc(buffer, pageIndex))
+            throw new IOException(" Wrong page crc . File:" + _fileName + ", pageId:" + pageId);
+    }
+    
+    void close() throws IOException {
+        _closeLock.writeLock().lock();
+        try {
+            if (_isClosed) 
+                return;
+            _isClosed = true;
+            
+            unmapAll();
+            _fc.close();
+        }
+        finally {
+            _closeLock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Truncates data file through its writing file. Reading is blocked until 
+     * segments, which might lie beyond the new end of file, are unmapped. 
+     */
+    void truncate(DataFile file, long pageCount) throws IOException {
+        _closeLock.writeLock().lock();
+        try {
+            if (_isClosed) 
+                throw new ClosedChannelException();
+            
+            unmapAll();
+            file.truncate(pageCount);
+        }
+        finally {
+            _closeLock.writeLock().unlock();
+        }
+    }
+    
+    private synchronized void unmapAll() {
+        for (MappedByteBuffer segment : _segments) {
+            IOUtils.unmap(segment);
+        }
+        for (MappedByteBuffer segment : _replaced) {
+            IOUtils.unmap(segment);
+        }
+        _segments = new MappedByteBuffer[0];
+        _replaced.clear();
+    }
+    
+    private synchronized MappedByteBuffer remap(int segmentIndex, int required) throws IOException {
+        MappedByteBuffer[] segments = _segments;
+        
+        // Other thread could have already remapped it
+        if (segmentIndex < segments.length && segments[segmentIndex] != null && segments[segmentIndex].capacity() >= required) {
+            return segments[segmentIndex];
+        }
+        
+        final long start = ((long) segmentIndex) << SEGMENT_SIZE_MULTIPLICATOR;
+        final long size = Math.min(_fc.size() - start, SEGMENT_SIZE);
+        if (size < required)
+            throw new IOException("Page is beyond the end of data file. File:" + _fileName + ", position:" + (start + required));
+        
+        MappedByteBuffer segment = _fc.map(MapMode.READ_ONLY, start, size);
+        
+        if (segmentIndex >= segments.length) {
+            MappedByteBuffer[] newSegments = new MappedByteBuffer[segmentIndex + 1];
+            System.arraycopy(segments, 0, newSegments, 0, segments.length);
+            segments = newSegments;
+        }
+        else {
+            segments = segments.clone();
+            if (segments[segmentIndex] != null) {
+                _replaced.add(segments[segmentIndex]);
+            }
+        }
+        segments[segmentIndex] = segment;
+        _segments = segments;
+        
+        return segment;
+    }
+}
@@ -37,9 +37,32 @@ import java.nio.ByteBuffer;
 public interface ModifyCache {
     
     public long getModifyBufferRemaining();
-    public void apply(Source source, long count) throws IOException;
-    public void applyDirect(Source source, long count) throws IOException;
+    public long getModifyBufferCapacity();
+    public boolean containsActivePage(long pageId);
+    public void apply(Source source, long count, long version) throws IOException;
+    public void applyDirect(Source source, long count, long version) throws IOException;
     public void checkpoint()  throws IOException;
-    public boolean getPage(long pageId, ByteBuffer buffer, int pageIndex);
+    
+    /**
+     * Makes active half of modify buffer flushing one, previous flushing half must be already flushed.
+     */
+    public void swap();
+    
+    /**
+     * Writes flushing half of modify buffer into data file. Read and apply 
+     * operations aren't blocked.
+     */
+    public void flush() throws IOException;
+    public boolean getPage(long pageId, ByteBuffer buffer, int pageIndex, long snapshot);
+    public boolean containsPage(long pageId, long snapshot);
+    
+    /**
+     * Puts pages read from data file into read cache, unless any of them has been 
+     * modified after specified version: they might have been read before newer 
+     * image was written and put into read cache by checkpoint.
+     * 
+     * @return false if pages haven't been put
+     */
+    public boolean putReadPages(ByteBuffer buffer, int offset, int count, long version);
     
 }
@@ -25,6 +25,7 @@
 package com.vyhodb.storage.data;
 
 import com.vyhodb.storage.cache.Cache;
+import com.vyhodb.storage.pagefile.DeltaPage;
 import com.vyhodb.storage.pagefile.PageHeader;
 import com.vyhodb.storage.pagefile.Source;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
@@ -33,7 +34,18 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 /**
- *
+ * Keeps committed page versions until checkpoint.
+ * <p>
+ * Every slot is tagged by version (log position right after the transaction which
+ * wrote it) and points to previous version of the same page, so read transactions
+ * pinned to older snapshot still see pages they started with.
+ * <p>
+ * Modify buffer is split into two halves. Committed pages are applied to active half,
+ * while another one (flushing) is being written to data file in background.
+ * <p>
+ * Delta log pages are materialized on apply: runs of each record are applied to 
+ * the latest image of data page, so checkpoint writes full pages only.
+ * 
  * @author Igor Vykhodtcev
  */
 public class ModifyCacheImpl implements ModifyCache {
@@ -41,103 +53,280 @@ public class ModifyCacheImpl implements ModifyCache {
     
     private final SyncDataFile _dataFile;
     private final ByteBuffer _pageBuffer;
-    private final ByteBuffer _modifyCache;
+    private final ByteBuffer _deltaBuffer;
     private final Cache _readCache;
+    private final PageVersions _pageVersions;
     
-    private final int _capacity;
-    private int _position;
-        
-    private final Long2IntOpenHashMap _pageMapping;
+    private Generation _active;
+    private Generation _flushing;
+    private boolean _isFlushing = false;
     
-    public ModifyCacheImpl(SyncDataFile dataFile, Cache readCache, int size)
+    public ModifyCacheImpl(SyncDataFile dataFile, Cache readCache, PageVersions pageVersions, int size)
     {
         _dataFile = dataFile;
         _readCache = readCache;
-        
-        _modifyCache = ByteBuffer.allocateDirect(size << PageHeader.PAGE_SIZE_MULTIPLICATOR);
+        _pageVersions = pageVersions;
         _pageBuffer = ByteBuffer.allocateDirect(PageHeader.PAGE_SIZE);
+        _deltaBuffer = ByteBuffer.allocateDirect(PageHeader.PAGE_SIZE);
         
-        _pageMapping = new Long2IntOpenHashMap(size);
-        _pageMapping.defaultReturnValue(NOT_EXISTED_VALUE);
-        
-        _capacity = size;
-        _position = 0;
+        _active = new Generation(size - (size >> 1));
+        _flushing = new Generation(size >> 1);
     }
 
     @Override
-    public synchronized void apply(Source source, long count) throws IOException {
-        int index;
-        long pageId;
+    public synchronized void apply(Source source, long count, long version) throws IOException {
+        int record;
         
         for (long i = 0; i < count; i++) {
             source.read(_pageBuffer, 0, 1);
             
-            pageId = PageHeader.getPageId(_pageBuffer, 0);
-            index = _pageMapping.get(pageId);
-            
-            // Page isn't in
-            if (index == NOT_EXISTED_VALUE)
-            {
-                _readCache.removePages(_pageBuffer, 0, 1);
-                _pageMapping.put(pageId, _position);
-                PageHeader.copyPages(_pageBuffer, 0, _modifyCache, _position, 1);
-                _position++;
+            if (PageHeader.isDelta(_pageBuffer, 0)) {
+                record = DeltaPage.FIRST_RECORD;
+                for (int r = DeltaPage.getRecordCount(_pageBuffer, 0); r > 0; r--) {
+                    readLatest(DeltaPage.getDataPageId(_pageBuffer, 0, record), _deltaBuffer);
+                    record = DeltaPage.apply(_pageBuffer, 0, record, _deltaBuffer, 0);
+                    applyPage(_deltaBuffer, version);
+                }
+            }
+            else {
+                applyPage(_pageBuffer, version);
             }
-            // Page is in
-            else
-            {
-                PageHeader.copyPages(_pageBuffer, 0, _modifyCache, index, 1);
+        }
+    }
+    
+    private void applyPage(ByteBuffer page, long version) {
+        final Generation active = _active;
+        final long pageId = PageHeader.getPageId(page, 0);
+        final int index = active.mapping.get(pageId);
+        _pageVersions.modified(pageId, version);
+        
+        // Page has been already written by the same transaction
+        if (index != NOT_EXISTED_VALUE && active.versions[index] == version)
+        {
+            PageHeader.copyPages(page, 0, active.pages, index, 1);
+        }
+        // New page version
+        else
+        {
+            if (index == NOT_EXISTED_VALUE && !(_isFlushing && _flushing.mapping.containsKey(pageId))) {
+                _readCache.removePages(page, 0, 1);
             }
+            
+            active.add(pageId, page, version, index);
         }
     }
     
+    /**
+     * Reads the latest image of page, which delta is applied to.
+     */
+    private void readLatest(long pageId, ByteBuffer buffer) throws IOException {
+        if (_active.find(pageId, Data.LATEST_SNAPSHOT, buffer, 0))
+            return;
+        
+        if (_isFlushing && _flushing.find(pageId, Data.LATEST_SNAPSHOT, buffer, 0))
+            return;
+        
+        if (_readCache.getPage(pageId, buffer, 0))
+            return;
+        
+        _dataFile.readPage(pageId, buffer, 0);
+    }
+    
     @Override
-    public void applyDirect(Source source, long count) throws IOException {
+    public void applyDirect(Source source, long count, long version) throws IOException {
         if (! isEmpty()) throw new IllegalStateException("direct apply can be started only on empty modify buffer (after checkpoint)");
         
+        int record;
+        
         for (long i = 0; i < count; i++) {
             source.read(_pageBuffer, 0, 1);
-            _readCache.removePages(_pageBuffer, 0, 1);
-            _dataFile.apply(_pageBuffer, 0, 1);
+            
+            if (PageHeader.isDelta(_pageBuffer, 0)) {
+                record = DeltaPage.FIRST_RECORD;
+                for (int r = DeltaPage.getRecordCount(_pageBuffer, 0); r > 0; r--) {
+                    readLatest(DeltaPage.getDataPageId(_pageBuffer, 0, record), _deltaBuffer);
+                    record = DeltaPage.apply(_pageBuffer, 0, record, _deltaBuffer, 0);
+                    applyPageDirect(_deltaBuffer, version);
+                }
+            }
+            else {
+                applyPageDirect(_pageBuffer, version);
+            }
+        }
+    }
+    
+    private void applyPageDirect(ByteBuffer page, long version) throws IOException {
+        synchronized (this) {
+            _pageVersions.modified(PageHeader.getPageId(page, 0), version);
+            _readCache.removePages(page, 0, 1);
         }
+        _dataFile.apply(page, 0, 1);
     }
 
     @Override
     public synchronized void checkpoint() throws IOException {
-        if (isEmpty()) return;
+        if (_isFlushing) {
+            flush();
+        }
+        
+        if (_active.isEmpty()) return;
         
-        _readCache.putPages(_modifyCache, 0, _position);
+        swap();
+        flush();
+    }
+    
+    @Override
+    public synchronized void swap() {
+        if (_isFlushing) throw new IllegalStateException("previous modify buffer half hasn't been flushed yet");
         
-        _dataFile.apply(_modifyCache, 0, _position);
+        Generation flushing = _flushing;
+        _flushing = _active;
+        _active = flushing;
+        _isFlushing = true;
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        final Generation flushing;
+        synchronized (this) {
+            if (!_isFlushing) return;
+            flushing = _flushing;
+        }
+        
+        // Flushing half isn't changed anymore, so it's written without monitor. Only the latest 
+        // version of each page goes to data file. Pages are read through duplicate, because 
+        // original buffer's position is changed by concurrent readers.
+        final ByteBuffer pages = flushing.pages.duplicate();
+        for (int index = 0; index < flushing.position; index++) {
+            if (flushing.isLatest(pages, index)) {
+                _dataFile.apply(pages, index, 1);
+            }
+        }
         _dataFile.fsync();
         
-        _modifyCache.clear();
-        _pageMapping.clear();
-        _position = 0;
+        synchronized (this) {
+            for (int index = 0; index < flushing.position; index++) {
+                if (flushing.isLatest(flushing.pages, index)) {
+                    _readCache.putPage(PageHeader.getPageId(flushing.pages, index), flushing.pages, index);
+                }
+            }
+            
+            flushing.clear();
+            _isFlushing = false;
+        }
     }
 
     @Override
-    public synchronized boolean getPage(long pageId, ByteBuffer buffer, int pageIndex) {
-        if (isEmpty()) return false;
+    public synchronized boolean getPage(long pageId, ByteBuffer buffer, int pageIndex, long snapshot) {
+        if (_active.find(pageId, snapshot, buffer, pageIndex))
+            return true;
+        
+        return _isFlushing && _flushing.find(pageId, snapshot, buffer, pageIndex);
+    }
+    
+    @Override
+    public synchronized boolean containsPage(long pageId, long snapshot) {
+        if (_active.indexOf(pageId, snapshot) != NOT_EXISTED_VALUE)
+            return true;
         
-        int index = _pageMapping.get(pageId);
-        if (index == NOT_EXISTED_VALUE)
+        return _isFlushing && _flushing.indexOf(pageId, snapshot) != NOT_EXISTED_VALUE;
+    }
+    
+    /**
+     * Versions are changed and pages are removed from (or put into) read cache 
+     * under monitor, so stale pages can't outlive newer images.
+     */
+    @Override
+    public synchronized boolean putReadPages(ByteBuffer buffer, int offset, int count, long version) {
+        final long firstPageId = PageHeader.getPageId(buffer, offset);
+        if (!_pageVersions.isUnchanged(firstPageId, PageHeader.getPageId(buffer, offset + count - 1), version))
             return false;
         
-        PageHeader.copyPages(_modifyCache, index, buffer, pageIndex, 1);
-
+        _readCache.putPages(buffer, offset, count);
         return true;
     }
     
     private boolean isEmpty()
     {
-        return _position == 0;
+        return _active.isEmpty() && !_isFlushing;
     }
 
     @Override
-    public long getModifyBufferRemaining() {
-        return (_capacity - _position);
+    public synchronized long getModifyBufferRemaining() {
+        return (_active.capacity - _active.position);
+    }
+    
+    @Override
+    public long getModifyBufferCapacity() {
+        return Math.min(_active.capacity, _flushing.capacity);
+    }
+    
+    @Override
+    public synchronized boolean containsActivePage(long pageId) {
+        return _active.mapping.containsKey(pageId);
+    }
+    
+    /**
+     * Half of modify buffer.
+     */
+    private static final class Generation {
+        private final ByteBuffer pages;
+        private final Long2IntOpenHashMap mapping;
+        private final long[] versions;
+        private final int[] previous;
+        private final int capacity;
+        private int position = 0;
+        
+        private Generation(int size) {
+            pages = ByteBuffer.allocateDirect(size << PageHeader.PAGE_SIZE_MULTIPLICATOR);
+            mapping = new Long2IntOpenHashMap(size);
+            mapping.defaultReturnValue(NOT_EXISTED_VALUE);
+            versions = new long[size];
+            previous = new int[size];
+            capacity = size;
+        }
+        
+        private void add(long pageId, ByteBuffer page, long version, int previousIndex) {
+            PageHeader.copyPages(page, 0, pages, position, 1);
+            versions[position] = version;
+            previous[position] = previousIndex;
+            mapping.put(pageId, position);
+            position++;
+        }
+        
+        private boolean find(long pageId, long snapshot, ByteBuffer buffer, int pageIndex) {
+            final int index = indexOf(pageId, snapshot);
+            
+            if (index == NOT_EXISTED_VALUE)
+                return false;
+            
+            PageHeader.copyPages(pages, index, buffer, pageIndex, 1);
+            return true;
+        }
+        
+        private int indexOf(long pageId, long snapshot) {
+            if (isEmpty()) return NOT_EXISTED_VALUE;
+            
+            int index = mapping.get(pageId);
+            while (index != NOT_EXISTED_VALUE && versions[index] > snapshot) {
+                index = previous[index];
+            }
+            
+            return index;
+        }
+        
+        private boolean isLatest(ByteBuffer buffer, int index) {
+            return mapping.get(PageHeader.getPageId(buffer, index)) == index;
+        }
+        
+        private boolean isEmpty() {
+            return position == 0;
+        }
+        
+        private void clear() {
+            pages.clear();
+            mapping.clear();
+            position = 0;
+        }
     }
-
-
 }
@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage.data;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps version (log position) of the latest applied modification for groups 
+ * of data pages. Pages are grouped by (pageId % SIZE), so returned version is 
+ * upper bound: it can belong to another page of the same group.
+ * <p>
+ * Version is stored before new page version is published for read transactions, 
+ * so reader, which sees no modification after some version, can rely on pages 
+ * being unchanged since that version.
+ * 
+ * @author Igor Vykhodtcev
+ */
+public final class PageVersions {
+
+    public static final int SIZE = 65536;
+    public static final long NO_VERSION = Long.MIN_VALUE;
+    
+    private final AtomicLongArray _versions = new AtomicLongArray(SIZE);
+    
+    public PageVersions() {
+        for (int i = 0; i < SIZE; i++) {
+            _versions.set(i, NO_VERSION);
+        }
+    }
+    
+    void modified(long pageId, long version) {
+        _versions.set((int) (pageId % SIZE), version);
+    }
+    
+    public long getVersion(long pageId) {
+        return _versions.get((int) (pageId % SIZE));
+    }
+    
+    /**
+     * @return true if none of pages [firstPageId, lastPageId] has been modified after specified version
+     */
+    public boolean isUnchanged(long firstPageId, long lastPageId, long version) {
+        return getVersion(firstPageId, lastPageId) <= version;
+    }
+    
+    /**
+     * @return upper bound of versions of pages [firstPageId, lastPageId]
+     */
+    public long getVersion(long firstPageId, long lastPageId) {
+        // Longer range covers every group anyway
+        if (lastPageId - firstPageId >= SIZE) {
+            lastPageId = firstPageId + SIZE - 1;
+        }
+        
+        long version = NO_VERSION;
+        for (long pageId = firstPageId; pageId <= lastPageId; pageId++) {
+            version = Math.max(version, getVersion(pageId));
+        }
+        return version;
+    }
+}
@@ -24,11 +24,15 @@
 
 package com.vyhodb.storage.data;
 
+import com.vyhodb.server.Loggers;
 import com.vyhodb.server.ServerClosedException;
 import com.vyhodb.storage.StorageConfig;
 import com.vyhodb.storage.pagefile.Destination;
 import com.vyhodb.storage.pagefile.File;
 import com.vyhodb.storage.pagefile.HeaderFile;
+import com.vyhodb.storage.pagefile.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -41,11 +45,13 @@ import java.util.concurrent.ArrayBlockingQueue;
  */
 public final class SyncDataFile {
     
+    private final Logger _logger = LoggerFactory.getLogger(Loggers.LOGGER_NAME_SERVER);
     private final DataFile _writeFile;
     
     private final Destination _applier;
     private boolean _isClosed = false;
     private ArrayBlockingQueue<File> _readQueue;
+    private MappedDataFile _mappedFile;
     
     public SyncDataFile(StorageConfig config) throws IOException
     {
@@ -54,6 +60,16 @@ public final class SyncDataFile {
         try {
             _writeFile = new DataFile(dataFilename, true, false);
             _applier = _writeFile.getApplier();
+            
+            if (config.isDataMapped()) {
+                if (IOUtils.isUnmapSupported()) {
+                    _mappedFile = new MappedDataFile(dataFilename);
+                    return;
+                }
+                
+                // Mapping which can't be released would keep data file locked after closing
+                _logger.warn("Mapped buffers can't be unmapped by this JVM, data file is read through file channels.");
+            }
 
             HeaderFile readFile;
             int queueLenght = config.getReadingQueueLength();
@@ -70,14 +86,28 @@ public final class SyncDataFile {
     }
     
     public void readPage(long pageId, ByteBuffer buffer, int pageIndex) throws IOException {
+        readPages(pageId, buffer, pageIndex, 1);
+    }
+    
+    /**
+     * Reads [count] contiguous pages by single read operation.
+     */
+    public void readPages(long pageId, ByteBuffer buffer, int pageIndex, int count) throws IOException {
         if (_isClosed) 
             throw new ServerClosedException();
         
+        if (_mappedFile != null) {
+            for (int i = 0; i < count; i++) {
+                _mappedFile.readPage(pageId + i, buffer, pageIndex + i);
+            }
+            return;
+        }
+        
         try {
             File readFile = _readQueue.take();
             try {
                 readFile.position(pageId);
-                readFile.read(buffer, pageIndex, 1);
+                readFile.read(buffer, pageIndex, count);
             }
             finally {
                 _readQueue.put(readFile);
@@ -106,6 +136,10 @@ public final class SyncDataFile {
                 _writeFile.close();
             }
             
+            if (_mappedFile != null) {
+                _mappedFile.close();
+            }
+            
             if (_readQueue != null) {
                 try {
                     File readFile;
@@ -129,6 +163,19 @@ public final class SyncDataFile {
         return _writeFile.size();
     }
     
+    public synchronized void truncate(long pageCount) throws IOException
+    {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        if (_mappedFile != null) {
+            _mappedFile.truncate(_writeFile, pageCount);
+        }
+        else {
+            _writeFile.truncate(pageCount);
+        }
+    }
+    
     public synchronized void fsync() throws IOException
     {
         _writeFile.fsync();
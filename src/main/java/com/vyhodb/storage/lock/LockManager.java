@@ -35,7 +35,11 @@ public interface LockManager {
     public void lockModify();
     public void unlockModify();
     
-    public void lockCommit();
-    public void unlockCommit();
+    /**
+     * Excludes all read transactions. Is required for checkpoint only, 
+     * regular commits don't wait for readers.
+     */
+    public void lockCheckpoint();
+    public void unlockCheckpoint();
   
 }
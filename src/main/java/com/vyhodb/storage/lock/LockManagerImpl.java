@@ -41,24 +41,24 @@ public final class LockManagerImpl implements LockManager {
     private static final String LOCK_THREAD_INTERRUPTED = "Thread has been interrupted during waiting for a lock.";
     
     private final Lock _readLock;
-    private final Lock _commitLock;
+    private final Lock _checkpointLock;
     private final Lock _modifyLock; 
     
     private final int _readTimeout;
     private final int _modifyTimeout;
-    private final int _commitTimeout;
+    private final int _checkpointTimeout;
     
     public LockManagerImpl(int lockTimeout)
     {
         ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true);
         _readLock = rwLock.readLock();
-        _commitLock = rwLock.writeLock();
+        _checkpointLock = rwLock.writeLock();
         
         _modifyLock = new ReentrantLock(true);
         
         _readTimeout = lockTimeout;
         _modifyTimeout = lockTimeout;
-        _commitTimeout = lockTimeout;
+        _checkpointTimeout = lockTimeout;
     }
     
     @Override
@@ -82,13 +82,13 @@ public final class LockManagerImpl implements LockManager {
     }
 
     @Override
-    public void lockCommit(){
-        lock0(_commitLock, _commitTimeout, LOCK_TIMEOUT);
+    public void lockCheckpoint(){
+        lock0(_checkpointLock, _checkpointTimeout, LOCK_TIMEOUT);
     }
 
     @Override
-    public void unlockCommit() {
-        _commitLock.unlock();
+    public void unlockCheckpoint() {
+        _checkpointLock.unlock();
     }
 
     private void lock0(Lock lock, int timeout, String timeoutExceptionMessage)
@@ -26,6 +26,7 @@ package com.vyhodb.storage.log;
 
 import com.vyhodb.admin.LogInfo;
 import com.vyhodb.admin.WrongPageIdException;
+import com.vyhodb.server.TransactionRolledbackException;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -44,11 +45,64 @@ public interface Log {
     public void append(long startLogPageId, ByteBuffer buffer, int count) throws IOException;
     public void read(long logPageId, ByteBuffer pageBuffer, int pageIndex) throws IOException;
     public void rollback();
-    public void commit(long trxSize) throws IOException;
+    /**
+     * Applies committed transaction.
+     * 
+     * @param trxSize count of log pages
+     * @param pageCount count of data page images (delta page keeps several ones), 
+     * it's checked against modify buffer remaining
+     * @return log position which must be passed to {@link #sync(long)} to make transaction durable
+     * @throws IOException
+     */
+    public long commit(long trxSize, long pageCount) throws IOException;
+    
+    /**
+     * Waits until log is durable up to specified position. Several concurrent 
+     * commits are grouped into single fsync.
+     * 
+     * @param position
+     * @throws IOException
+     */
+    public void sync(long position) throws IOException;
+    
+    /**
+     * @param pageCount count of data page images of transaction
+     * @return true if commit of transaction with specified size requires checkpoint 
+     * (or direct apply), which can be done only when there are no read transactions.
+     */
+    public boolean isCheckpointRequired(long pageCount);
+    
+    /**
+     * Registers read transaction, background checkpoint doesn't write pages 
+     * into data file until registered readers with older snapshot are finished.
+     * 
+     * @return snapshot read transaction is pinned to
+     */
+    public long registerReader();
+    public void unregisterReader(long snapshot);
+    
+    /**
+     * Must be invoked after page is read by read transaction.
+     * 
+     * @param snapshot snapshot read transaction is pinned to
+     * @throws TransactionRolledbackException if background checkpoint hasn't waited 
+     * for read transaction and pages it reads might be newer than its snapshot
+     */
+    public void checkSnapshot(long snapshot);
     
     public void close()  throws IOException;
     public void shutdown() throws IOException;
     
     public void shrink(long shrinkStart) throws WrongPageIdException, IOException;
+    
+    /**
+     * Does checkpoint, persists reduced data length in log header and cuts data file 
+     * down to it. Pages starting from [dataLength] must be unused by committed transactions, 
+     * because they aren't replayed by recovery and aren't copied by backup anymore.
+     * 
+     * @param dataLength new data length (pages), ignored if it isn't less than current one
+     * @throws IOException
+     */
+    public void truncateData(long dataLength) throws IOException;
     public void clearSlave() throws IOException;
 }
@@ -30,19 +30,52 @@ import com.vyhodb.storage.data.Data;
 import com.vyhodb.storage.pagefile.BackupHeader;
 import com.vyhodb.storage.pagefile.Header;
 import com.vyhodb.storage.pagefile.HeaderFile;
+import com.vyhodb.storage.pagefile.PageFile;
 import com.vyhodb.storage.pagefile.PageHeader;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
 /**
+ * Log created by version 2 and later keeps only header page in log file itself,
+ * log pages are stored in segment files [log filename].[segment number], each 
+ * segment holds fixed count of pages. Shrink of such log just deletes segments 
+ * below new start. Logs of previous versions are single files, they are converted 
+ * to segmented ones by the first shrink.
  *
  * @author Igor Vykhodtcev
  */
 public class LogFile extends HeaderFile {
 
+    /**
+     * Default count of pages in log segment. Can be changed by [com.vyhodb.logSegmentSize] 
+     * system property, value is used only when new log is created.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 65536;
+    private static final String PROPERTY_SEGMENT_SIZE = "com.vyhodb.logSegmentSize";
+    
+    private static final int MAX_OPEN_SEGMENTS = 8;
+    
     private LogHeader _header;
+    private long _checkpointDataLength;
+    
+    // Segmented log state. Open segments are kept in access order.
+    private final LinkedHashMap<Long, PageFile> _segments = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashSet<Long> _unsynced = new HashSet<>();
+    private final HashSet<Long> _syncing = new HashSet<>();
+    private final Object _fsyncLock = new Object();
+    private volatile long _logPosition;
+    private volatile long _logSize;
     
     /**
      * Used in storage openening.
@@ -61,9 +94,15 @@ public class LogFile extends HeaderFile {
             if (_header.version > LogHeader.MAX_VERSION)
                 throw new IOException("Unsupported storage version: " + _header.version);
             
+            if (isSegmented()) {
+                _logSize = scanSize();
+            }
+            
             if (_header.checkpoint > size()) 
                 throw new IOException("Log file corrupted. It's logical size is less then [checkpoint] pointer.");
         }
+        
+        _checkpointDataLength = _header.dataLength;
     }
     
     /**
@@ -75,7 +114,14 @@ public class LogFile extends HeaderFile {
      */
     public LogFile(String fileName, LogFile otherLogFile) throws IOException {
         super(fileName, false);
+        deleteSegments(fileName);
+        
+        // Upgrades log to segmented format
         _header = otherLogFile._header.clone();
+        _header.version = LogHeader.MAX_VERSION;
+        _header.segmentSize = newSegmentSize();
+        _checkpointDataLength = otherLogFile._checkpointDataLength;
+        _logSize = _header.start;
     }
     
     /**
@@ -86,6 +132,7 @@ public class LogFile extends HeaderFile {
      */
     public LogFile(String fileName) throws IOException {
         super(fileName, false);
+        deleteSegments(fileName);
         
         _header = new LogHeader();
         _header.logId = UUID.randomUUID();
@@ -94,7 +141,11 @@ public class LogFile extends HeaderFile {
         _header.start = _header.checkpoint = _header.next = PageHeader.MIN_LOG_PAGE_ID;
         _header.dataLength = 1;
         _header.successfulStop = true;
-        _header.version = 0;
+        _header.version = LogHeader.MAX_VERSION;
+        _header.pageSize = PageHeader.PAGE_SIZE;
+        _header.segmentSize = newSegmentSize();
+        _checkpointDataLength = _header.dataLength;
+        _logSize = _header.start;
     }
     
     /**
@@ -107,10 +158,14 @@ public class LogFile extends HeaderFile {
      */
     public LogFile(String fileName, BackupHeader backupHeader, boolean isSlave) throws IOException {
         super(fileName, false);
+        deleteSegments(fileName);
         
         _header = new LogHeader();
         _header.logId = UUID.randomUUID();
         _header.successfulStop = true;
+        _header.version = LogHeader.MAX_VERSION;
+        _header.pageSize = PageHeader.PAGE_SIZE;
+        _header.segmentSize = newSegmentSize();
         _header.dataLength = backupHeader.backupLength - 1;
 
         if (isSlave)
@@ -127,6 +182,8 @@ public class LogFile extends HeaderFile {
         }
         
         _header.checkpoint = _header.next = (_header.start + 1);
+        _checkpointDataLength = _header.dataLength;
+        _logSize = _header.start;
     }
     
     public long getStart() {
@@ -135,6 +192,14 @@ public class LogFile extends HeaderFile {
     
     public void setStart(long start) {
         _header.start = start;
+        
+        if (_logSize < start) {
+            _logSize = start;
+        }
+    }
+    
+    public boolean isSegmented() {
+        return _header.segmentSize > 0;
     }
     
     public long getNext() {
@@ -179,6 +244,21 @@ public class LogFile extends HeaderFile {
         
         _header.checkpoint = _header.next;
         _header.successfulStop = succesfulStop;
+        _checkpointDataLength = _header.dataLength;
+        syncHeader();
+    }
+    
+    /**
+     * Moves checkpoint pointer after background checkpoint. Log must be already fsynced 
+     * up to specified position and data file must contain all pages applied before it.
+     * 
+     * @param position
+     * @param dataLength data length at checkpoint position
+     * @throws IOException
+     */
+    public void checkpoint(long position, long dataLength) throws IOException {
+        _header.checkpoint = position;
+        _checkpointDataLength = dataLength;
         syncHeader();
     }
     
@@ -189,30 +269,337 @@ public class LogFile extends HeaderFile {
     }
     
     public void syncHeader() throws IOException {
-        super.writeHeader(_header);
+        // Header on disk always points to checkpoint, because recovery replays log starting from [next]
+        LogHeader header = _header;
+        if (header.next != header.checkpoint) {
+            header = _header.clone();
+            header.next = header.checkpoint;
+            header.dataLength = _checkpointDataLength;
+        }
+        
+        super.writeHeader(header);
         super.fsync();
     }
     
+    /**
+     * Moves start pointer of segmented log and deletes segments which contain 
+     * only pages below it. Nothing is copied.
+     * 
+     * @param start new start
+     * @throws IOException
+     */
+    public void shrink(long start) throws IOException {
+        if (!isSegmented())
+            throw new IOException("Log file isn't segmented, it can be shrinked only by copying.");
+        
+        _header.start = start;
+        syncHeader();
+        
+        final long first = segmentOf(start);
+        synchronized (_segments) {
+            for (Map.Entry<Long, Path> entry : listSegments(filename()).headMap(first).entrySet()) {
+                closeSegment(entry.getKey());
+                Files.deleteIfExists(entry.getValue());
+            }
+        }
+    }
+    
     @Override
     public void truncate(long logPageId) throws IOException {
-        super.truncate(logPageId - _header.start);
+        if (!isSegmented()) {
+            super.truncate(logPageId - _header.start);
+            return;
+        }
+        
+        final long segment = segmentOf(logPageId);
+        final int offset = offsetOf(logPageId);
+        
+        synchronized (_segments) {
+            for (Map.Entry<Long, Path> entry : listSegments(filename()).tailMap(segment, offset == 0).entrySet()) {
+                closeSegment(entry.getKey());
+                Files.deleteIfExists(entry.getValue());
+            }
+            
+            if (offset > 0 && Files.exists(Paths.get(segmentFilename(filename(), segment)))) {
+                getSegment(segment, false).truncate(offset);
+            }
+            
+            if (logPageId < _logSize) {
+                _logSize = Math.max(logPageId, _header.start);
+            }
+        }
     }
     
     @Override
     public long size() throws IOException {
+        if (isSegmented()) {
+            return _logSize;
+        }
+        
         return (super.size() + _header.start);
     }
 
     @Override
     public long position() {
+        if (isSegmented()) {
+            return _logPosition;
+        }
+        
         return (super.position() + _header.start);
     }
 
     @Override
     public void position(long newPosition) {
+        if (isSegmented()) {
+            _logPosition = newPosition;
+            return;
+        }
+        
         super.position(newPosition - _header.start);
     }
     
+    @Override
+    public int read(ByteBuffer buffer, int offset, int count) throws IOException {
+        if (!isSegmented()) {
+            return super.read(buffer, offset, count);
+        }
+        
+        // Segment is used under monitor, so it can't be closed by other thread opening new one
+        PageFile segment;
+        int chunk;
+        synchronized (_segments) {
+            long position = _logPosition;
+            for (int i = 0; i < count; i += chunk) {
+                chunk = Math.min(count - i, _header.segmentSize - offsetOf(position));
+                
+                segment = getSegment(segmentOf(position), false);
+                segment.position(offsetOf(position));
+                segment.read(buffer, offset + i, chunk);
+                position += chunk;
+            }
+            _logPosition = position;
+        }
+        
+        return count;
+    }
+
+    @Override
+    public int write(ByteBuffer buffer, int offset, int count) throws IOException {
+        if (!isSegmented()) {
+            return super.write(buffer, offset, count);
+        }
+        
+        PageFile segment;
+        long segmentNumber;
+        int chunk;
+        synchronized (_segments) {
+            long position = _logPosition;
+            for (int i = 0; i < count; i += chunk) {
+                chunk = Math.min(count - i, _header.segmentSize - offsetOf(position));
+                segmentNumber = segmentOf(position);
+                
+                segment = getSegment(segmentNumber, true);
+                _unsynced.add(segmentNumber);
+                segment.position(offsetOf(position));
+                segment.write(buffer, offset + i, chunk);
+                position += chunk;
+            }
+            _logPosition = position;
+            
+            if (position > _logSize) {
+                _logSize = position;
+            }
+        }
+        
+        return count;
+    }
+
+    /**
+     * Fsyncs segments written since previous fsync. Can be invoked concurrently 
+     * with writing.
+     */
+    @Override
+    public void fsync() throws IOException {
+        if (!isSegmented()) {
+            super.fsync();
+            return;
+        }
+        
+        synchronized (_fsyncLock) {
+            PageFile[] files;
+            synchronized (_segments) {
+                files = new PageFile[_unsynced.size()];
+                int i = 0;
+                for (Long segment : _unsynced) {
+                    files[i++] = _segments.get(segment);
+                }
+                
+                _syncing.addAll(_unsynced);
+                _unsynced.clear();
+            }
+            
+            try {
+                for (PageFile file : files) {
+                    file.fsync();
+                }
+            }
+            finally {
+                synchronized (_segments) {
+                    _syncing.clear();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isSegmented()) {
+            synchronized (_segments) {
+                for (PageFile segment : _segments.values()) {
+                    segment.close();
+                }
+                _segments.clear();
+                _unsynced.clear();
+            }
+        }
+        
+        super.close();
+    }
+    
+    private long segmentOf(long logPageId) {
+        return (logPageId - PageHeader.MIN_LOG_PAGE_ID) / _header.segmentSize;
+    }
+    
+    private int offsetOf(long logPageId) {
+        return (int) ((logPageId - PageHeader.MIN_LOG_PAGE_ID) % _header.segmentSize);
+    }
+    
+    /**
+     * Must be invoked under [_segments] monitor.
+     */
+    private PageFile getSegment(long segmentNumber, boolean create) throws IOException {
+        PageFile segment = _segments.get(segmentNumber);
+        
+        if (segment == null) {
+            final String segmentFilename = segmentFilename(filename(), segmentNumber);
+            final boolean exists = Files.exists(Paths.get(segmentFilename));
+            
+            if (!exists && !create)
+                throw new IOException("Log segment file doesn't exist:" + segmentFilename);
+            
+            segment = new PageFile(segmentFilename, exists);
+            _segments.put(segmentNumber, segment);
+            closeEldestSegments(segmentNumber);
+        }
+        
+        return segment;
+    }
+    
+    /**
+     * Closes least recently used segments, segments which aren't fsynced yet are kept open.
+     */
+    private void closeEldestSegments(long current) throws IOException {
+        Iterator<Map.Entry<Long, PageFile>> iterator = _segments.entrySet().iterator();
+        Map.Entry<Long, PageFile> entry;
+        long segmentNumber;
+        
+        while (_segments.size() > MAX_OPEN_SEGMENTS && iterator.hasNext()) {
+            entry = iterator.next();
+            segmentNumber = entry.getKey();
+            
+            if (segmentNumber != current && !_unsynced.contains(segmentNumber) && !_syncing.contains(segmentNumber)) {
+                entry.getValue().close();
+                iterator.remove();
+            }
+        }
+    }
+    
+    private void closeSegment(long segmentNumber) throws IOException {
+        PageFile segment = _segments.remove(segmentNumber);
+        if (segment != null) {
+            segment.close();
+        }
+        _unsynced.remove(segmentNumber);
+    }
+    
+    /**
+     * Calculates log size from existing segments. Segments are contiguous starting from 
+     * the one which contains [start] page.
+     */
+    private long scanSize() throws IOException {
+        long segmentNumber = segmentOf(_header.start);
+        Path last = null;
+        
+        for (Path path; Files.exists(path = Paths.get(segmentFilename(filename(), segmentNumber))); segmentNumber++) {
+            last = path;
+        }
+        
+        if (last == null) {
+            return _header.start;
+        }
+        
+        long size = PageHeader.MIN_LOG_PAGE_ID + (segmentNumber - 1) * _header.segmentSize + (Files.size(last) >> PageHeader.PAGE_SIZE_MULTIPLICATOR);
+        return Math.max(size, _header.start);
+    }
+    
+    private static int newSegmentSize() throws IOException {
+        final int segmentSize = Integer.getInteger(PROPERTY_SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE);
+        
+        if (segmentSize < 1)
+            throw new IOException("Illegal log segment size: " + segmentSize + ". [" + PROPERTY_SEGMENT_SIZE + "] must be positive.");
+        
+        return segmentSize;
+    }
+    
+    private static String segmentFilename(String logFilename, long segmentNumber) {
+        return String.format("%s.%012d", logFilename, segmentNumber);
+    }
+    
+    /**
+     * Returns segment files of specified log sorted by segment number.
+     */
+    private static TreeMap<Long, Path> listSegments(String logFilename) throws IOException {
+        final Path logPath = Paths.get(logFilename).toAbsolutePath();
+        final String prefix = logPath.getFileName().toString() + ".";
+        final TreeMap<Long, Path> segments = new TreeMap<>();
+        
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(logPath.getParent())) {
+            String filename;
+            for (Path path : stream) {
+                filename = path.getFileName().toString();
+                if (filename.startsWith(prefix) && isDigits(filename, prefix.length())) {
+                    segments.put(Long.parseLong(filename.substring(prefix.length())), path);
+                }
+            }
+        }
+        
+        return segments;
+    }
+    
+    private static boolean isDigits(String str, int from) {
+        if (from >= str.length()) 
+            return false;
+        
+        for (int i = from; i < str.length(); i++) {
+            if (!Character.isDigit(str.charAt(i)))
+                return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Deletes all segment files of specified log.
+     * 
+     * @param logFilename
+     * @throws IOException
+     */
+    public static void deleteSegments(String logFilename) throws IOException {
+        for (Path path : listSegments(logFilename).values()) {
+            Files.deleteIfExists(path);
+        }
+    }
+    
     public void checkDataHeader(UUID dataLogId) throws IOException
     {
         if (! _header.logId.equals(dataLogId))
@@ -233,7 +620,7 @@ public class LogFile extends HeaderFile {
     
     private static final class LogHeader implements Header, Cloneable {
         
-        public static final short MAX_VERSION = 0;
+        public static final short MAX_VERSION = 2;
         private static final int HEADER_LOG_PREAMBULA = -858993460;
         
         UUID logId;
@@ -249,6 +636,8 @@ public class LogFile extends HeaderFile {
         
         boolean successfulStop;
         short version;
+        int pageSize;
+        int segmentSize;
         
         LogInfo getLogInfo() {
             return new LogInfo(logId, start, checkpoint, next, dataLength, slave, masterLogId, successfulStop, version);
@@ -268,6 +657,10 @@ public class LogFile extends HeaderFile {
             slave = PrimitiveUtils.getBoolean(buffer);
             masterLogId = PrimitiveUtils.getUUID(buffer);
             successfulStop = PrimitiveUtils.getBoolean(buffer);
+            pageSize = (version > 0) ? buffer.getInt() : PageHeader.LEGACY_PAGE_SIZE;
+            segmentSize = (version > 1) ? buffer.getInt() : 0;
+            
+            PageHeader.checkPageSize(pageSize);
         }
 
         @Override
@@ -282,6 +675,12 @@ public class LogFile extends HeaderFile {
             PrimitiveUtils.putBoolean(slave, buffer);
             PrimitiveUtils.putUUID(masterLogId, buffer);
             PrimitiveUtils.putBoolean(successfulStop, buffer);
+            if (version > 0) {
+                buffer.putInt(pageSize);
+            }
+            if (version > 1) {
+                buffer.putInt(segmentSize);
+            }
         }
 
         @Override
@@ -28,16 +28,19 @@ import com.vyhodb.admin.LogInfo;
 import com.vyhodb.admin.WrongPageIdException;
 import com.vyhodb.server.Loggers;
 import com.vyhodb.server.ServerClosedException;
+import com.vyhodb.server.TransactionRolledbackException;
 import com.vyhodb.server.admin.AdminImpl;
 import com.vyhodb.storage.StorageConfig;
 import com.vyhodb.storage.data.Data;
-import com.vyhodb.storage.pagefile.DummyDestination;
 import com.vyhodb.storage.pagefile.PageHeader;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -45,17 +48,45 @@ import java.nio.ByteBuffer;
  */
 public class LogImpl implements Log {
 
+    private static final long NO_CHECKPOINT = Long.MIN_VALUE;
+    
     private final Logger _logger = LoggerFactory.getLogger(Loggers.LOGGER_NAME_SERVER);
    
     private final Data _data;
     private final ByteBuffer _buffer;
     private final boolean _durable;
+    private final int _groupCommitMaxBatch;
+    private final long _groupCommitMaxWait;
+    
+    // Group commit state, guarded by _syncMonitor
+    private final Object _syncMonitor = new Object();
+    private boolean _syncing = false;
+    private int _syncWaiters = 0;
+    private long _durablePosition;
+    
+    // Snapshots of active read transactions (snapshot -> count), guarded by itself
+    private final Long2IntOpenHashMap _readers = new Long2IntOpenHashMap();
+    
+    // Background checkpoint state, guarded by this
+    private final long _checkpointTimeout;
+    private Thread _checkpointer;
+    private long _checkpointTarget = NO_CHECKPOINT;
+    private long _checkpointDataLength;
+    private Exception _checkpointError;
+    private volatile boolean _isClosing = false;
+    
+    // Snapshots before it are stale: their pages might have been overwritten by checkpoint
+    private volatile long _validSnapshot = Long.MIN_VALUE;
    
     private LogFile _file;
     private boolean _isClosed = false;
+    private volatile long _snapshot;
     
     public LogImpl(StorageConfig config, Data data) throws IOException {
         _durable = config.isDurable();
+        _groupCommitMaxBatch = config.getGroupCommitMaxBatch();
+        _groupCommitMaxWait = TimeUnit.MICROSECONDS.toNanos(config.getGroupCommitMaxWait());
+        _checkpointTimeout = TimeUnit.SECONDS.toMillis(config.getLockTimeout());
         _data = data;
         
         try {
@@ -80,6 +111,14 @@ public class LogImpl implements Log {
             // Set successfulStop = false
             _file.setSuccessfulStop(false);
             _file.syncHeader();
+            
+            _snapshot = _durablePosition = _file.getNext();
+            
+            if (_data.getModifyBufferCapacity() > 0) {
+                _checkpointer = new Thread(new Checkpointer(), "vyhodb checkpointer");
+                _checkpointer.setDaemon(true);
+                _checkpointer.start();
+            }
         } 
         catch(Exception ex) {
             shutdown();
@@ -99,22 +138,39 @@ public class LogImpl implements Log {
     }
 
     @Override
-    public synchronized void close() throws IOException {
+    public void close() throws IOException {
+        setClosing();
+        waitCheckpointer();
+        
+        lockSync();
+        try {
+            close0();
+        }
+        finally {
+            unlockSync();
+        }
+    }
+    
+    private synchronized void close0() throws IOException {
         if (!_isClosed)
         {
             _file.checkpoint(_data, true);
             _file.close();
             _isClosed = true;
+            notifyAll();
         }
     }
     
     public synchronized void shutdown() throws IOException {
+        setClosing();
+        
         if (!_isClosed)
         {
             if (_file != null) {
                 _file.close();
             }
             _isClosed = true;
+            notifyAll();
         }
     }
      
@@ -135,42 +191,43 @@ public class LogImpl implements Log {
         _file.read(buffer, offset, count);
     }
     
+    /**
+     * Prevents new read transactions and releases checkpointer waiting for readers.
+     */
+    private void setClosing() {
+        _isClosing = true;
+        synchronized (_readers) {
+            _readers.notifyAll();
+        }
+    }
+    
     private void recover() throws IOException {
         _logger.info("Log recover started");
-        ByteBuffer pageBuffer = ByteBuffer.allocateDirect(PageHeader.PAGE_SIZE);
-                
-        long trxCount = 0;
-        final long start = _file.getCheckpoint();
-        final long size = _file.size();
-        _file.position(start);
-        
-        TrxReader reader = new TrxReader(_file, new DummyDestination(), pageBuffer);
-        
-        try
-        {    
-            long trxSize;
-            while ((trxSize = reader.readTrx(size - _file.getNext())) > 0)
-            {
-                apply(trxSize);
-                trxCount++;
-            }
-        } 
-        catch (TransactionCorruptedException tce)
-        {
-            _logger.warn("Some transactions can't be recovered. ", tce.getMessage());
-            _logger.debug("Some transactions can't be recovered. ", tce);
-        }
         
+        LogRecovery recovery = new LogRecovery(_file, _data);
+        long pages = recovery.recover();
         
         _file.truncate(_file.getNext());         // Trunc file to restored transactions
         _file.checkpoint(_data, false);
         
-        _logger.info("Log recovery completed. Recovered transactions:{}, recovered pages:{}.", trxCount,  (_file.getNext() - start));
+        _logger.info("Log recovery completed. Recovered transactions:{}, recovered pages:{}.", recovery.getTrxCount(), pages);
     }
     
     
     @Override
-    public synchronized void shrink(long startLogPageId) throws IOException, WrongPageIdException {
+    public void shrink(long startLogPageId) throws IOException, WrongPageIdException {
+        // Log file is replaced, so no fsync or background checkpoint must be in progress
+        waitCheckpointer();
+        lockSync();
+        try {
+            shrink0(startLogPageId);
+        }
+        finally {
+            unlockSync();
+        }
+    }
+    
+    private synchronized void shrink0(long startLogPageId) throws IOException, WrongPageIdException {
         if (_isClosed) 
             throw new ServerClosedException();
         
@@ -192,6 +249,38 @@ public class LogImpl implements Log {
         
         // Shrinks
         _file = AdminImpl.commonShrink(start, _file.filename(), _buffer);
+        published(_file.getNext());
+    }
+
+    @Override
+    public void truncateData(long dataLength) throws IOException {
+        // Checkpoint flushes data file, so no fsync or background checkpoint must be in progress
+        waitCheckpointer();
+        lockSync();
+        try {
+            truncateData0(dataLength);
+        }
+        finally {
+            unlockSync();
+        }
+    }
+    
+    private synchronized void truncateData0(long dataLength) throws IOException {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        // Transaction, which has freed truncated pages, becomes durable before 
+        // header points to reduced data length
+        _file.checkpoint(_data, false);
+        published(_file.getNext());
+        
+        if (dataLength < _file.getDataLength()) {
+            _file.setDataLength(dataLength);
+            _file.checkpoint(_data, false);
+            _data.truncate(dataLength);
+            
+            _logger.info("Data file is truncated to {} pages.", dataLength);
+        }
     }
 
     @Override
@@ -237,46 +326,360 @@ public class LogImpl implements Log {
     }
 
     @Override
-    public synchronized void commit(long trxSize) throws IOException {
+    public synchronized long commit(long trxSize, long pageCount) throws IOException {
         if (_isClosed) 
             throw new ServerClosedException();
 
-        if (trxSize == 0) {
+        if (_checkpointError != null) 
+            throw new IOException("Background checkpoint has failed.", _checkpointError);
+
+        if (trxSize > 0) {
+            apply(trxSize, pageCount, _checkpointer != null);
+        }
+        
+        // Non durable log publishes new page versions for read transactions right away,
+        // durable one does it after fsync.
+        if (!_durable) {
+            published(_file.getNext());
+        }
+        
+        return _file.getNext();
+    }
+    
+    @Override
+    public void sync(long position) throws IOException {
+        if (!_durable) 
             return;
+        
+        long target;
+        
+        synchronized (_syncMonitor) {
+            _syncWaiters++;
+            try {
+                // Wakes up leader waiting for full batch
+                if (_syncing && _syncWaiters >= _groupCommitMaxBatch) {
+                    _syncMonitor.notifyAll();
+                }
+                
+                // Waits for current leader
+                while (_syncing && _durablePosition < position) {
+                    waitSync(0);
+                }
+                
+                if (_durablePosition >= position) 
+                    return;
+                
+                // Becomes leader, waits for other transactions to join the group
+                _syncing = true;
+                if (_groupCommitMaxWait > 0) {
+                    final long deadline = System.nanoTime() + _groupCommitMaxWait;
+                    long remaining = _groupCommitMaxWait;
+                    while (_syncWaiters < _groupCommitMaxBatch && remaining > 0) {
+                        waitSync(remaining);
+                        remaining = deadline - System.nanoTime();
+                    }
+                }
+            }
+            finally {
+                _syncWaiters--;
+            }
         }
         
-        // Fsync log file if needed
-        if (_durable)
-        {
-            _file.fsync();
+        // Fsync is done outside of log monitor, so next transactions can be appended and applied meanwhile
+        target = position;
+        try {
+            LogFile file;
+            synchronized (this) {
+                if (_isClosed) 
+                    throw new ServerClosedException();
+                
+                target = _file.getNext();
+                file = _file;
+            }
+            file.fsync();
+            published(target);
+        }
+        finally {
+            synchronized (_syncMonitor) {
+                _syncing = false;
+                _syncMonitor.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Moves durable position and read snapshot forward.
+     */
+    private void published(long position) {
+        synchronized (_syncMonitor) {
+            if (position > _durablePosition) {
+                _durablePosition = position;
+            }
+            
+            if (position > _snapshot) {
+                _snapshot = position;
+            }
+            
+            _syncMonitor.notifyAll();
+        }
+    }
+    
+    private void waitSync(long nanos) {
+        try {
+            if (nanos > 0) {
+                TimeUnit.NANOSECONDS.timedWait(_syncMonitor, nanos);
+            }
+            else {
+                _syncMonitor.wait();
+            }
+        } catch (InterruptedException ex) {
+            // Transaction is already applied, so it must wait for durability anyway
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Previous modify buffer half must be flushed before swap (or synchronous checkpoint). 
+     */
+    private void waitBackgroundCheckpoint() throws IOException {
+        try {
+            waitCheckpointer(_checkpointTimeout);
+        } catch (InterruptedException ex) {
+            throw new TransactionRolledbackException("Thread has been interrupted during waiting for background checkpoint.", ex);
+        }
+        
+        if (_checkpointError != null) 
+            throw new IOException("Background checkpoint has failed.", _checkpointError);
+    }
+    
+    private void lockSync() {
+        synchronized (_syncMonitor) {
+            while (_syncing) {
+                waitSync(0);
+            }
+            _syncing = true;
+        }
+    }
+    
+    private void unlockSync() {
+        synchronized (_syncMonitor) {
+            _syncing = false;
+            _syncMonitor.notifyAll();
+        }
+    }
+    
+    @Override
+    public synchronized boolean isCheckpointRequired(long pageCount) {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        // Transactions which fit into modify buffer half are checkpointed in background
+        if (_checkpointer != null && pageCount <= _data.getModifyBufferCapacity())
+            return false;
+        
+        return pageCount > _data.getModifyBufferRemaining();
+    }
+    
+    @Override
+    public long registerReader() {
+        synchronized (_readers) {
+            if (_isClosing) 
+                throw new ServerClosedException();
+            
+            final long snapshot = _snapshot;
+            _readers.addTo(snapshot, 1);
+            return snapshot;
+        }
+    }
+    
+    @Override
+    public void unregisterReader(long snapshot) {
+        synchronized (_readers) {
+            if (_readers.addTo(snapshot, -1) <= 1) {
+                _readers.remove(snapshot);
+                _readers.notifyAll();
+            }
         }
+    }
+    
+    @Override
+    public void checkSnapshot(long snapshot) {
+        if (snapshot < _validSnapshot)
+            throw new TransactionRolledbackException("Read transaction snapshot has been invalidated by checkpoint.");
+    }
+    
+    /**
+     * Waits for read transactions pinned to snapshots before specified position. 
+     * Waiting is limited by half of lock timeout, so leaked read transaction neither 
+     * blocks checkpoints forever, nor fails commits waiting for checkpoint. Snapshots 
+     * of readers which are still active are invalidated before data file is changed, 
+     * so they are rolled back on next page read instead of reading newer pages.
+     */
+    private void awaitReaders(long position) {
+        final long timeout = _checkpointTimeout / 2;
+        final long deadline = System.currentTimeMillis() + timeout;
         
-        apply(trxSize);
+        synchronized (_readers) {
+            while (!_isClosing && hasReadersBefore(position)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    _logger.warn("Read transactions started before log position {} haven't finished in {} ms, they are rolled back.", position, timeout);
+                    invalidateSnapshots(position);
+                    return;
+                }
+                
+                try {
+                    _readers.wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    invalidateSnapshots(position);
+                    return;
+                }
+            }
+        }
+    }
+    
+    private void invalidateSnapshots(long position) {
+        if (position > _validSnapshot) {
+            _validSnapshot = position;
+        }
+    }
+    
+    private boolean hasReadersBefore(long position) {
+        for (Long2IntMap.Entry entry : _readers.long2IntEntrySet()) {
+            if (entry.getLongKey() < position) 
+                return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Waits for background checkpoint completion. Must be invoked without log monitor.
+     */
+    private synchronized void waitCheckpointer() {
+        try {
+            waitCheckpointer(0);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
     }
     
-    private void apply(long trxSize) throws IOException
+    private void waitCheckpointer(long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (_checkpointTarget != NO_CHECKPOINT) {
+            if (timeout > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    throw new TransactionRolledbackException("Background checkpoint timeout has expired.");
+                wait(remaining);
+            }
+            else {
+                wait();
+            }
+        }
+    }
+    
+    private void apply(long trxSize, long pageCount, boolean background) throws IOException
     {
         // Checks for checkpoint
-        if (trxSize > _data.getModifyBufferRemaining())
+        if (pageCount > _data.getModifyBufferRemaining())
         {
-            _file.checkpoint(_data, false);
+            waitBackgroundCheckpoint();
+            
+            if (background && pageCount <= _data.getModifyBufferCapacity()) {
+                // Full half of modify buffer is checkpointed in background
+                _data.swapModifyBuffer();
+                _checkpointTarget = _file.getNext();
+                _checkpointDataLength = _file.getDataLength();
+                notifyAll();
+            }
+            else {
+                // Log file is fsynced by checkpoint, so all applied transactions become durable
+                _file.checkpoint(_data, false);
+                published(_file.getNext());
+            }
         }
       
         _file.position(_file.getNext());
         DataLengthCalculator source = new DataLengthCalculator(_file);
                 
         // Large Trx
-        if (trxSize > _data.getModifyBufferRemaining())
+        if (pageCount > _data.getModifyBufferRemaining())
         {
-            _data.applyDirect(source, trxSize);
+            _data.applyDirect(source, trxSize, _file.getNext() + trxSize);
         }
         else
         {
-            _data.apply(source, trxSize);
+            _data.apply(source, trxSize, _file.getNext() + trxSize);
         }
         
         // Update header
         _file.incNext(trxSize);
         _file.setDataLength(source.getDataLength());
     }
+    
+    /**
+     * Writes flushing half of modify buffer into data file and moves checkpoint pointer, 
+     * so commits don't pay for data file flushing.
+     */
+    private final class Checkpointer implements Runnable {
+
+        @Override
+        public void run() {
+            long target;
+            long dataLength;
+            LogFile file;
+            
+            while (true) {
+                synchronized (LogImpl.this) {
+                    while (_checkpointTarget == NO_CHECKPOINT && !_isClosed) {
+                        try {
+                            LogImpl.this.wait();
+                        } catch (InterruptedException ex) {
+                            return;
+                        }
+                    }
+                    
+                    if (_isClosed) 
+                        return;
+                    
+                    target = _checkpointTarget;
+                    dataLength = _checkpointDataLength;
+                    file = _file;
+                }
+                
+                try {
+                    // Log must be durable before data file is changed
+                    file.fsync();
+                    published(target);
+                    
+                    // Readers pinned before target might read flushed pages from data file
+                    awaitReaders(target);
+                    
+                    _data.flushModifyBuffer();
+                    
+                    synchronized (LogImpl.this) {
+                        if (!_isClosed) {
+                            _file.checkpoint(target, dataLength);
+                        }
+                    }
+                }
+                catch (ServerClosedException ex) {
+                    // Storage has been closed during checkpoint
+                }
+                catch (IOException | RuntimeException ex) {
+                    _logger.error("Background checkpoint has failed.", ex);
+                    synchronized (LogImpl.this) {
+                        _checkpointError = ex;
+                    }
+                }
+                finally {
+                    synchronized (LogImpl.this) {
+                        _checkpointTarget = NO_CHECKPOINT;
+                        LogImpl.this.notifyAll();
+                    }
+                }
+            }
+        }
+    }
 }
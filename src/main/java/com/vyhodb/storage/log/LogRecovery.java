@@ -0,0 +1,357 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage.log;
+
+import com.vyhodb.server.Loggers;
+import com.vyhodb.storage.data.Data;
+import com.vyhodb.storage.pagefile.DeltaPage;
+import com.vyhodb.storage.pagefile.Destination;
+import com.vyhodb.storage.pagefile.PageHeader;
+import com.vyhodb.storage.pagefile.Source;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Recovers log after crash. Log is scanned once starting from checkpoint and only
+ * the latest image of each data page is remembered. Then these images are applied 
+ * in data pageId order by batches, next batch is read from log by separate thread 
+ * while current one is applied, so each page is written into data file only once.
+ * Delta pages are replayed afterwards in log order, record is skipped if full 
+ * image of its data page has been logged later.
+ * <p>
+ * Transactions are validated by {@linkplain TrxReader}, log is cut after the last 
+ * complete transaction.
+ *
+ * @author Igor Vykhodtcev
+ */
+final class LogRecovery {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int PROGRESS_STEPS = 10;
+    
+    private final Logger _logger = LoggerFactory.getLogger(Loggers.LOGGER_NAME_SERVER);
+    private final LogFile _file;
+    private final Data _data;
+    
+    // Data pageId -> log pageId of the latest page image
+    private final Long2LongOpenHashMap _latest = new Long2LongOpenHashMap();
+    
+    // Log pageIds of delta pages
+    private final LongArrayList _deltas = new LongArrayList();
+    private long _dataLength;
+    private long _trxCount;
+    
+    LogRecovery(LogFile file, Data data) {
+        _file = file;
+        _data = data;
+        _dataLength = file.getDataLength();
+        _latest.defaultReturnValue(PageHeader.NOT_EXISTED_LOG_PAGE_ID);
+    }
+    
+    long getTrxCount() {
+        return _trxCount;
+    }
+    
+    /**
+     * Scans and applies transactions, moves [next] pointer and data length. 
+     * Log file isn't truncated and checkpointed here.
+     * 
+     * @return count of recovered log pages
+     */
+    long recover() throws IOException {
+        final long start = _file.getCheckpoint();
+        final long pages = scan(start);
+        
+        if (pages > 0) {
+            apply(start + pages);
+            applyDeltas(start + pages);
+            
+            _file.incNext(pages);
+            _file.setDataLength(_dataLength);
+        }
+        
+        return pages;
+    }
+    
+    private long scan(long start) throws IOException {
+        final long size = _file.size();
+        final TrxIndex index = new TrxIndex(start);
+        final TrxReader reader = new TrxReader(_file, index, ByteBuffer.allocateDirect(PageHeader.PAGE_SIZE));
+        _file.position(start);
+        
+        long scanned = 0;
+        try
+        {
+            long trxSize;
+            while ((trxSize = reader.readTrx(size - start - scanned)) > 0)
+            {
+                index.commit();
+                scanned += trxSize;
+                _trxCount++;
+            }
+        }
+        catch (TransactionCorruptedException tce)
+        {
+            _logger.warn("Some transactions can't be recovered. {}", tce.getMessage());
+            _logger.debug("Some transactions can't be recovered. ", tce);
+        }
+        
+        _logger.info("Log scan completed. Transactions:{}, log pages:{}, distinct data pages:{}, delta pages:{}.", _trxCount, scanned, _latest.size(), _deltas.size());
+        return scanned;
+    }
+    
+    private void apply(long version) throws IOException {
+        final long[] dataPageIds = _latest.keySet().toLongArray();
+        LongArrays.quickSort(dataPageIds);
+        
+        final ByteBuffer[] buffers = new ByteBuffer[] {
+            ByteBuffer.allocateDirect(BATCH_SIZE << PageHeader.PAGE_SIZE_MULTIPLICATOR),
+            ByteBuffer.allocateDirect(BATCH_SIZE << PageHeader.PAGE_SIZE_MULTIPLICATOR)
+        };
+        
+        final ExecutorService reader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "vyhodb recovery reader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+        try {
+            final int batchCount = (dataPageIds.length + BATCH_SIZE - 1) / BATCH_SIZE;
+            Future<Integer> next = reader.submit(new BatchRead(dataPageIds, 0, buffers[0]));
+            
+            int count;
+            int progress = 0;
+            for (int batch = 0; batch < batchCount; batch++) {
+                count = await(next);
+                if (batch + 1 < batchCount) {
+                    next = reader.submit(new BatchRead(dataPageIds, (batch + 1) * BATCH_SIZE, buffers[(batch + 1) & 1]));
+                }
+                
+                applyBatch(new BufferSource(buffers[batch & 1]), count, version);
+                
+                if ((batch + 1) * PROGRESS_STEPS / batchCount > progress) {
+                    progress = (batch + 1) * PROGRESS_STEPS / batchCount;
+                    _logger.info("Log recovery: {}% applied ({} of {} pages).", progress * 100 / PROGRESS_STEPS, Math.min((batch + 1) * BATCH_SIZE, dataPageIds.length), dataPageIds.length);
+                }
+            }
+        }
+        finally {
+            reader.shutdownNow();
+        }
+    }
+    
+    private void applyDeltas(long version) throws IOException {
+        final ByteBuffer deltaPage = ByteBuffer.allocateDirect(PageHeader.PAGE_SIZE);
+        final ByteBuffer page = ByteBuffer.allocateDirect(PageHeader.PAGE_SIZE);
+        long logPageId;
+        long dataPageId;
+        int record;
+        
+        for (int i = 0; i < _deltas.size(); i++) {
+            logPageId = _deltas.getLong(i);
+            _file.position(logPageId);
+            _file.read(deltaPage, 0, 1);
+            
+            record = DeltaPage.FIRST_RECORD;
+            for (int r = DeltaPage.getRecordCount(deltaPage, 0); r > 0; r--) {
+                dataPageId = DeltaPage.getDataPageId(deltaPage, 0, record);
+                
+                // Full image logged later already contains delta
+                if (_latest.get(dataPageId) > logPageId) {
+                    record = DeltaPage.next(deltaPage, 0, record);
+                    continue;
+                }
+                
+                _data.readData(dataPageId, page, 0, Data.LATEST_SNAPSHOT);
+                record = DeltaPage.apply(deltaPage, 0, record, page, 0);
+                applyBatch(new BufferSource(page), 1, version);
+            }
+        }
+    }
+    
+    private void applyBatch(Source source, int count, long version) throws IOException {
+        if (count > _data.getModifyBufferRemaining()) {
+            _data.checkpoint();
+        }
+        
+        if (count > _data.getModifyBufferRemaining()) {
+            _data.applyDirect(source, count, version);
+        }
+        else {
+            _data.apply(source, count, version);
+        }
+    }
+    
+    private static int await(Future<Integer> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            throw new IOException("Can't read log pages.", ex.getCause());
+        }
+        catch (InterruptedException ex) {
+            throw new IOException("Log recovery has been interrupted.", ex);
+        }
+    }
+    
+    /**
+     * Reads latest images of batch pages into buffer, log is read in log pageId order.
+     */
+    private final class BatchRead implements Callable<Integer> {
+        
+        private final long[] _dataPageIds;
+        private final int _from;
+        private final ByteBuffer _buffer;
+        
+        BatchRead(long[] dataPageIds, int from, ByteBuffer buffer) {
+            _dataPageIds = dataPageIds;
+            _from = from;
+            _buffer = buffer;
+        }
+        
+        @Override
+        public Integer call() throws IOException {
+            final int count = Math.min(BATCH_SIZE, _dataPageIds.length - _from);
+            final long[] logPageIds = new long[count];
+            final int[] order = new int[count];
+            
+            for (int i = 0; i < count; i++) {
+                logPageIds[i] = _latest.get(_dataPageIds[_from + i]);
+                order[i] = i;
+            }
+            
+            IntArrays.quickSort(order, new AbstractIntComparator() {
+                @Override
+                public int compare(int k1, int k2) {
+                    return Long.compare(logPageIds[k1], logPageIds[k2]);
+                }
+            });
+            
+            for (int i = 0; i < count; i++) {
+                _file.position(logPageIds[order[i]]);
+                _file.read(_buffer, order[i], 1);
+            }
+            
+            return count;
+        }
+    }
+    
+    /**
+     * Remembers log pageIds of pages read by {@linkplain TrxReader}. Pages of current 
+     * transaction get into index only after transaction is read completely.
+     */
+    private final class TrxIndex implements Destination {
+        
+        private final LongArrayList _trxPages = new LongArrayList();
+        private final LongArrayList _trxDeltas = new LongArrayList();
+        private long _logPageId;
+        
+        TrxIndex(long start) {
+            _logPageId = start;
+        }
+        
+        @Override
+        public int write(ByteBuffer buffer, int offset, int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                if (PageHeader.isDelta(buffer, offset + i)) {
+                    _trxDeltas.add(_logPageId++);
+                }
+                else {
+                    _trxPages.add(PageHeader.getPageId(buffer, offset + i));
+                    _trxPages.add(_logPageId++);
+                }
+            }
+            return count;
+        }
+        
+        void commit() {
+            long dataPageId;
+            for (int i = 0; i < _trxPages.size(); i += 2) {
+                dataPageId = _trxPages.getLong(i);
+                _latest.put(dataPageId, _trxPages.getLong(i + 1));
+                
+                if (dataPageId >= _dataLength) {
+                    _dataLength = dataPageId + 1;
+                }
+            }
+            _trxPages.clear();
+            
+            _deltas.addAll(_trxDeltas);
+            _trxDeltas.clear();
+        }
+
+        @Override
+        public void transferFrom(Source source, ByteBuffer buffer, long count) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+    
+    /**
+     * Reads pages of batch buffer one after another.
+     */
+    private static final class BufferSource implements Source {
+        
+        private final ByteBuffer _buffer;
+        private int _index;
+        
+        BufferSource(ByteBuffer buffer) {
+            _buffer = buffer;
+        }
+        
+        @Override
+        public int read(ByteBuffer buffer, int offset, int count) throws IOException {
+            PageHeader.copyPages(_buffer, _index, buffer, offset, count);
+            _index += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
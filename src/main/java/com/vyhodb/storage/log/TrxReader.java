@@ -63,8 +63,8 @@ public final class TrxReader {
                 
             _source.read(_pageBuffer, 0, 1);
             
-            if (! (PageHeader.isStop(_pageBuffer, 0) || PageHeader.isIntermediate(_pageBuffer, 0))) {
-                throw new TransactionCorruptedException("Wrong page type. It is niether INTERMIDIATE nor STOP.");
+            if (! PageHeader.isKnownType(_pageBuffer, 0)) {
+                throw new TransactionCorruptedException("Wrong page type. Trx position byte has unknown flags.");
             }
             
             if (trxId == null) {
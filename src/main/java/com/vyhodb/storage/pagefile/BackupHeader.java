@@ -36,13 +36,14 @@ import java.util.UUID;
  */
 public class BackupHeader implements Header {
 
-    public static final short MAX_VERSION = 0;
+    public static final short MAX_VERSION = 1;
     private static final int HEADER_BACKUP_PREAMBULA = 1978170589;
     
     public long start;
     public long backupLength;
     public UUID masterLogId;
-    public short version;
+    public short version = MAX_VERSION;
+    public int pageSize = PageHeader.PAGE_SIZE;
     
     @Override
     public void read(ByteBuffer buffer) throws IOException {
@@ -53,6 +54,9 @@ public class BackupHeader implements Header {
         start = buffer.getLong();
         backupLength = buffer.getLong();
         masterLogId = PrimitiveUtils.getUUID(buffer);
+        pageSize = (version > 0) ? buffer.getInt() : PageHeader.LEGACY_PAGE_SIZE;
+        
+        PageHeader.checkPageSize(pageSize);
     }
 
     @Override
@@ -63,6 +67,9 @@ public class BackupHeader implements Header {
         buffer.putLong(start);
         buffer.putLong(backupLength);
         PrimitiveUtils.putUUID(masterLogId, buffer);
+        if (version > 0) {
+            buffer.putInt(pageSize);
+        }
     }
     
     public void checkVersion() throws IOException
@@ -0,0 +1,232 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.vyhodb.storage.pagefile;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Delta log page keeps changed byte runs of several data pages instead of their 
+ * full images. Page payload layout:
+ * <pre>
+ * short    record count
+ * short    used payload length
+ * records  {long data pageId, short run count, runs {short offset, short length, bytes}}
+ * </pre>
+ * Delta page has {@linkplain PageHeader#PAGE_TYPE_DELTA} flag set and 
+ * {@linkplain PageHeader#NOT_EXISTED_DATA_PAGE_ID} as pageId. Runs are applied 
+ * on top of the previous image of data page, so the first image of data page 
+ * after modify buffer swap is always logged in full (torn data page is restored 
+ * from it by recovery).
+ * 
+ * @author Igor Vykhodtcev
+ */
+public final class DeltaPage {
+    
+    private static final int OFFSET_RECORD_COUNT = 0;
+    private static final int OFFSET_LENGTH = 2;
+    private static final int RECORD_HEADER = 10;    // data pageId, run count
+    private static final int RUN_HEADER = 4;        // offset, length
+    
+    public static final int FIRST_RECORD = 4;
+    
+    /**
+     * Max record length, full page image is logged if delta is larger.
+     */
+    public static final int MAX_RECORD = PageHeader.PAGE_PAYLOAD / 2;
+    
+    public static void init(UUID trxId, ByteBuffer buffer, int pageIndex)
+    {
+        PageHeader.emptyPage(buffer, pageIndex);
+        PageHeader.setPageId(PageHeader.NOT_EXISTED_DATA_PAGE_ID, buffer, pageIndex);
+        PageHeader.setTrxId(trxId, buffer, pageIndex);
+        PageHeader.setDelta(buffer, pageIndex);
+        
+        ByteBuffer page = PageHeader.getPage(buffer, pageIndex);
+        page.putShort(page.position() + OFFSET_LENGTH, (short) FIRST_RECORD);
+    }
+    
+    /**
+     * Appends record (from position to limit) to delta page.
+     * 
+     * @return false if page has no room for record
+     */
+    public static boolean append(ByteBuffer record, ByteBuffer buffer, int pageIndex)
+    {
+        final ByteBuffer page = PageHeader.getPage(buffer, pageIndex);
+        final int base = page.position();
+        final int length = page.getShort(base + OFFSET_LENGTH);
+        
+        if (length + record.remaining() > PageHeader.PAGE_PAYLOAD)
+            return false;
+        
+        page.put(base + length, record, record.position(), record.remaining());
+        page.putShort(base + OFFSET_LENGTH, (short) (length + record.remaining()));
+        page.putShort(base + OFFSET_RECORD_COUNT, (short) (page.getShort(base + OFFSET_RECORD_COUNT) + 1));
+        return true;
+    }
+    
+    /**
+     * Removes record, following records are shifted.
+     */
+    public static void remove(ByteBuffer buffer, int pageIndex, int record)
+    {
+        final int next = next(buffer, pageIndex, record);
+        final ByteBuffer page = PageHeader.getPage(buffer, pageIndex);
+        final int base = page.position();
+        final int length = page.getShort(base + OFFSET_LENGTH);
+        
+        final byte[] tail = new byte[length - next];
+        page.get(base + next, tail);
+        page.put(base + record, tail);
+        
+        page.putShort(base + OFFSET_LENGTH, (short) (length - next + record));
+        page.putShort(base + OFFSET_RECORD_COUNT, (short) (page.getShort(base + OFFSET_RECORD_COUNT) - 1));
+    }
+    
+    public static int getRecordCount(ByteBuffer buffer, int pageIndex)
+    {
+        ByteBuffer page = PageHeader.getPage(buffer, pageIndex);
+        return page.getShort(page.position() + OFFSET_RECORD_COUNT);
+    }
+    
+    public static long getDataPageId(ByteBuffer buffer, int pageIndex, int record)
+    {
+        ByteBuffer page = PageHeader.getPage(buffer, pageIndex);
+        return page.getLong(page.position() + record);
+    }
+    
+    /**
+     * @return offset of record of specified data page, -1 if page has no such record
+     */
+    public static int find(ByteBuffer buffer, int pageIndex, long dataPageId)
+    {
+        int record = FIRST_RECORD;
+        for (int i = getRecordCount(buffer, pageIndex); i > 0; i--) {
+            if (getDataPageId(buffer, pageIndex, record) == dataPageId)
+                return record;
+            
+            record = next(buffer, pageIndex, record);
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * @return offset of the next record
+     */
+    public static int next(ByteBuffer buffer, int pageIndex, int record)
+    {
+        final ByteBuffer page = PageHeader.getPage(buffer, pageIndex);
+        final int base = page.position();
+        
+        int offset = base + record + RECORD_HEADER;
+        for (int i = page.getShort(base + record + 8); i > 0; i--) {
+            offset += RUN_HEADER + page.getShort(offset + 2);
+        }
+        
+        return offset - base;
+    }
+    
+    /**
+     * Applies runs of record to data page image, data page gets trx id of delta page.
+     * 
+     * @return offset of the next record
+     */
+    public static int apply(ByteBuffer buffer, int pageIndex, int record, ByteBuffer target, int targetIndex)
+    {
+        PageHeader.setTrxId(PageHeader.getTrxId(buffer, pageIndex), target, targetIndex);
+        PageHeader.setIntermediate(target, targetIndex);
+        
+        final ByteBuffer page = PageHeader.getPage(target, targetIndex);
+        final int targetBase = page.position();
+        final ByteBuffer delta = PageHeader.getPage(buffer, pageIndex);
+        final int base = delta.position();
+        
+        int offset = base + record + RECORD_HEADER;
+        int length;
+        for (int i = delta.getShort(base + record + 8); i > 0; i--) {
+            length = delta.getShort(offset + 2);
+            page.put(targetBase + delta.getShort(offset), delta, offset + RUN_HEADER, length);
+            offset += RUN_HEADER + length;
+        }
+        
+        return offset - base;
+    }
+    
+    /**
+     * Builds delta record of data page payload. Both page buffers are accessed by 
+     * absolute operations from zero index, record buffer is flipped.
+     * 
+     * @param record buffer of {@linkplain #MAX_RECORD} capacity
+     * @return record length, 0 if payload hasn't changed, -1 if delta is too large
+     */
+    public static int diff(long dataPageId, ByteBuffer original, ByteBuffer page, ByteBuffer record)
+    {
+        record.clear();
+        record.putLong(dataPageId);
+        record.putShort((short) 0);
+        
+        int runs = 0;
+        int start = mismatch(original, page, 0);
+        int end;
+        while (start < PageHeader.PAGE_PAYLOAD) {
+            // Equal gaps shorter than run header are included into run
+            end = start + 1;
+            for (int i = end; i < PageHeader.PAGE_PAYLOAD && i - end < RUN_HEADER; i++) {
+                if (original.get(i) != page.get(i)) {
+                    end = i + 1;
+                }
+            }
+            
+            if (record.remaining() < RUN_HEADER + end - start)
+                return -1;
+            
+            record.putShort((short) start);
+            record.putShort((short) (end - start));
+            record.put(record.position(), page, start, end - start);
+            record.position(record.position() + end - start);
+            runs++;
+            
+            start = mismatch(original, page, end);
+        }
+        
+        if (runs == 0)
+            return 0;
+        
+        record.putShort(8, (short) runs);
+        record.flip();
+        return record.remaining();
+    }
+    
+    private static int mismatch(ByteBuffer original, ByteBuffer page, int from)
+    {
+        if (from >= PageHeader.PAGE_PAYLOAD)
+            return PageHeader.PAGE_PAYLOAD;
+        
+        final int length = PageHeader.PAGE_PAYLOAD - from;
+        final int index = original.slice(from, length).mismatch(page.slice(from, length));
+        return (index < 0) ? PageHeader.PAGE_PAYLOAD : from + index;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage.pagefile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+
+/**
+ * Writes pages into channel compressed by {@linkplain Deflater}. Each write 
+ * produces frames of at most {@linkplain #MAX_FRAME_SIZE} uncompressed bytes: 
+ * page count (int), compressed length (int) and compressed bytes. Frames are 
+ * read back by {@linkplain SourceInflater}, which rejects larger ones.
+ * <p>
+ * {@linkplain #close()} releases deflater, channel is left open.
+ *
+ * @author Igor Vykhodtcev
+ */
+public final class DestinationDeflater implements Destination {
+
+    static final int FRAME_HEADER = 8;
+    static final int MAX_FRAME_SIZE = 1 << 20;
+    
+    private final WritableByteChannel _channel;
+    private final Deflater _deflater = new Deflater(Deflater.BEST_SPEED);
+    private ByteBuffer _frame;
+    
+    public DestinationDeflater(WritableByteChannel channel)
+    {
+        _channel = channel;
+    }
+    
+    /**
+     * @return max count of pages in frame
+     */
+    static int getMaxFramePages() {
+        return MAX_FRAME_SIZE >> PageHeader.PAGE_SIZE_MULTIPLICATOR;
+    }
+    
+    /**
+     * Stored deflate blocks take 5 bytes per 64K of input and zlib wrapper 6 bytes, 
+     * so compressed frame never exceeds this length.
+     */
+    static int getMaxLength(int pageCount) {
+        final int size = pageCount << PageHeader.PAGE_SIZE_MULTIPLICATOR;
+        return size + (size >> 4) + 64;
+    }
+    
+    @Override
+    public int write(ByteBuffer buffer, int offset, int count) throws IOException {
+        final int maxPages = getMaxFramePages();
+        for (int i = 0; i < count; i += maxPages) {
+            writeFrame(buffer, offset + i, Math.min(maxPages, count - i));
+        }
+        
+        return count;
+    }
+    
+    private void writeFrame(ByteBuffer buffer, int offset, int count) throws IOException {
+        final int off = offset << PageHeader.PAGE_SIZE_MULTIPLICATOR;
+        final int size = count << PageHeader.PAGE_SIZE_MULTIPLICATOR;
+        
+        if (_frame == null || _frame.capacity() < FRAME_HEADER + getMaxLength(count)) {
+            _frame = ByteBuffer.allocateDirect(FRAME_HEADER + getMaxLength(count));
+        }
+        
+        buffer.clear();
+        buffer.limit(off + size);
+        buffer.position(off);
+        
+        _deflater.reset();
+        _deflater.setInput(buffer);
+        _deflater.finish();
+        
+        _frame.clear();
+        _frame.limit(FRAME_HEADER + getMaxLength(count));
+        _frame.position(FRAME_HEADER);
+        while (!_deflater.finished()) {
+            if (!_frame.hasRemaining())
+                throw new IOException("Compressed frame exceeds max length. Page count:" + count);
+            _deflater.deflate(_frame);
+        }
+        
+        _frame.putInt(0, count);
+        _frame.putInt(4, _frame.position() - FRAME_HEADER);
+        _frame.flip();
+        IOUtils.writeNIO(_channel, _frame);
+    }
+
+    @Override
+    public void transferFrom(Source source, ByteBuffer buffer, long count) throws IOException {
+        IOUtils.copy(source, this, buffer, count);
+    }
+
+    @Override
+    public void close() throws IOException {
+        _deflater.end();
+    }
+}
@@ -44,7 +44,16 @@ public class HeaderFile extends PageFile {
     
     public void readHeader(Header header) throws IOException {
         super.position(HEADER_PAGE_ID);
-        read(directBuffer, 0, 1);
+        try {
+            super.read(directBuffer, 0, 1);
+        }
+        catch(IOException ex) {
+            // Header page crc can't be valid if file has been created with another 
+            // page size, header read reports it more clearly
+            directBuffer.clear();
+            header.read(directBuffer);
+            throw ex;
+        }
         
         directBuffer.clear();
         header.read(directBuffer);
@@ -60,7 +69,7 @@ public class HeaderFile extends PageFile {
         
         // Writes page
         super.position(HEADER_PAGE_ID);
-        write(directBuffer, 0, 1);
+        super.write(directBuffer, 0, 1);
     }
 
     @Override
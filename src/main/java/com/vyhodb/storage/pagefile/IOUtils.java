@@ -26,7 +26,10 @@ package com.vyhodb.storage.pagefile;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 
@@ -36,6 +39,54 @@ import java.nio.channels.WritableByteChannel;
  */
 public class IOUtils {
 
+    // sun.misc.Unsafe.invokeCleaner(ByteBuffer), null if it isn't available
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        }
+        catch(ReflectiveOperationException | RuntimeException ex) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+    
+    /**
+     * Returns true if mapped buffers can be unmapped explicitly by {@linkplain #unmap(MappedByteBuffer)}.
+     */
+    public static boolean isUnmapSupported() {
+        return INVOKE_CLEANER != null;
+    }
+    
+    /**
+     * Unmaps buffer without waiting for GC, so that file can be deleted or truncated 
+     * and address space is released. Buffer must not be accessed afterwards.
+     * 
+     * @return false if unmapping isn't supported
+     */
+    public static boolean unmap(MappedByteBuffer buffer) {
+        if (buffer == null || INVOKE_CLEANER == null) 
+            return false;
+        
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            return true;
+        }
+        catch(ReflectiveOperationException | RuntimeException ex) {
+            return false;
+        }
+    }
+
     public static final void copy(Source source, Destination dest, ByteBuffer buffer, long count) throws IOException {
         final long bufferSize = PageHeader.getBufferSize(buffer);
         long copied = 0;
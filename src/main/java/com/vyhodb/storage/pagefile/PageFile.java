@@ -44,6 +44,11 @@ public class PageFile implements File {
 
     private static final String READ_ONLY_MODE = "File is in read-only mode. File name:";
     
+    /**
+     * Max count of pages read from (written to) heap buffer by single operation
+     */
+    public static final int IO_CHUNK = 32;
+    
     private final FileChannel _fc;
     protected final Crc crc;
     private final String _fileName;
@@ -57,6 +62,7 @@ public class PageFile implements File {
      * http://www.evanjones.ca/software/java-bytebuffers.html
      */
     protected final ByteBuffer directBuffer = ByteBuffer.allocateDirect(PageHeader.PAGE_SIZE);
+    private ByteBuffer _chunkBuffer;
      
     public PageFile(String fileName, boolean exists) throws IOException {
         this(fileName, exists, false);
@@ -137,11 +143,20 @@ public class PageFile implements File {
         {
             IOUtils.writeNIO(_fc, buffer, offset, count);
         }
+        else if (count == 1)
+        {
+            PageHeader.copyPages(buffer, offset, directBuffer, 0, 1);
+            IOUtils.writeNIO(_fc, directBuffer, 0, 1);
+        }
         else
         {
-            for (int i = 0; i < count; i++) {
-                PageHeader.copyPages(buffer, offset + i, directBuffer, 0, 1);
-                IOUtils.writeNIO(_fc, directBuffer, 0, 1);
+            final ByteBuffer chunkBuffer = getChunkBuffer();
+            
+            int chunk;
+            for (int i = 0; i < count; i += chunk) {
+                chunk = Math.min(count - i, IO_CHUNK);
+                PageHeader.copyPages(buffer, offset + i, chunkBuffer, 0, chunk);
+                IOUtils.writeNIO(_fc, chunkBuffer, 0, chunk);
             }
         }
         
@@ -157,13 +172,22 @@ public class PageFile implements File {
         {
             IOUtils.readNIO(_fc, buffer, offset, count);
         }
+        else if (count == 1)
+        {
+            IOUtils.readNIO(_fc, directBuffer, 0, 1);
+            PageHeader.copyPages(directBuffer, 0, buffer, offset, 1);
+        }
         else
         {
-            for (int i = 0; i < count; i++) {
-                IOUtils.readNIO(_fc, directBuffer, 0, 1);
-                PageHeader.copyPages(directBuffer, 0, buffer, offset + i, 1);
+            final ByteBuffer chunkBuffer = getChunkBuffer();
+            
+            int chunk;
+            for (int i = 0; i < count; i += chunk) {
+                chunk = Math.min(count - i, IO_CHUNK);
+                IOUtils.readNIO(_fc, chunkBuffer, 0, chunk);
+                PageHeader.copyPages(chunkBuffer, 0, buffer, offset + i, chunk);
             }
-         }
+        }
         
         // Validates crc
         for (int i = 0; i < count; i++) {
@@ -175,6 +199,13 @@ public class PageFile implements File {
         return count;
     }
 
+    private ByteBuffer getChunkBuffer() {
+        if (_chunkBuffer == null) {
+            _chunkBuffer = ByteBuffer.allocateDirect(IO_CHUNK << PageHeader.PAGE_SIZE_MULTIPLICATOR);
+        }
+        return _chunkBuffer;
+    }
+
     @Override
     public String filename() {
         return _fileName;
@@ -200,21 +231,49 @@ public class PageFile implements File {
         IOUtils.copy(source, this, buffer, count);
     }
     
+    /**
+     * Writes log pages at their data pageIds, runs of delta page are applied to 
+     * pages of this file.
+     */
     private class Applier implements Destination
     {
+        private ByteBuffer _page;
 
         @Override
         public int write(ByteBuffer buffer, int offset, int count) throws IOException {
             long pageId;
             
             for (int i = 0; i < count; i++) {
-                pageId = PageHeader.getPageId(buffer, offset + i);
-                position(pageId);
-                PageFile.this.write(buffer, offset + i, 1);
+                if (PageHeader.isDelta(buffer, offset + i)) {
+                    applyDelta(buffer, offset + i);
+                }
+                else {
+                    pageId = PageHeader.getPageId(buffer, offset + i);
+                    position(pageId);
+                    PageFile.this.write(buffer, offset + i, 1);
+                }
             }
             
             return count;
         }
+        
+        private void applyDelta(ByteBuffer buffer, int pageIndex) throws IOException {
+            if (_page == null) {
+                _page = ByteBuffer.allocateDirect(PageHeader.PAGE_SIZE);
+            }
+            
+            long pageId;
+            int record = DeltaPage.FIRST_RECORD;
+            for (int r = DeltaPage.getRecordCount(buffer, pageIndex); r > 0; r--) {
+                pageId = DeltaPage.getDataPageId(buffer, pageIndex, record);
+                position(pageId);
+                PageFile.this.read(_page, 0, 1);
+                
+                record = DeltaPage.apply(buffer, pageIndex, record, _page, 0);
+                position(pageId);
+                PageFile.this.write(_page, 0, 1);
+            }
+        }
 
         @Override
         public void transferFrom(Source source, ByteBuffer buffer, long count) throws IOException {
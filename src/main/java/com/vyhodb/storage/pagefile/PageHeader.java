@@ -26,26 +26,49 @@ package com.vyhodb.storage.pagefile;
 
 import com.vyhodb.server.PrimitiveUtils;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.UUID;
 
 /**
+ * Page size is taken from [com.vyhodb.pageSize] system property (1024 by default),
+ * allowed values are 1024, 2048, 4096, 8192 and 16384. Page size is stored in 
+ * log and backup headers, storage can be opened only with the same page size
+ * it has been created with.
  *
  * @author User
  */
 public final class PageHeader {
     
+    private static final String PROPERTY_PAGE_SIZE = "com.vyhodb.pageSize";
+    
+    public static final int LEGACY_PAGE_SIZE = 1024;
+    public static final int MIN_PAGE_SIZE = 1024;
+    public static final int MAX_PAGE_SIZE = 16384;
+    
     public static final byte TRX_POSITION_INTERMEDIATE = 0;
     public static final byte TRX_POSITION_STOP = 1;
     
+    // Flag of trx position byte, log page keeps delta records (see DeltaPage)
+    public static final byte PAGE_TYPE_DELTA = 2;
+    
     public static final long MIN_LOG_PAGE_ID = Long.MIN_VALUE + 1;
     public static final long MIN_DATA_PAGE_ID = 0;
     public static final long NOT_EXISTED_LOG_PAGE_ID = Long.MIN_VALUE;
     public static final long NOT_EXISTED_DATA_PAGE_ID = Long.MIN_VALUE;
     
     public static final int PAGE_HEADER = 29;   // pageId, trx_uuid, trx_pos, crc
-    public static final int PAGE_SIZE = 1024;
-    public static final int PAGE_SIZE_MULTIPLICATOR = 10;
+    public static final int PAGE_SIZE;
+    public static final int PAGE_SIZE_MULTIPLICATOR;
+    
+    static {
+        PAGE_SIZE = Integer.getInteger(PROPERTY_PAGE_SIZE, LEGACY_PAGE_SIZE);
+        
+        if (PAGE_SIZE < MIN_PAGE_SIZE || PAGE_SIZE > MAX_PAGE_SIZE || Integer.bitCount(PAGE_SIZE) != 1)
+            throw new IllegalArgumentException("Illegal page size: " + PAGE_SIZE + ". Page size must be power of 2 and " + MIN_PAGE_SIZE + " <= [" + PROPERTY_PAGE_SIZE + "] <= " + MAX_PAGE_SIZE);
+        
+        PAGE_SIZE_MULTIPLICATOR = Integer.numberOfTrailingZeros(PAGE_SIZE);
+    }
 
     public static final int PAGE_PAYLOAD = PAGE_SIZE - PAGE_HEADER;
         
@@ -65,6 +88,15 @@ public final class PageHeader {
         }
     }
     
+    /**
+     * Checks page size read from file header.
+     */
+    public static void checkPageSize(int pageSize) throws IOException
+    {
+        if (pageSize != PAGE_SIZE)
+            throw new IOException("File has been created with page size " + pageSize + ", current page size is " + PAGE_SIZE + ". Please set [" + PROPERTY_PAGE_SIZE + "] system property to " + pageSize + ".");
+    }
+    
     public static long getPageId(ByteBuffer page, int index)
     {
         return getPage(page, index).
@@ -118,10 +150,14 @@ public final class PageHeader {
         return PrimitiveUtils.getUUID(OFFSET_TRX_ID + page.position(), page);
     }
     
+    /**
+     * Sets STOP flag, delta page stays delta page.
+     */
     public static void setStop(ByteBuffer buffer, int pageIndex)
     {
         ByteBuffer page = getPage(buffer, pageIndex);
-        page.put(OFFSET_TRX_POSITION + page.position(), TRX_POSITION_STOP);
+        final int offset = OFFSET_TRX_POSITION + page.position();
+        page.put(offset, (byte) (page.get(offset) | TRX_POSITION_STOP));
     }
     
     public static void setIntermediate(ByteBuffer buffer, int pageIndex)
@@ -133,13 +169,52 @@ public final class PageHeader {
     public static boolean isStop(ByteBuffer buffer, int pageIndex)
     {
         ByteBuffer page = getPage(buffer, pageIndex);
-        return TRX_POSITION_STOP == page.get(OFFSET_TRX_POSITION + page.position());
+        return (page.get(OFFSET_TRX_POSITION + page.position()) & TRX_POSITION_STOP) != 0;
     }
     
     public static boolean isIntermediate(ByteBuffer buffer, int pageIndex)
     {
         ByteBuffer page = getPage(buffer, pageIndex);
-        return TRX_POSITION_INTERMEDIATE == page.get(OFFSET_TRX_POSITION + page.position());
+        return (page.get(OFFSET_TRX_POSITION + page.position()) & TRX_POSITION_STOP) == 0;
+    }
+    
+    public static void setDelta(ByteBuffer buffer, int pageIndex)
+    {
+        ByteBuffer page = getPage(buffer, pageIndex);
+        page.put(OFFSET_TRX_POSITION + page.position(), PAGE_TYPE_DELTA);
+    }
+    
+    public static boolean isDelta(ByteBuffer buffer, int pageIndex)
+    {
+        ByteBuffer page = getPage(buffer, pageIndex);
+        return (page.get(OFFSET_TRX_POSITION + page.position()) & PAGE_TYPE_DELTA) != 0;
+    }
+    
+    /**
+     * @return false if trx position byte has unknown flags
+     */
+    public static boolean isKnownType(ByteBuffer buffer, int pageIndex)
+    {
+        ByteBuffer page = getPage(buffer, pageIndex);
+        return (page.get(OFFSET_TRX_POSITION + page.position()) & ~(TRX_POSITION_STOP | PAGE_TYPE_DELTA)) == 0;
+    }
+    
+    /**
+     * Copies page payload, starting from [offset], into destination buffer until 
+     * destination buffer has no remaining or payload ends. Source buffer is accessed 
+     * by absolute operations only, its position and limit aren't changed.
+     * 
+     * @return count of copied bytes
+     */
+    public static int copyPayload(ByteBuffer src, int srcIndex, int offset, ByteBuffer dst)
+    {
+        final int position = dst.position();
+        final int length = Math.min(PAGE_PAYLOAD - offset, dst.remaining());
+        
+        dst.put(position, src, (srcIndex << PAGE_SIZE_MULTIPLICATOR) + offset, length);
+        dst.position(position + length);
+        
+        return length;
     }
     
     public static void copyPages(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count)
@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage.pagefile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads pages written by {@linkplain DestinationDeflater}. Frame is read from 
+ * channel only when all pages of previous one have been consumed, so nothing 
+ * is read ahead of the last requested page.
+ * <p>
+ * Frame header is checked against max frame size of sender before any buffer 
+ * is allocated, so corrupted or hostile header can't exhaust memory.
+ * <p>
+ * {@linkplain #close()} releases inflater, channel is left open.
+ *
+ * @author Igor Vykhodtcev
+ */
+public final class SourceInflater implements Source {
+
+    private final ReadableByteChannel _channel;
+    private final Inflater _inflater = new Inflater();
+    private final ByteBuffer _header = ByteBuffer.allocateDirect(DestinationDeflater.FRAME_HEADER);
+    private ByteBuffer _compressed;
+    private ByteBuffer _pages;
+    private int _pageIndex;
+    private int _pageCount;
+    
+    public SourceInflater(ReadableByteChannel channel)
+    {
+        _channel = channel;
+    }
+    
+    @Override
+    public int read(ByteBuffer buffer, int offset, int count) throws IOException {
+        int n;
+        for (int i = 0; i < count; i += n) {
+            if (_pageIndex == _pageCount) {
+                readFrame();
+            }
+            
+            n = Math.min(count - i, _pageCount - _pageIndex);
+            PageHeader.copyPages(_pages, _pageIndex, buffer, offset + i, n);
+            _pageIndex += n;
+        }
+        
+        return count;
+    }
+    
+    private void readFrame() throws IOException {
+        _header.clear();
+        IOUtils.readNIO(_channel, _header);
+        
+        final int pageCount = _header.getInt(0);
+        final int length = _header.getInt(4);
+        if (pageCount < 1 || pageCount > DestinationDeflater.getMaxFramePages() || length < 0 || length > DestinationDeflater.getMaxLength(pageCount))
+            throw new IOException("Wrong compressed frame header. Page count:" + pageCount + ", length:" + length);
+        
+        // Reads compressed bytes
+        if (_compressed == null || _compressed.capacity() < length) {
+            _compressed = ByteBuffer.allocateDirect(length);
+        }
+        _compressed.clear();
+        _compressed.limit(length);
+        IOUtils.readNIO(_channel, _compressed);
+        _compressed.flip();
+        
+        // Inflates pages
+        final int size = pageCount << PageHeader.PAGE_SIZE_MULTIPLICATOR;
+        if (_pages == null || _pages.capacity() < size) {
+            _pages = ByteBuffer.allocateDirect(size);
+        }
+        _pages.clear();
+        _pages.limit(size);
+        
+        _inflater.reset();
+        _inflater.setInput(_compressed);
+        try {
+            while (_pages.hasRemaining() && !_inflater.finished()) {
+                final int remaining = _inflater.getRemaining();
+                final int n = _inflater.inflate(_pages);
+                
+                // Frames are written without preset dictionary
+                if (_inflater.needsDictionary())
+                    throw new IOException("Compressed frame is corrupted, it requires dictionary. Expected pages:" + pageCount);
+                
+                if (n == 0 && _inflater.getRemaining() == remaining)
+                    throw new IOException("Compressed frame is corrupted, inflating makes no progress. Expected pages:" + pageCount);
+            }
+        }
+        catch(DataFormatException ex) {
+            throw new IOException("Compressed frame is corrupted.", ex);
+        }
+        
+        if (_pages.hasRemaining() || !_inflater.finished())
+            throw new IOException("Compressed frame is corrupted. Expected pages:" + pageCount);
+        
+        _pageIndex = 0;
+        _pageCount = pageCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _inflater.end();
+    }
+}
@@ -27,6 +27,7 @@ package com.vyhodb.storage.pagestorage;
 import com.vyhodb.server.Loggers;
 import com.vyhodb.server.TransactionRolledbackException;
 import com.vyhodb.storage.StorageConfig;
+import com.vyhodb.storage.pagefile.IOUtils;
 import it.unimi.dsi.fastutil.longs.Long2LongMap;
 import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectIterator;
@@ -34,11 +35,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.UUID;
 
 /**
@@ -49,7 +51,9 @@ import java.util.UUID;
  * writing: 0 => Long.MIN_VALUE
  * reading: 0 => Long.MIN_VALUE, Long.MIN_VALUE => 0
  * 
- * 
+ * Sparse file is memory mapped by segments, which are mapped on first write,
+ * so that get/put of spilled mapping doesn't make system calls. Mapped segments
+ * are unmapped on closing, so temporary file is deleted at once.
  * 
  * @author Igor Vykhodtsev
  * @since vyhodb 0.9.0
@@ -61,15 +65,19 @@ class Data2LogMap {
     private final static float MAP_LOAD_FACTOR = .75f;
     private final static int INITIAL_MAP_SIZE = 2048;
     
+    // 16 MB segment keeps mapping of 2M data pages
+    private final static int SEGMENT_SHIFT = 24;
+    private final static int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private final static int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    
     private final static String ERROR_OPENING_FILE = "Exception at opening trx page mapping file.";
     private final static String ERROR_WRITING_FILE = "Exception at writing in trx page mapping file.";
-    private final static String ERROR_READING_FILE = "Exception at reading from trx page mapping file.";
     
     private boolean _inMemory = true;
     private Long2LongOpenHashMap _data2log;
     
     private FileChannel _fc;
-    private ByteBuffer _buffer;
+    private MappedByteBuffer[] _segments;
     
     private final int maxMapSize;
     private String directory;
@@ -87,31 +95,22 @@ class Data2LogMap {
             return _data2log.get(pageDataId);
         }
         else {
-            try {
-                // Changes position
-                _fc.position(pageDataId << 3);
-                
-                // Reads logPageId
-                _buffer.clear();
-                if (_fc.read(_buffer) <= 0) {
-                    return Long.MIN_VALUE;  // End of file reached, 
-                                            // which means that we don't have required mapping for dataPageId in file.
-                }
-                _buffer.clear();
-                
-                // Transforms read logPageId
-                long readLogPageId = _buffer.getLong();
-                if (readLogPageId == 0) {
-                    return Long.MIN_VALUE;
-                } else if (readLogPageId == Long.MIN_VALUE) {
-                    return 0;
-                } else {
-                    return readLogPageId;
-                }
+            final long position = pageDataId << 3;
+            final int segment = (int) (position >>> SEGMENT_SHIFT);
+            
+            if (segment >= _segments.length || _segments[segment] == null) {
+                return Long.MIN_VALUE;  // Segment hasn't been written,
+                                        // which means that we don't have required mapping for dataPageId in file.
             }
-            catch(IOException ioe) {
-                _logger.error(ERROR_READING_FILE, ioe);
-                throw new TransactionRolledbackException(ERROR_READING_FILE, ioe);
+            
+            // Transforms read logPageId
+            long readLogPageId = _segments[segment].getLong((int) (position & SEGMENT_MASK));
+            if (readLogPageId == 0) {
+                return Long.MIN_VALUE;
+            } else if (readLogPageId == Long.MIN_VALUE) {
+                return 0;
+            } else {
+                return readLogPageId;
             }
         }
     }
@@ -124,24 +123,36 @@ class Data2LogMap {
         if (_inMemory) {
             _data2log.put(pageDataId, logPageId);
         } else {
+            putInFile(pageDataId, logPageId);
+        }
+    }
+    
+    private void putInFile(long pageDataId, long logPageId) {
+        // Transforms logPageId
+        if (logPageId == 0) {
+            logPageId = Long.MIN_VALUE;
+        }
+        
+        final long position = pageDataId << 3;
+        getSegment((int) (position >>> SEGMENT_SHIFT)).putLong((int) (position & SEGMENT_MASK), logPageId);
+    }
+    
+    private MappedByteBuffer getSegment(int segment) {
+        if (segment >= _segments.length) {
+            _segments = Arrays.copyOf(_segments, segment + 1);
+        }
+        
+        if (_segments[segment] == null) {
             try {
-                // Transforms logPageId
-                if (logPageId == 0) {
-                    logPageId = Long.MIN_VALUE;
-                }
-                
-                // Writes logPageId
-                _buffer.clear();
-                _buffer.putLong(logPageId);
-                _buffer.clear();
-                _fc.position(pageDataId << 3);
-                _fc.write(_buffer);
+                _segments[segment] = _fc.map(FileChannel.MapMode.READ_WRITE, (long) segment << SEGMENT_SHIFT, SEGMENT_SIZE);
             }
             catch(IOException ioe) {
                 _logger.error(ERROR_WRITING_FILE, ioe);
                 throw new TransactionRolledbackException(ERROR_WRITING_FILE, ioe);
             }
         }
+        
+        return _segments[segment];
     }
     
     private void moveToFile() {
@@ -155,32 +166,14 @@ class Data2LogMap {
                     StandardOpenOption.WRITE,
                     StandardOpenOption.DELETE_ON_CLOSE);
             _fc.lock();
+            _segments = new MappedByteBuffer[0];
             
             ObjectIterator<Long2LongMap.Entry> iterator = _data2log.long2LongEntrySet().fastIterator();
-            
-            _buffer = ByteBuffer.allocate(8);
             Long2LongMap.Entry entry = null;
-            long dataPageId;
-            long logPageId;
-            long offset;
             
             while(iterator.hasNext()) {
                 entry = iterator.next();
-                dataPageId = entry.getLongKey();
-                logPageId = entry.getLongValue();
-                
-                if (logPageId == 0) {
-                    logPageId = Long.MIN_VALUE;
-                }
-                
-                offset = dataPageId * 8;
-                
-                _buffer.clear();
-                _buffer.putLong(logPageId);
-                _buffer.clear();
-                
-                _fc.position(offset);
-                _fc.write(_buffer);
+                putInFile(entry.getLongKey(), entry.getLongValue());
             }
         } 
         catch (IOException ioe) {
@@ -210,6 +203,11 @@ class Data2LogMap {
     
     public void close() {
         if (! _inMemory) {
+            for (MappedByteBuffer segment : _segments) {
+                IOUtils.unmap(segment);
+            }
+            _segments = null;
+            
             try {
                 _fc.close();
             } catch(IOException ioe) {
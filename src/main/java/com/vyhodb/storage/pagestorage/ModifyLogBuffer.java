@@ -26,12 +26,24 @@ package com.vyhodb.storage.pagestorage;
 
 import com.vyhodb.admin.LogInfo;
 import com.vyhodb.storage.StorageConfig;
+import com.vyhodb.storage.pagefile.DeltaPage;
 import com.vyhodb.storage.pagefile.PageHeader;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 
 import java.nio.ByteBuffer;
+import java.util.UUID;
 
+/**
+ * Collects transaction log pages. Delta records of several data pages are packed 
+ * into the same delta log page while it's in buffer.
+ * 
+ * @author Igor Vykhodtcev
+ */
 public class ModifyLogBuffer {
     
+    private static final long NO_TRUNCATE = -1L;
+    
     private ByteBuffer _logBuffer;
     private final PageStorage _pageStorage;
     
@@ -43,9 +55,23 @@ public class ModifyLogBuffer {
     //private Long2LongOpenHashMap _data2log;
     private Data2LogMap _data2log;
     
-    public ModifyLogBuffer(PageStorage pageStorage, StorageConfig config) {
+    // Data pageId -> log pageId of delta page
+    private final Long2LongOpenHashMap _deltas = new Long2LongOpenHashMap();
+    private long _deltaLogPageId = PageHeader.NOT_EXISTED_LOG_PAGE_ID;
+    private ByteBuffer _deltaPage;
+    private final UUID _trxId;
+    
+    // Count of data page images, see PageStorage#commitModify()
+    private long _pageCount;
+    
+    // Data length data file is cut down to on commit, see PageStorage#commitTruncate()
+    private long _truncateLength = NO_TRUNCATE;
+    
+    public ModifyLogBuffer(PageStorage pageStorage, UUID trxId, StorageConfig config) {
         _pageStorage = pageStorage;
+        _trxId = trxId;
         _data2log = new Data2LogMap(config);
+        _deltas.defaultReturnValue(PageHeader.NOT_EXISTED_LOG_PAGE_ID);
     }
     
     public LogInfo start() {
@@ -60,32 +86,65 @@ public class ModifyLogBuffer {
         return _logInfo;
     }
     
+    /**
+     * Data file is truncated down to specified length when transaction is committed.
+     */
+    public void truncate(long dataLength) {
+        _truncateLength = dataLength;
+    }
+    
     public void commit() {
         if (_next == _logInfo.getNext()) {
-            _pageStorage.rollbackModify();
+            if (_truncateLength == NO_TRUNCATE) {
+                _pageStorage.rollbackModify();
+            }
+            else {
+                _pageStorage.commitTruncate(0, 0, _truncateLength);
+            }
         }
         else {
+            // Modify buffer is going to be swapped or checkpointed by this transaction, so 
+            // pages logged as delta aren't in active half anymore. Their full images 
+            // are logged after deltas.
+            if (!_deltas.isEmpty() && _pageCount + 1 > _pageStorage.getModifyBufferRemaining()) {
+                writeFullImages();
+            }
+            
             // Writes STOP page
             {
                 long lastLogPageId = _next - 1;
-                ByteBuffer lastPage = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
                 
-                // Reads last page
                 if (inBuffer(lastLogPageId)) {
-                    int offset = (int) (lastLogPageId - _bufferStart);
-                    PageHeader.copyPages(_logBuffer, offset, lastPage, 0, 1);
+                    // Common case, STOP flag is set in place and the rest of 
+                    // transaction is written by single append
+                    PageHeader.setStop(_logBuffer, (int) (lastLogPageId - _bufferStart));
                 }
                 else {
+                    // Last page has been already appended, it's appended once again with STOP flag
+                    ByteBuffer lastPage = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
                     _pageStorage.logRead(lastLogPageId, lastPage, 0);
+                    
+                    if (PageHeader.isDelta(lastPage, 0)) {
+                        // Delta records can't be applied twice, so empty delta page is appended
+                        DeltaPage.init(_trxId, lastPage, 0);
+                        PageHeader.setStop(lastPage, 0);
+                        appendPage(lastPage);
+                    }
+                    else {
+                        long dataPageId = PageHeader.getPageId(lastPage, 0);
+                        PageHeader.setStop(lastPage, 0);
+                        writePage(dataPageId, lastPage);
+                    }
                 }
-                
-                long dataPageId = PageHeader.getPageId(lastPage, 0);
-                PageHeader.setStop(lastPage, 0);
-                writePage(dataPageId, lastPage);
             }
             
             flush();
-            _pageStorage.commitModify(_next - _logInfo.getNext());
+            if (_truncateLength == NO_TRUNCATE) {
+                _pageStorage.commitModify(_next - _logInfo.getNext(), _pageCount);
+            }
+            else {
+                _pageStorage.commitTruncate(_next - _logInfo.getNext(), _pageCount, _truncateLength);
+            }
         }
         
         _data2log.close();
@@ -110,6 +169,105 @@ public class ModifyLogBuffer {
         } 
         else {
             _pageStorage.dataRead(pageDataId, page, 0);
+            
+            logPageId = _deltas.get(pageDataId);
+            if (logPageId != PageHeader.NOT_EXISTED_LOG_PAGE_ID) {
+                applyDelta(pageDataId, logPageId, page);
+            }
+        }
+    }
+    
+    /**
+     * @return true if delta record can be written for data page: page hasn't been 
+     * logged in full by this transaction, its previous delta record (if any) is 
+     * still in buffer and its full image is in log
+     */
+    public boolean canWriteDelta(long dataPageId) {
+        if (_data2log.get(dataPageId) != Long.MIN_VALUE)
+            return false;
+        
+        final long logPageId = _deltas.get(dataPageId);
+        if (logPageId != PageHeader.NOT_EXISTED_LOG_PAGE_ID && !inBuffer(logPageId))
+            return false;
+        
+        return _pageStorage.canLogDelta(dataPageId);
+    }
+    
+    /**
+     * @return true if data page has delta record, so new record must be built 
+     * against committed image (see {@linkplain #readCommitted}) to replace it
+     */
+    public boolean hasDelta(long dataPageId) {
+        return _deltas.containsKey(dataPageId);
+    }
+    
+    public void readCommitted(long dataPageId, ByteBuffer page) {
+        _pageStorage.dataRead(dataPageId, page, 0);
+    }
+    
+    /**
+     * Writes delta record (see {@linkplain DeltaPage#diff}) into current delta 
+     * page, new delta page is allocated if current one is full or has been already 
+     * appended to log. Previous record of the same data page is removed.
+     */
+    public void writeDelta(long dataPageId, ByteBuffer record) {
+        final long logPageId = _deltas.get(dataPageId);
+        if (logPageId != PageHeader.NOT_EXISTED_LOG_PAGE_ID) {
+            final int bufferPos = (int)(logPageId - _bufferStart);
+            DeltaPage.remove(_logBuffer, bufferPos, DeltaPage.find(_logBuffer, bufferPos, dataPageId));
+            _pageCount--;
+        }
+        
+        if (!inBuffer(_deltaLogPageId) || !DeltaPage.append(record, _logBuffer, (int)(_deltaLogPageId - _bufferStart))) {
+            if ( (_next - _bufferStart) >= _bufferCapacity) {
+                flush();
+            }
+            
+            _deltaLogPageId = _next++;
+            int bufferPos = (int)(_deltaLogPageId - _bufferStart);
+            DeltaPage.init(_trxId, _logBuffer, bufferPos);
+            DeltaPage.append(record, _logBuffer, bufferPos);
+        }
+        
+        _deltas.put(dataPageId, _deltaLogPageId);
+        _pageCount++;
+    }
+    
+    private void applyDelta(long dataPageId, long logPageId, ByteBuffer page) {
+        final ByteBuffer deltaPage;
+        final int pageIndex;
+        
+        if (inBuffer(logPageId)) {
+            deltaPage = _logBuffer;
+            pageIndex = (int)(logPageId - _bufferStart);
+        }
+        else {
+            if (_deltaPage == null) {
+                _deltaPage = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+            }
+            _pageStorage.logRead(logPageId, _deltaPage, 0);
+            deltaPage = _deltaPage;
+            pageIndex = 0;
+        }
+        
+        DeltaPage.apply(deltaPage, pageIndex, DeltaPage.find(deltaPage, pageIndex, dataPageId), page, 0);
+    }
+    
+    private void writeFullImages() {
+        final ByteBuffer page = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+        long dataPageId;
+        
+        for (Long2LongMap.Entry entry : _deltas.long2LongEntrySet()) {
+            dataPageId = entry.getLongKey();
+            
+            // Page has been logged in full after delta
+            if (_data2log.get(dataPageId) != Long.MIN_VALUE)
+                continue;
+            
+            readPage(dataPageId, page);
+            PageHeader.setTrxId(_trxId, page, 0);
+            PageHeader.setIntermediate(page, 0);
+            writePage(dataPageId, page);
         }
     }
     
@@ -133,6 +291,11 @@ public class ModifyLogBuffer {
     }
     
     private void allocateNewPageInBuffer(long dataPageId, ByteBuffer page) {
+        _data2log.put(dataPageId, appendPage(page));
+        _pageCount++;
+    }
+    
+    private long appendPage(ByteBuffer page) {
         if ( (_next - _bufferStart) >= _bufferCapacity) {
             flush();
         }
@@ -141,7 +304,7 @@ public class ModifyLogBuffer {
         int bufferPos = (int)(logPageId - _bufferStart);
         PageHeader.copyPages(page, 0, _logBuffer, bufferPos, 1);
         
-        _data2log.put(dataPageId, logPageId);
+        return logPageId;
     }
     
     private void flush() {
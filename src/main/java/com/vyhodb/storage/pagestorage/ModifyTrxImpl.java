@@ -26,6 +26,7 @@ package com.vyhodb.storage.pagestorage;
 
 import com.vyhodb.admin.LogInfo;
 import com.vyhodb.storage.StorageConfig;
+import com.vyhodb.storage.pagefile.DeltaPage;
 import com.vyhodb.storage.pagefile.PageHeader;
 
 import java.nio.ByteBuffer;
@@ -42,12 +43,19 @@ public final class ModifyTrxImpl implements PageTrx {
     private long _dataLength;
     private long _dataId = PageHeader.NOT_EXISTED_DATA_PAGE_ID;
     private boolean _isPageDirty = false;
+    private boolean _isPageNew = false;
     private final ByteBuffer _page = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+    
+    // Page payload before modification. Page which payload hasn't changed isn't logged,
+    // changed one is logged as delta against it when possible.
+    private final ByteBuffer _original = ByteBuffer.allocate(PageHeader.PAGE_PAYLOAD);
+    private final ByteBuffer _delta = ByteBuffer.allocate(DeltaPage.MAX_RECORD);
+    private ByteBuffer _committed;
     private final ModifyLogBuffer _modifyLogBuffer;
     
     public ModifyTrxImpl(PageStorage pageStorage, UUID trxId, StorageConfig config)
     {
-        _modifyLogBuffer = new ModifyLogBuffer(pageStorage, config);
+        _modifyLogBuffer = new ModifyLogBuffer(pageStorage, trxId, config);
         _trxId = trxId;
     }
     
@@ -84,6 +92,18 @@ public final class ModifyTrxImpl implements PageTrx {
         return _page;
     }
 
+    @Override
+    public void read(long pageId, int offset, ByteBuffer destBuffer) {
+        PageHeader.copyPayload(getPage(pageId), 0, offset, destBuffer);
+    }
+
+    /**
+     * Modify trx reads pages through modify log buffer one by one.
+     */
+    @Override
+    public void prefetch(long pageId, int count) {
+    }
+
     @Override
     public ByteBuffer getPageForModify(long pageId) {
         if (_dataId != pageId)
@@ -92,6 +112,14 @@ public final class ModifyTrxImpl implements PageTrx {
             readPage0(pageId);
         }
         
+        if (!_isPageDirty) 
+        {
+            _page.clear();
+            _page.limit(PageHeader.PAGE_PAYLOAD);
+            _original.clear();
+            _original.put(_page);
+        }
+        
         _isPageDirty = true;
         _dataId = pageId;
         
@@ -101,6 +129,13 @@ public final class ModifyTrxImpl implements PageTrx {
         return _page;
     }
     
+    @Override
+    public void truncate(long dataLength) {
+        if (dataLength < _dataLength) {
+            _modifyLogBuffer.truncate(dataLength);
+        }
+    }
+    
     private void readPage0(long dataId)
     {
         // New page. This case is possible only when invoked from 
@@ -112,11 +147,13 @@ public final class ModifyTrxImpl implements PageTrx {
                             
             _dataLength++;
             _isPageDirty = true;
+            _isPageNew = true;
         }
         // Reads page from data
         else
         {    
             _modifyLogBuffer.readPage(dataId, _page);
+            _isPageNew = false;
         }
     }
 
@@ -125,11 +162,54 @@ public final class ModifyTrxImpl implements PageTrx {
         if (!_isPageDirty)
             return;
         
+        _isPageDirty = false;
+        
+        if (!_isPageNew) {
+            if (isPayloadUnchanged())
+                return;
+            
+            if (_modifyLogBuffer.canWriteDelta(_dataId) && writeDelta())
+                return;
+        }
+        
         _page.clear();
         PageHeader.setTrxId(_trxId, _page, 0);
         PageHeader.setIntermediate(_page, 0);
         _modifyLogBuffer.writePage(_dataId, _page);
-
-        _isPageDirty = false;
+    }
+    
+    /**
+     * @return false if delta is larger than half of page, so full image must be logged
+     */
+    private boolean writeDelta()
+    {
+        ByteBuffer base = _original;
+        
+        // Replacing record keeps all changes of page made by transaction
+        if (_modifyLogBuffer.hasDelta(_dataId)) {
+            if (_committed == null) {
+                _committed = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+            }
+            _modifyLogBuffer.readCommitted(_dataId, _committed);
+            base = _committed;
+        }
+        
+        _page.clear();
+        _page.limit(PageHeader.PAGE_PAYLOAD);
+        base.clear();
+        
+        if (DeltaPage.diff(_dataId, base, _page, _delta) <= 0)
+            return false;
+        
+        _modifyLogBuffer.writeDelta(_dataId, _delta);
+        return true;
+    }
+    
+    private boolean isPayloadUnchanged()
+    {
+        _page.clear();
+        _page.limit(PageHeader.PAGE_PAYLOAD);
+        _original.clear();
+        return _page.equals(_original);
     }
 }
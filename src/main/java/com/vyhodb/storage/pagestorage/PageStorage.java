@@ -26,6 +26,7 @@ package com.vyhodb.storage.pagestorage;
 
 import com.vyhodb.admin.LogInfo;
 import com.vyhodb.admin.WrongPageIdException;
+import com.vyhodb.storage.data.PageVersions;
 
 import java.nio.ByteBuffer;
 
@@ -39,15 +40,50 @@ public interface PageStorage {
     public void adminDataRead(long pageId, ByteBuffer buffer, int pageIndex);
     public void adminLogRead(long logPageId, ByteBuffer buffer, int offset, int count) throws WrongPageIdException;
     
-    public void startRead();
-    public void rollbackRead();
+    /**
+     * @return snapshot (log position) read transaction is pinned to
+     */
+    public long startRead();
+    public void rollbackRead(long snapshot);
     public void dataRead(long pageId, ByteBuffer buffer, int pageIndex);
+    public void dataRead(long pageId, ByteBuffer buffer, int pageIndex, long snapshot);
+    
+    /**
+     * Copies page payload from read cache into destination buffer.
+     * 
+     * @return false if page isn't in read cache (nothing is copied)
+     */
+    public boolean dataReadCached(long pageId, int offset, ByteBuffer destBuffer, long snapshot);
+    public void dataPrefetch(long pageId, int count, ByteBuffer buffer, long snapshot);
+    public PageVersions getPageVersions();
     
     public LogInfo startModify();
     public void logAppend(long startLogPageId, ByteBuffer buffer, int count);
     public void logRead(long logPageId, ByteBuffer buffer, int pageIndex);
     public void rollbackModify();
-    public void commitModify(long trxSize);
+    
+    /**
+     * @param trxSize count of log pages
+     * @param pageCount count of data page images, delta log page keeps several ones
+     */
+    public void commitModify(long trxSize, long pageCount);
+    
+    /**
+     * Commits modify transaction like {@linkplain #commitModify(long, long)} and then 
+     * truncates data file (see {@linkplain com.vyhodb.storage.log.Log#truncateData(long)}) 
+     * before other transactions can start.
+     * 
+     * @param dataLength new data length (pages)
+     */
+    public void commitTruncate(long trxSize, long pageCount, long dataLength);
+    public long getModifyBufferRemaining();
+    
+    /**
+     * Changes of data page can be logged as delta only when page has been already 
+     * applied to active half of modify buffer, so its full image is logged since 
+     * the last swap and recovery never applies delta onto page torn by checkpoint.
+     */
+    public boolean canLogDelta(long pageId);
     
     public ByteBuffer getLogBuffer();
     
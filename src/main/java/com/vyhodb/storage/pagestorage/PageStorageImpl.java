@@ -32,6 +32,7 @@ import com.vyhodb.storage.CriticalExceptionHandler;
 import com.vyhodb.storage.StorageConfig;
 import com.vyhodb.storage.data.Data;
 import com.vyhodb.storage.data.DataImpl;
+import com.vyhodb.storage.data.PageVersions;
 import com.vyhodb.storage.lock.LockManager;
 import com.vyhodb.storage.lock.LockManagerImpl;
 import com.vyhodb.storage.log.Log;
@@ -89,6 +90,7 @@ public class PageStorageImpl implements PageStorage {
         try {
             _data = new DataImpl(config);
             _log = new LogImpl(config, _data);
+            _data.startWarmup();
         }
         catch(Exception ex) {
             if (_data != null) {
@@ -138,14 +140,51 @@ public class PageStorageImpl implements PageStorage {
 
     @Override
     public void dataRead(long pageId, ByteBuffer buffer, int pageIndex) {
+        dataRead(pageId, buffer, pageIndex, Data.LATEST_SNAPSHOT);
+    }
+    
+    @Override
+    public void dataRead(long pageId, ByteBuffer buffer, int pageIndex, long snapshot) {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        try {
+            _data.readData(pageId, buffer, pageIndex, snapshot);
+        } catch (IOException ex) {
+            shutdown(ex);
+        }
+        
+        // Page might have been read after checkpoint has overwritten it
+        _log.checkSnapshot(snapshot);
+    }
+
+    @Override
+    public boolean dataReadCached(long pageId, int offset, ByteBuffer destBuffer, long snapshot) {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        boolean cached = _data.readDataCached(pageId, offset, destBuffer, snapshot);
+        _log.checkSnapshot(snapshot);
+        return cached;
+    }
+
+    @Override
+    public void dataPrefetch(long pageId, int count, ByteBuffer buffer, long snapshot) {
         if (_isClosed) 
             throw new ServerClosedException();
         
         try {
-            _data.readData(pageId, buffer, pageIndex);
+            _data.prefetch(pageId, count, buffer, snapshot);
         } catch (IOException ex) {
             shutdown(ex);
         }
+        
+        _log.checkSnapshot(snapshot);
+    }
+
+    @Override
+    public PageVersions getPageVersions() {
+        return _data.getPageVersions();
     }
 
     @Override
@@ -186,21 +225,79 @@ public class PageStorageImpl implements PageStorage {
     }
 
     @Override
-    public void commitModify(long trxSize) {
+    public long getModifyBufferRemaining() {
         if (_isClosed) 
             throw new ServerClosedException();
         
-        _lockManager.lockCommit();
+        return _data.getModifyBufferRemaining();
+    }
+    
+    @Override
+    public boolean canLogDelta(long pageId) {
+        if (_isClosed) 
+            throw new ServerClosedException();
         
+        return _data.containsActivePage(pageId);
+    }
+
+    @Override
+    public void commitModify(long trxSize, long pageCount) {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        long position = Long.MIN_VALUE;
+        boolean checkpointLocked = false;
         try {
-            _log.commit(trxSize);
+            // Read transactions are excluded only when checkpoint is going to happen,
+            // otherwise new page versions are published without waiting for readers.
+            if (_log.isCheckpointRequired(pageCount)) {
+                _lockManager.lockCheckpoint();
+                checkpointLocked = true;
+            }
+            
+            position = _log.commit(trxSize, pageCount);
         } 
         catch (IOException ex) {
             shutdown(ex);
         }
         finally
         {
-            _lockManager.unlockCommit();
+            if (checkpointLocked) {
+                _lockManager.unlockCheckpoint();
+            }
+            _lockManager.unlockModify();
+        }
+        
+        // Waits for durability outside of modify lock, so next transactions 
+        // can be committed meanwhile and fsynced together with this one.
+        try {
+            _log.sync(position);
+        } 
+        catch (IOException ex) {
+            shutdown(ex);
+        }
+    }
+    
+    @Override
+    public void commitTruncate(long trxSize, long pageCount, long dataLength) {
+        if (_isClosed) 
+            throw new ServerClosedException();
+        
+        try {
+            // Truncation does checkpoint
+            _lockManager.lockCheckpoint();
+            try {
+                _log.commit(trxSize, pageCount);
+                _log.truncateData(dataLength);
+            }
+            finally {
+                _lockManager.unlockCheckpoint();
+            }
+        } 
+        catch (IOException ex) {
+            shutdown(ex);
+        }
+        finally {
             _lockManager.unlockModify();
         }
     }
@@ -210,7 +307,14 @@ public class PageStorageImpl implements PageStorage {
         _lockManager.lockModify();
         try
         {
-            _log.shrink(shrinkPageId);
+            // Shrink does checkpoint
+            _lockManager.lockCheckpoint();
+            try {
+                _log.shrink(shrinkPageId);
+            }
+            finally {
+                _lockManager.unlockCheckpoint();
+            }
         }
         catch (WrongPageIdException wpe)
         {
@@ -281,12 +385,20 @@ public class PageStorageImpl implements PageStorage {
     }
 
     @Override
-    public void startRead() {
+    public long startRead() {
         _lockManager.lockRead();
+        try {
+            return _log.registerReader();
+        }
+        catch(RuntimeException ex) {
+            _lockManager.unlockRead();
+            throw ex;
+        }
     }
 
     @Override
-    public void rollbackRead() {
+    public void rollbackRead(long snapshot) {
+        _log.unregisterReader(snapshot);
         _lockManager.unlockRead();
     }
 
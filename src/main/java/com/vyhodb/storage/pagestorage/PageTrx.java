@@ -37,5 +37,22 @@ public interface PageTrx {
     public void rollback();
     
     public ByteBuffer getPage(long pageId);
+    
+    /**
+     * Copies page payload, starting from [offset], into destination buffer
+     * until destination buffer has no remaining or payload ends.
+     */
+    public void read(long pageId, int offset, ByteBuffer destBuffer);
+    
+    /**
+     * Hints that [count] pages starting from [pageId] are going to be read.
+     */
+    public void prefetch(long pageId, int count);
     public ByteBuffer getPageForModify(long pageId);
+    
+    /**
+     * Cuts data file down to [dataLength] pages after commit. Pages starting 
+     * from [dataLength] must be unused when transaction commits.
+     */
+    public void truncate(long dataLength);
 }
@@ -34,9 +34,13 @@ import java.nio.ByteBuffer;
  */
 public class ReadTrxImpl implements PageTrx {
 
+    public static final int MAX_PREFETCH_PAGES = 64;
+    
     private final ByteBuffer _page = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+    private ByteBuffer _prefetchBuffer;
     protected final PageStorage pageStorage;
     private long _current = PageHeader.NOT_EXISTED_DATA_PAGE_ID;
+    private long _snapshot;
     
     public ReadTrxImpl(PageStorage pageStorage)
     {
@@ -45,24 +49,28 @@ public class ReadTrxImpl implements PageTrx {
     
     @Override
     public void start() {
-        pageStorage.startRead();
+        _snapshot = pageStorage.startRead();
+    }
+
+    public long getSnapshot() {
+        return _snapshot;
     }
 
     @Override
     public void commit() {
-        pageStorage.rollbackRead();
+        pageStorage.rollbackRead(_snapshot);
     }
 
     @Override
     public void rollback() {
-        pageStorage.rollbackRead();
+        pageStorage.rollbackRead(_snapshot);
     }
 
     @Override
     public ByteBuffer getPage(long pageId) {
         if (_current != pageId)
         {
-            pageStorage.dataRead(pageId, _page, 0);
+            pageStorage.dataRead(pageId, _page, 0, _snapshot);
         }
         
         _current = pageId;
@@ -73,9 +81,37 @@ public class ReadTrxImpl implements PageTrx {
         return _page;
     }
 
+    /**
+     * Page found in read cache is copied straight into destination buffer,
+     * bypassing trx page buffer.
+     */
+    @Override
+    public void read(long pageId, int offset, ByteBuffer destBuffer) {
+        if (_current != pageId && pageStorage.dataReadCached(pageId, offset, destBuffer, _snapshot))
+            return;
+        
+        PageHeader.copyPayload(getPage(pageId), 0, offset, destBuffer);
+    }
+
+    @Override
+    public void prefetch(long pageId, int count) {
+        // Larger blocks are prefetched by several runs
+        final int size = Math.min(count, MAX_PREFETCH_PAGES);
+        if (_prefetchBuffer == null || PageHeader.getBufferSize(_prefetchBuffer) < size) {
+            _prefetchBuffer = ByteBuffer.allocate(size << PageHeader.PAGE_SIZE_MULTIPLICATOR);
+        }
+        
+        pageStorage.dataPrefetch(pageId, count, _prefetchBuffer, _snapshot);
+    }
+
     @Override
     public ByteBuffer getPageForModify(long pageId) {
         throw new IllegalStateException("Read only trx");
     }
     
+    @Override
+    public void truncate(long dataLength) {
+        throw new IllegalStateException("Read only trx");
+    }
+    
 }
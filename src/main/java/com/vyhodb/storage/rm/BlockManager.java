@@ -26,26 +26,97 @@ package com.vyhodb.storage.rm;
 
 import com.vyhodb.storage.pagefile.PageHeader;
 import com.vyhodb.storage.pagestorage.PageTrx;
+import com.vyhodb.storage.space.SpaceInternal;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongRBTreeSet;
 
 import java.nio.ByteBuffer;
 
 /**
+ * Space header is placed at the beginning of page 0. It consists of allocator 
+ * and (for storages created with free space management) magic number followed 
+ * by heads of free block lists, one list per slot type. Free block keeps pointer 
+ * to the next free block of the same list in its first 8 bytes.
+ * <p>
+ * Storages created without free space management have allocator only, their
+ * space starts right after it and freed blocks aren't reused.
+ * <p>
+ * Header of storages created with dictionary support (own magic number) is 
+ * followed by id of dictionary container.
  *
  * @author Igor Vykhodtcev
  */
 public class BlockManager {
-    private static final int OFFSET_ALLOCATOR = 8;
+    public static final int FREE_LIST_COUNT = 24;
+    public static final long NO_FREE_BLOCK = -1L;
+    
+    private static final int OFFSET_ALLOCATOR = 0;
+    private static final int OFFSET_MAGIC = 8;
+    private static final int OFFSET_FREE_LISTS = 10;
+    private static final short SPACE_HEADER_MAGIC = 22088;
+    private static final short SPACE_HEADER_MAGIC_DICTIONARY = 22089;
+    
+    // Locality: how many free list entries are examined, how far (in pages) 
+    // free block may lie from hint and how many blocks an appended extent has
+    private static final int LOCALITY_SCAN = 16;
+    private static final int LOCALITY_PAGES = 4;
+    private static final int EXTENT_BLOCKS = 8;
+    
+    private static final int HEADER_SIZE_ALLOCATOR_ONLY = 8;
+    private static final int HEADER_SIZE = OFFSET_FREE_LISTS + FREE_LIST_COUNT * 8;
+    private static final int OFFSET_DICTIONARY = HEADER_SIZE;
+    private static final int HEADER_SIZE_DICTIONARY = OFFSET_DICTIONARY + 8;
     
     private final PageTrx _pageTrx;
+    private final int _spaceOffset;
+    private final ByteBuffer _pointerBuffer = ByteBuffer.allocate(8);
     
     private long _allocator;
     private boolean _allocatorChanged = false;
     
+    private long[] _freeLists;
+    private boolean _freeListsChanged = false;
+    
+    private long _dictionaryId = SpaceInternal.NULL;
+    private boolean _dictionaryChanged = false;
+    
+    // Free lists content, loaded by compaction only
+    private FreeBlocks[] _freeBlocks;
     
     public BlockManager(PageTrx pageTrx)
     {
         _pageTrx = pageTrx;
-        _allocator = readAllocator();
+        
+        ByteBuffer page = _pageTrx.getPage(0L);
+        _allocator = page.getLong(OFFSET_ALLOCATOR);
+        
+        switch (page.getShort(OFFSET_MAGIC)) {
+            case SPACE_HEADER_MAGIC_DICTIONARY:
+                _spaceOffset = HEADER_SIZE_DICTIONARY;
+                _dictionaryId = page.getLong(OFFSET_DICTIONARY);
+                break;
+                
+            case SPACE_HEADER_MAGIC:
+                _spaceOffset = HEADER_SIZE;
+                break;
+                
+            default:
+                _spaceOffset = HEADER_SIZE_ALLOCATOR_ONLY;
+        }
+    }
+    
+    /**
+     * Writes space header with free space management and dictionary support 
+     * into empty page 0 of new storage.
+     */
+    public static void initSpaceHeader(ByteBuffer page)
+    {
+        page.putLong(OFFSET_ALLOCATOR, 0L);
+        page.putShort(OFFSET_MAGIC, SPACE_HEADER_MAGIC_DICTIONARY);
+        for (int i = 0; i < FREE_LIST_COUNT; i++) {
+            page.putLong(OFFSET_FREE_LISTS + (i << 3), NO_FREE_BLOCK);
+        }
+        page.putLong(OFFSET_DICTIONARY, SpaceInternal.NULL);
     }
     
     /**
@@ -56,32 +127,35 @@ public class BlockManager {
      */
     public void read(long start, ByteBuffer destBuffer)
     {
-        start += OFFSET_ALLOCATOR;
+        start += _spaceOffset;
         
         long pageId = start / PageHeader.PAGE_PAYLOAD;
         int offset = (int) (start % PageHeader.PAGE_PAYLOAD);
-        ByteBuffer page;
+        
+        // Multi-page block: missed pages are read by as few operations as possible
+        long lastPageId = (start + destBuffer.remaining() - 1) / PageHeader.PAGE_PAYLOAD;
+        if (lastPageId > pageId)
+        {
+            _pageTrx.prefetch(pageId, (int) (lastPageId - pageId + 1));
+        }
                 
         while(destBuffer.remaining() > 0)
         {
-            page = _pageTrx.getPage(pageId);
-            if (offset > 0)
-            {
-                page.position(page.position() + offset);
-                offset = 0;
-            }
-            
-            if (page.remaining() > destBuffer.remaining())
-            {
-                page.limit(page.position() + destBuffer.remaining());
-            }
-            
-            destBuffer.put(page);
+            _pageTrx.read(pageId, offset, destBuffer);
+            offset = 0;
             
             pageId++;
         }
     }
     
+    /**
+     * Returns id of page, which contains specified space position.
+     */
+    public long getPageId(long start)
+    {
+        return (start + _spaceOffset) / PageHeader.PAGE_PAYLOAD;
+    }
+    
     public long append(ByteBuffer buffer)
     {
         final int size = buffer.remaining();
@@ -97,7 +171,7 @@ public class BlockManager {
     
     public void write(long start, ByteBuffer sourceBuffer) 
     {
-        start += OFFSET_ALLOCATOR;
+        start += _spaceOffset;
         
         long pageId = start / PageHeader.PAGE_PAYLOAD;
         int offset = (int) (start % PageHeader.PAGE_PAYLOAD);
@@ -126,11 +200,275 @@ public class BlockManager {
         }
     }
     
+    /**
+     * Writes block into free block of specified list, or appends it if list is empty.
+     * <p>
+     * If near is specified, free block lying close to it is preferred. When
+     * there is no such block, small blocks are appended as extent: the rest
+     * of extent is put at the head of free list, so that next block allocated 
+     * near this one takes the adjacent place.
+     * 
+     * @param buffer block content
+     * @param freeList free list (slot type)
+     * @param near hint block start or {@linkplain #NO_FREE_BLOCK}
+     * @return block start
+     */
+    public long allocate(ByteBuffer buffer, int freeList, long near)
+    {
+        if (!isFreeSpaceManaged()) {
+            return append(buffer);
+        }
+        
+        if (near != NO_FREE_BLOCK) 
+        {
+            final long start = takeNear(near, freeList);
+            if (start != NO_FREE_BLOCK) {
+                write(start, buffer);
+                return start;
+            }
+            
+            if (getFreeLists()[freeList] == NO_FREE_BLOCK) {
+                return appendExtent(buffer, freeList);
+            }
+        }
+        
+        final long start = getFreeLists()[freeList];
+        
+        if (start == NO_FREE_BLOCK) {
+            return append(buffer);
+        }
+        
+        _freeLists[freeList] = readPointer(start);
+        _freeListsChanged = true;
+        
+        if (_freeBlocks != null && _freeBlocks[freeList] != null) {
+            _freeBlocks[freeList].remove(start);
+        }
+        
+        write(start, buffer);
+        return start;
+    }
+    
+    private long appendExtent(ByteBuffer buffer, int freeList)
+    {
+        final int size = buffer.remaining();
+        final int blocks = Math.min(EXTENT_BLOCKS, PageHeader.PAGE_PAYLOAD / size);
+        final long start = append(buffer);
+        
+        // The nearest block goes to the head of free list
+        for (int i = blocks - 1; i > 0; i--) {
+            free(start + (long) i * size, freeList);
+        }
+        
+        if (blocks > 1) {
+            _allocator += (long) (blocks - 1) * size;
+        }
+        
+        return start;
+    }
+    
+    /**
+     * Removes free block closest to near from the first entries of specified list.
+     * 
+     * @return free block start or {@linkplain #NO_FREE_BLOCK}
+     */
+    private long takeNear(long near, int freeList)
+    {
+        long bestDistance = (long) LOCALITY_PAGES * PageHeader.PAGE_PAYLOAD;
+        long best = NO_FREE_BLOCK;
+        long bestPrev = NO_FREE_BLOCK;
+        long bestNext = NO_FREE_BLOCK;
+        
+        long prev = NO_FREE_BLOCK;
+        long start = getFreeLists()[freeList];
+        for (int i = 0; i < LOCALITY_SCAN && start != NO_FREE_BLOCK; i++) 
+        {
+            final long next = readPointer(start);
+            final long distance = Math.abs(start - near);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = start;
+                bestPrev = prev;
+                bestNext = next;
+            }
+            
+            prev = start;
+            start = next;
+        }
+        
+        if (best == NO_FREE_BLOCK)
+            return NO_FREE_BLOCK;
+        
+        if (bestPrev == NO_FREE_BLOCK) 
+        {
+            _freeLists[freeList] = bestNext;
+            _freeListsChanged = true;
+        }
+        else
+        {
+            writePointer(bestPrev, bestNext);
+        }
+        
+        if (_freeBlocks != null && _freeBlocks[freeList] != null) {
+            _freeBlocks[freeList].remove(best);
+        }
+        
+        return best;
+    }
+    
+    /**
+     * Removes the lowest free block from specified list if it lies below limit.
+     * 
+     * @return free block start or {@linkplain #NO_FREE_BLOCK}
+     */
+    public long takeFreeBelow(long limit, int freeList)
+    {
+        if (!isFreeSpaceManaged())
+            return NO_FREE_BLOCK;
+        
+        final FreeBlocks blocks = getFreeBlocks(freeList);
+        if (blocks.isEmpty() || blocks.first() >= limit)
+            return NO_FREE_BLOCK;
+        
+        final long start = blocks.first();
+        unlink(freeList, start);
+        return start;
+    }
+    
+    /**
+     * Merges pairs of adjacent free blocks of the same list into blocks of the 
+     * next list (slot sizes are powers of two), so that space freed by small 
+     * records can be reused by larger ones. Merged blocks are merged further.
+     * 
+     * @return number of merged pairs
+     */
+    public long coalesce()
+    {
+        if (!isFreeSpaceManaged())
+            return 0;
+        
+        long merged = 0;
+        for (int i = 0; i < FREE_LIST_COUNT - 1; i++) 
+        {
+            final FreeBlocks blocks = getFreeBlocks(i);
+            final long blockSize = RecordManager.SLOT_SIZES[i];
+            
+            for (long start : blocks.toArray()) 
+            {
+                if (blocks.contains(start) && blocks.contains(start + blockSize)) 
+                {
+                    unlink(i, start);
+                    unlink(i, start + blockSize);
+                    free(start, i + 1);
+                    merged++;
+                }
+            }
+        }
+        
+        return merged;
+    }
+    
+    /**
+     * Returns free blocks which lie at the end of space back to allocator.
+     * 
+     * @return number of reclaimed bytes
+     */
+    public long trimTail()
+    {
+        if (!isFreeSpaceManaged())
+            return 0;
+        
+        final long oldAllocator = _allocator;
+        boolean trimmed = true;
+        
+        while (trimmed) 
+        {
+            trimmed = false;
+            
+            for (int i = 0; i < FREE_LIST_COUNT; i++) 
+            {
+                final long blockSize = RecordManager.SLOT_SIZES[i];
+                if (blockSize > _allocator)
+                    break;
+                
+                final long start = _allocator - blockSize;
+                if (getFreeBlocks(i).contains(start))
+                {
+                    unlink(i, start);
+                    _allocator -= blockSize;
+                    _allocatorChanged = true;
+                    trimmed = true;
+                }
+            }
+        }
+        
+        return oldAllocator - _allocator;
+    }
+    
+    /**
+     * Adds block into free list. Does nothing for storages without free space management.
+     */
+    public void free(long start, int freeList)
+    {
+        if (!isFreeSpaceManaged()) 
+            return;
+        
+        final long next = getFreeLists()[freeList];
+        writePointer(start, next);
+        
+        _freeLists[freeList] = start;
+        _freeListsChanged = true;
+        
+        if (_freeBlocks != null && _freeBlocks[freeList] != null) {
+            _freeBlocks[freeList].addFirst(start, next);
+        }
+    }
+    
+    public boolean isFreeSpaceManaged()
+    {
+        return _spaceOffset != HEADER_SIZE_ALLOCATOR_ONLY;
+    }
+    
+    public boolean isDictionarySupported()
+    {
+        return _spaceOffset == HEADER_SIZE_DICTIONARY;
+    }
+    
+    /**
+     * Returns id of dictionary container or {@linkplain SpaceInternal#NULL}.
+     */
+    public long getDictionaryId()
+    {
+        return _dictionaryId;
+    }
+    
+    public void setDictionaryId(long dictionaryId)
+    {
+        _dictionaryId = dictionaryId;
+        _dictionaryChanged = true;
+    }
+    
     public long getAllocator()
     {
         return _allocator;
     }
     
+    /**
+     * Returns count of data pages space occupies, including page 0.
+     */
+    public long getPageCount()
+    {
+        return Math.max(1L, (_allocator + _spaceOffset + PageHeader.PAGE_PAYLOAD - 1) / PageHeader.PAGE_PAYLOAD);
+    }
+    
+    /**
+     * Cuts data pages, which lie beyond the end of space, off data file on commit.
+     */
+    public void truncate()
+    {
+        _pageTrx.truncate(getPageCount());
+    }
+    
     public void commit() 
     {
         if (_allocatorChanged)
@@ -138,6 +476,16 @@ public class BlockManager {
             updateAllocator();
         }
         
+        if (_freeListsChanged)
+        {
+            updateFreeLists();
+        }
+        
+        if (_dictionaryChanged)
+        {
+            _pageTrx.getPageForModify(0L).putLong(OFFSET_DICTIONARY, _dictionaryId);
+        }
+        
         _pageTrx.commit();
     }
     
@@ -146,13 +494,162 @@ public class BlockManager {
         _pageTrx.rollback();
     }
     
-    private long readAllocator()
+    private void updateAllocator() 
     {
-        return _pageTrx.getPage(0L).getLong();
+        _pageTrx.getPageForModify(0L).putLong(OFFSET_ALLOCATOR, _allocator);
     }
     
-    private void updateAllocator() 
+    private long[] getFreeLists()
+    {
+        if (_freeLists == null) {
+            ByteBuffer page = _pageTrx.getPage(0L);
+            _freeLists = new long[FREE_LIST_COUNT];
+            for (int i = 0; i < FREE_LIST_COUNT; i++) {
+                _freeLists[i] = page.getLong(OFFSET_FREE_LISTS + (i << 3));
+            }
+        }
+        return _freeLists;
+    }
+    
+    private void updateFreeLists()
+    {
+        ByteBuffer page = _pageTrx.getPageForModify(0L);
+        for (int i = 0; i < FREE_LIST_COUNT; i++) {
+            page.putLong(OFFSET_FREE_LISTS + (i << 3), _freeLists[i]);
+        }
+    }
+    
+    private FreeBlocks getFreeBlocks(int freeList)
+    {
+        if (_freeBlocks == null) {
+            _freeBlocks = new FreeBlocks[FREE_LIST_COUNT];
+        }
+        
+        if (_freeBlocks[freeList] == null) {
+            FreeBlocks blocks = new FreeBlocks();
+            long prev = NO_FREE_BLOCK;
+            for (long start = getFreeLists()[freeList]; start != NO_FREE_BLOCK; start = readPointer(start)) {
+                blocks.addAfter(prev, start);
+                prev = start;
+            }
+            _freeBlocks[freeList] = blocks;
+        }
+        
+        return _freeBlocks[freeList];
+    }
+    
+    /**
+     * Removes loaded free block from the middle of the list.
+     */
+    private void unlink(int freeList, long start)
     {
-        _pageTrx.getPageForModify(0L).putLong(_allocator);
+        final FreeBlocks blocks = _freeBlocks[freeList];
+        final long prev = blocks.getPrev(start);
+        final long next = blocks.remove(start);
+        
+        if (prev == NO_FREE_BLOCK)
+        {
+            _freeLists[freeList] = next;
+            _freeListsChanged = true;
+        }
+        else
+        {
+            writePointer(prev, next);
+        }
+    }
+    
+    private long readPointer(long start)
+    {
+        _pointerBuffer.clear();
+        read(start, _pointerBuffer);
+        return _pointerBuffer.getLong(0);
+    }
+    
+    private void writePointer(long start, long next)
+    {
+        _pointerBuffer.clear();
+        _pointerBuffer.putLong(next);
+        _pointerBuffer.flip();
+        write(start, _pointerBuffer);
+    }
+    
+    /**
+     * Loaded free list: blocks in address order and links of the list, so that 
+     * the lowest block is found and any block is unlinked without walking the list.
+     */
+    private static final class FreeBlocks
+    {
+        private final LongRBTreeSet _sorted = new LongRBTreeSet();
+        private final Long2LongOpenHashMap _prev = new Long2LongOpenHashMap();
+        private final Long2LongOpenHashMap _next = new Long2LongOpenHashMap();
+        
+        FreeBlocks()
+        {
+            _prev.defaultReturnValue(NO_FREE_BLOCK);
+            _next.defaultReturnValue(NO_FREE_BLOCK);
+        }
+        
+        boolean isEmpty()
+        {
+            return _sorted.isEmpty();
+        }
+        
+        boolean contains(long start)
+        {
+            return _sorted.contains(start);
+        }
+        
+        long first()
+        {
+            return _sorted.firstLong();
+        }
+        
+        long[] toArray()
+        {
+            return _sorted.toLongArray();
+        }
+        
+        long getPrev(long start)
+        {
+            return _prev.get(start);
+        }
+        
+        void addAfter(long prev, long start)
+        {
+            _sorted.add(start);
+            _prev.put(start, prev);
+            if (prev != NO_FREE_BLOCK) {
+                _next.put(prev, start);
+            }
+        }
+        
+        void addFirst(long start, long next)
+        {
+            _sorted.add(start);
+            _prev.remove(start);
+            _next.put(start, next);
+            if (next != NO_FREE_BLOCK) {
+                _prev.put(next, start);
+            }
+        }
+        
+        /**
+         * @return next block of the list
+         */
+        long remove(long start)
+        {
+            _sorted.remove(start);
+            final long prev = _prev.remove(start);
+            final long next = _next.remove(start);
+            
+            if (next != NO_FREE_BLOCK) {
+                _prev.put(next, prev);
+            }
+            if (prev != NO_FREE_BLOCK) {
+                _next.put(prev, next);
+            }
+            
+            return next;
+        }
     }
 }
@@ -29,6 +29,8 @@ import com.vyhodb.storage.space.Dictionary;
 import com.vyhodb.storage.space.SpaceInternal;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 /**
  *
@@ -63,6 +65,14 @@ public final class ExpandableReaderWriter implements SystemReader, SystemWriter
         _dictionary = dictionary;
     }
     
+    private ExpandableReaderWriter(ByteBuffer buffer, int maxBufferSize, Dictionary dictionary, SpaceInternal space)
+    {
+        _maxBufferSize = maxBufferSize;
+        _buffer = buffer;
+        _dictionary = dictionary;
+        _space = space;
+    }
+    
     /**
      * TODO refactor this hack
      */
@@ -109,11 +119,166 @@ public final class ExpandableReaderWriter implements SystemReader, SystemWriter
         _buffer.clear();
     }
     
-    int position()
+    @Override
+    public int position()
     {
         return _buffer.position();
     }
     
+    @Override
+    public void position(int position)
+    {
+        _buffer.position(position);
+    }
+    
+    @Override
+    public void skip(int length)
+    {
+        _buffer.position(_buffer.position() + length);
+    }
+    
+    @Override
+    public void putInt(int position, int value) {
+        _buffer.putInt(position, value);
+    }
+    
+    /**
+     * Zig-zag encoded varint: small positive and negative numbers take single byte.
+     */
+    @Override
+    public void putVarLong(long value) {
+        require(10);
+        
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            _buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        _buffer.put((byte) v);
+    }
+    
+    @Override
+    public long getVarLong() {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        
+        do {
+            b = _buffer.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        
+        return (v >>> 1) ^ -(v & 1);
+    }
+    
+    @Override
+    public void skipVarLong() {
+        while (_buffer.get() < 0);
+    }
+    
+    /**
+     * String is written as Latin-1 if it's possible or as UTF-8 otherwise. Header
+     * keeps length in bytes and encoding flag.
+     */
+    @Override
+    public void putCompactString(String value) {
+        final int length = value.length();
+        
+        boolean latin1 = true;
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) > 0xFF) {
+                latin1 = false;
+                break;
+            }
+        }
+        
+        if (latin1) {
+            putVarLong(((long) length << 1) | 1);
+            require(length);
+            for (int i = 0; i < length; i++) {
+                _buffer.put((byte) value.charAt(i));
+            }
+        }
+        else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarLong((long) bytes.length << 1);
+            require(bytes.length);
+            _buffer.put(bytes);
+        }
+    }
+    
+    @Override
+    public String getCompactString() {
+        final long header = getVarLong();
+        final int length = (int) (header >>> 1);
+        final Charset charset = (header & 1) == 1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8;
+        
+        final String result = new String(_buffer.array(), _buffer.arrayOffset() + _buffer.position(), length, charset);
+        skip(length);
+        return result;
+    }
+    
+    @Override
+    public void skipCompactString() {
+        skip((int) (getVarLong() >>> 1));
+    }
+    
+    /**
+     * Odd header is dictionary code, zero header is followed by compact string.
+     */
+    @Override
+    public void putCompactStringConst(String value) {
+        final int id = _dictionary.resolve(value);
+        
+        if (id == Dictionary.CODE_NOT_EXIST) {
+            putVarLong(0);
+            putCompactString(value);
+        }
+        else {
+            putVarLong(((long) id << 1) | 1);
+        }
+    }
+    
+    @Override
+    public String getCompactStringConst() {
+        final long header = getVarLong();
+        
+        if (header == 0) 
+            return getCompactString();
+        
+        if ((header & 1) == 0) 
+            throw new TransactionRolledbackException("Wrong compact string const header:" + header);
+        
+        final int key = (int) (header >> 1);
+        final String result = _dictionary.resolve(key);
+        if (result == null) throw new TransactionRolledbackException("Unknown string const id:" + key +". Read can't be continued.");
+        return result;
+    }
+    
+    @Override
+    public void skipCompactStringConst() {
+        if (getVarLong() == 0) {
+            skipCompactString();
+        }
+    }
+    
+    @Override
+    public SystemReader detach()
+    {
+        final ByteBuffer copy = ByteBuffer.allocate(_buffer.remaining());
+        copy.put(_buffer.duplicate());
+        copy.clear();
+        
+        return new ExpandableReaderWriter(copy, _maxBufferSize, _dictionary, _space);
+    }
+    
+    @Override
+    public SystemReader duplicate(SpaceInternal space)
+    {
+        return new ExpandableReaderWriter(_buffer.duplicate().clear(), _maxBufferSize, _dictionary, space);
+    }
+    
     void limit(int limit) {
         _buffer.limit(limit);
     }
@@ -279,6 +444,24 @@ public final class ExpandableReaderWriter implements SystemReader, SystemWriter
         
         throw new TransactionRolledbackException("Wrong string const code:" + code);
     }
+    
+    @Override
+    public void skipStringConst() {
+        final byte code = _buffer.get();
+        
+        switch (code)
+        {
+            case CONST_CODE_CODE:
+                skip(4);
+                return;
+                
+            case CONST_CODE_STRING:
+                skip(_buffer.getInt() << 1);
+                return;
+        }
+        
+        throw new TransactionRolledbackException("Wrong string const code:" + code);
+    }
 
     @Override
     public boolean getBoolean() {
@@ -300,6 +483,26 @@ public final class ExpandableReaderWriter implements SystemReader, SystemWriter
         return ValueSerializer.getValue(_space, this);
     }
     
+    @Override
+    public void skipValue() {
+        ValueSerializer.skipValue(_space, this);
+    }
+    
+    @Override
+    public void putCompactValue(Object value) {
+        ValueSerializer.putCompactValue(_space, this, value);
+    }
+    
+    @Override
+    public Object getCompactValue() {
+        return ValueSerializer.getCompactValue(_space, this);
+    }
+    
+    @Override
+    public void skipCompactValue() {
+        ValueSerializer.skipCompactValue(_space, this);
+    }
+    
     public ByteBuffer getBuffer() {
         return _buffer;
     }
@@ -91,6 +91,23 @@ public final class RecordManager {
         }
     }
     
+    /**
+     * Returns first and last page ids of descriptor and block of the record, 
+     * which has been read last by {@linkplain #readRecord(long)}.
+     * 
+     * @return {descriptor first page, descriptor last page, block first page, block last page}
+     */
+    public long[] getRecordPages(long recordId) {
+        final long blockEnd = _descriptor.start + SLOT_SIZES[_descriptor.slotType] - 1;
+        
+        return new long[] {
+            _block.getPageId(recordId),
+            _block.getPageId(recordId + Descriptor.DESCRIPTOR_SIZE - 1),
+            _block.getPageId(_descriptor.start),
+            _block.getPageId(blockEnd)
+        };
+    }
+    
     public long newRecord() {
         return _descriptor.writeNew();
     }
@@ -100,6 +117,11 @@ public final class RecordManager {
         if (_descriptor.read(recordId))
         {
             _descriptor.remove(recordId);
+            
+            if (_descriptor.slotType != Descriptor.NEW_SLOT_TYPE)
+            {
+                _block.free(_descriptor.start, _descriptor.slotType);
+            }
         }
         else
         {
@@ -112,30 +134,115 @@ public final class RecordManager {
         return _rw;
     }
     
-    public void endUpdate(long recordId) {
+    /**
+     * Writes record buffer into record block. New (or outgrown) block is
+     * allocated next to the block of hint record if possible.
+     * 
+     * @param recordId
+     * @param hintId id of record, which block is used as locality hint. Negative value means no hint.
+     */
+    public void endUpdate(long recordId, long hintId) {
         // The line below can't take place, because record must be read (or created) before any update
         if (!_descriptor.read(recordId)) throw new TransactionRolledbackException("Record with specified id does not exist. Id:" + recordId);
         
+        final long oldStart = _descriptor.start;
+        final int oldSlotType = _descriptor.slotType;
+        
         int newSlotType = getSlotType(_rw.position());
         int size = SLOT_SIZES[newSlotType]; 
         _rw.ensureCapacity(size);             
         _rw.clear();
         _rw.limit(size);
         
-        if (_descriptor.slotType < newSlotType)
+        if (oldSlotType < newSlotType)
         {
-            // appends new block
-            long start = _block.append(_rw.getBuffer());
+            // reuses free block or appends new one
+            long start = _block.allocate(_rw.getBuffer(), newSlotType, getBlockStart(hintId));
+            
+            // outgrown block is freed
+            if (oldSlotType != Descriptor.NEW_SLOT_TYPE)
+            {
+                _block.free(oldStart, oldSlotType);
+            }
 
             // updates descriptor
             _descriptor.write(recordId, start, newSlotType);
         }
         else
         {
-            _block.write(_descriptor.start, _rw.getBuffer());
+            _block.write(oldStart, _rw.getBuffer());
         }
     }
 
+    /**
+     * Returns block start of specified record or {@linkplain BlockManager#NO_FREE_BLOCK}
+     * if record has no block yet.
+     */
+    private long getBlockStart(long recordId)
+    {
+        if (recordId < 0 || recordId >= _block.getAllocator())
+            return BlockManager.NO_FREE_BLOCK;
+        
+        if (!_descriptor.read(recordId) || _descriptor.slotType == Descriptor.NEW_SLOT_TYPE)
+            return BlockManager.NO_FREE_BLOCK;
+        
+        return _descriptor.start;
+    }
+    
+    /**
+     * Moves record block into the lowest free block of the same slot type,
+     * if that free block lies before current one. Outgrown position is freed.
+     * 
+     * @return true if record has been moved
+     */
+    public boolean relocate(long recordId)
+    {
+        if (!_descriptor.read(recordId) || _descriptor.slotType == Descriptor.NEW_SLOT_TYPE)
+            return false;
+        
+        final long oldStart = _descriptor.start;
+        final int slotType = _descriptor.slotType;
+        final long start = _block.takeFreeBelow(oldStart, slotType);
+        if (start == BlockManager.NO_FREE_BLOCK)
+            return false;
+        
+        // Copies block
+        final int size = SLOT_SIZES[slotType];
+        _rw.clear();
+        _rw.ensureCapacity(size);
+        _rw.limit(size);
+        _block.read(oldStart, _rw.getBuffer());
+        _rw.clear();
+        _rw.limit(size);
+        _block.write(start, _rw.getBuffer());
+        
+        _block.free(oldStart, slotType);
+        _descriptor.write(recordId, start, slotType);
+        return true;
+    }
+    
+    /**
+     * Returns id of dictionary container or {@linkplain com.vyhodb.storage.space.SpaceInternal#NULL}.
+     */
+    public long getDictionaryId()
+    {
+        return _block.getDictionaryId();
+    }
+    
+    /**
+     * Merges adjacent free blocks, cuts free blocks off the end of space and 
+     * truncates data file down to the pages space still occupies on commit.
+     * 
+     * @return number of reclaimed bytes
+     */
+    public long trimSpace()
+    {
+        _block.coalesce();
+        final long reclaimed = _block.trimTail();
+        _block.truncate();
+        return reclaimed;
+    }
+    
     private static int getSlotType(int size)
     {
         final int length = SLOT_SIZES.length;
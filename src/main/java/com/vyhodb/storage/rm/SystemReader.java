@@ -24,6 +24,8 @@
 
 package com.vyhodb.storage.rm;
 
+import com.vyhodb.storage.space.SpaceInternal;
+
 
 public interface SystemReader {
     public byte getByte();
@@ -38,4 +40,32 @@ public interface SystemReader {
     public String getString();
     public boolean getBoolean();
     public Object getValue();
+    
+    // Compact encoding (record format v2)
+    public long getVarLong();
+    public void skipVarLong();
+    public String getCompactString();
+    public void skipCompactString();
+    public String getCompactStringConst();
+    public void skipCompactStringConst();
+    public Object getCompactValue();
+    public void skipCompactValue();
+    
+    public int position();
+    public void position(int position);
+    public void skip(int length);
+    public void skipStringConst();
+    public void skipValue();
+    
+    /**
+     * Copies unread part of buffer into new reader, so it can be read later, 
+     * after this reader is reused.
+     */
+    public SystemReader detach();
+    
+    /**
+     * Returns reader over the same content with own position set to the 
+     * beginning. Content must not be modified while duplicate is used.
+     */
+    public SystemReader duplicate(SpaceInternal space);
 }
@@ -38,4 +38,17 @@ public interface SystemWriter {
     public void putString(String value);
     public void putBoolean(boolean value);
     public void putValue(Object value);
+    
+    // Compact encoding (record format v2)
+    public void putVarLong(long value);
+    public void putCompactString(String value);
+    public void putCompactStringConst(String value);
+    public void putCompactValue(Object value);
+    
+    public int position();
+    
+    /**
+     * Writes int at specified absolute position, which must have been already written.
+     */
+    public void putInt(int position, int value);
 }
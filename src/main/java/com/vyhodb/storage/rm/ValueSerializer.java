@@ -178,6 +178,176 @@ public final class ValueSerializer {
         return null;    // this line will never be reached, because throwTRE throws TransactionRolledBack Exception
     }
     
+    /**
+     * Moves reader past the value without creating it. Rare types are 
+     * read and thrown away.
+     */
+    public static void skipValue(SpaceInternal space, SystemReader reader)
+    {
+        final byte type = reader.getByte();
+        
+        switch(type)
+        {
+            case NULL:
+                return;
+                
+            case BOOLEAN:
+            case BYTE:
+                reader.skip(1);
+                return;
+                
+            case CHAR:
+            case SHORT:
+                reader.skip(2);
+                return;
+                
+            case INT:
+            case FLOAT:
+                reader.skip(4);
+                return;
+                
+            case LONG:
+            case DATE:
+            case DOUBLE:
+                reader.skip(8);
+                return;
+                
+            case UUID:
+                reader.skip(16);
+                return;
+                
+            case STRING:
+            case TIME_ZONE:
+            case ARRAY_P_CHAR:
+            case ARRAY_P_SHORT:
+                reader.skip(reader.getInt() << 1);
+                return;
+                
+            case BIG_INTEGER:
+            case ARRAY_P_BYTE:
+            case ARRAY_P_BOOLEAN:
+                reader.skip(reader.getInt());
+                return;
+                
+            case BIG_DECIMAL:
+                reader.skip(reader.getInt() + 4);
+                return;
+                
+            case ARRAY_P_INT:
+            case ARRAY_P_FLOAT:
+                reader.skip(reader.getInt() << 2);
+                return;
+                
+            case ARRAY_P_LONG:
+            case ARRAY_P_DOUBLE:
+            case ARRAY_DATE:
+                reader.skip(reader.getInt() << 3);
+                return;
+                
+            case ARRAY_UUID:
+                reader.skip(reader.getInt() << 4);
+                return;
+        }
+        
+        // Composite keys and arrays of variable length values
+        reader.position(reader.position() - 1);
+        getValue(space, reader);
+    }
+    
+    /**
+     * Record format v2: integral numbers and dates are written as varints, 
+     * strings in compact form. Other types are written as by 
+     * {@linkplain #putValue(SpaceInternal, SystemWriter, Object)}.
+     */
+    public static void putCompactValue(SpaceInternal space, SystemWriter writer, Object value)
+    {
+        final byte type = getType(value, space);
+        
+        switch (type) {
+            case STRING:
+                writer.putByte(type);
+                writer.putCompactString((String) value);
+                return;
+                
+            case LONG:
+                writer.putByte(type);
+                writer.putVarLong((Long) value);
+                return;
+                
+            case INT:
+                writer.putByte(type);
+                writer.putVarLong((Integer) value);
+                return;
+                
+            case SHORT:
+                writer.putByte(type);
+                writer.putVarLong((Short) value);
+                return;
+                
+            case DATE:
+                writer.putByte(type);
+                writer.putVarLong(((Date) value).getTime());
+                return;
+                
+            case TIME_ZONE:
+                writer.putByte(type);
+                writer.putCompactString(((TimeZone) value).getID());
+                return;
+        }
+        
+        putValue(space, writer, value);
+    }
+    
+    public static Object getCompactValue(SpaceInternal space, SystemReader reader)
+    {
+        final byte type = reader.getByte();
+        
+        switch (type) {
+            case STRING:
+                return reader.getCompactString();
+                
+            case LONG:
+                return reader.getVarLong();
+                
+            case INT:
+                return (int) reader.getVarLong();
+                
+            case SHORT:
+                return (short) reader.getVarLong();
+                
+            case DATE:
+                return new Date(reader.getVarLong());
+                
+            case TIME_ZONE:
+                return TimeZone.getTimeZone(reader.getCompactString());
+        }
+        
+        reader.position(reader.position() - 1);
+        return getValue(space, reader);
+    }
+    
+    public static void skipCompactValue(SpaceInternal space, SystemReader reader)
+    {
+        final byte type = reader.getByte();
+        
+        switch (type) {
+            case STRING:
+            case TIME_ZONE:
+                reader.skipCompactString();
+                return;
+                
+            case LONG:
+            case INT:
+            case SHORT:
+            case DATE:
+                reader.skipVarLong();
+                return;
+        }
+        
+        reader.position(reader.position() - 1);
+        skipValue(space, reader);
+    }
+    
     public static void putValue(SpaceInternal space, SystemWriter writer, Object value)
     {
         byte type = getType(value, space);
@@ -82,7 +82,7 @@ public final class ChildrenIterator implements Iterator<Record> {
             _space.throwTRE(RecordContainer.PARENT_RECORD_DELETED);
         }
         
-        ListRoot root = parent.children.get(_linkName);
+        ListRoot root = parent.children().get(_linkName);
         if (root == null || root.mod != _mod)
         {
             _space.throwTRE("Children concurrent modification");
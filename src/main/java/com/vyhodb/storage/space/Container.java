@@ -30,6 +30,7 @@ import com.vyhodb.storage.rm.SystemWriter;
 import com.vyhodb.storage.space.index.IndexLeaf;
 import com.vyhodb.storage.space.index.IndexLinks;
 import com.vyhodb.storage.space.index.IndexNode;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 
 public abstract class Container implements SystemSerializable {
 
@@ -40,6 +41,8 @@ public abstract class Container implements SystemSerializable {
     public static final short CONTAINER_TYPE_INDEX_NODE = 2;
     public static final short CONTAINER_TYPE_INDEX_LEAF = 3;
     public static final short CONTAINER_TYPE_INDEX_LINKS = 4;
+    public static final short CONTAINER_TYPE_RECORD_V2 = 5;
+    public static final short CONTAINER_TYPE_DICTIONARY = 6;
     
     protected long _id = SpaceInternal.NULL;
     protected SpaceInternal _space;
@@ -49,6 +52,14 @@ public abstract class Container implements SystemSerializable {
     
     public abstract short getType();
     
+    /**
+     * Returns serialization format code, which is written before container. 
+     * It's the same as type for containers with single format.
+     */
+    public short getFormat() {
+        return getType();
+    }
+    
     public long getId() {
         return _id;
     }
@@ -77,6 +88,22 @@ public abstract class Container implements SystemSerializable {
         return _isDirty;
     }
     
+    /**
+     * Returns id of container, next to which new block of this container
+     * should be placed, or {@linkplain SpaceInternal#NULL}.
+     */
+    public long getLocalityHint() {
+        return SpaceInternal.NULL;
+    }
+    
+    /**
+     * Adds ids of containers, which this one links to, into specified collection. 
+     * Added ids might be {@linkplain SpaceInternal#NULL}. Used by compaction for 
+     * walking the space.
+     */
+    public void addReferences(LongCollection references) {
+    }
+    
     public boolean isLocked() {
         return _lock != Integer.MIN_VALUE;
     }
@@ -103,7 +130,7 @@ public abstract class Container implements SystemSerializable {
     
     public final static void writeContainer(SystemWriter writer, Container container)
     {
-        writer.putShort(container.getType());
+        writer.putShort(container.getFormat());
         container.write(writer);
     }
     
@@ -114,7 +141,11 @@ public abstract class Container implements SystemSerializable {
         
         switch (type) {
             case CONTAINER_TYPE_RECORD:
-                container = new RecordContainer(); 
+                container = new RecordContainer(false); 
+                break;
+                
+            case CONTAINER_TYPE_RECORD_V2:
+                container = new RecordContainer(true); 
                 break;
                 
             case CONTAINER_TYPE_INDEX_NODE:
@@ -129,6 +160,10 @@ public abstract class Container implements SystemSerializable {
                 container = new IndexLinks();
                 break;
                 
+            case CONTAINER_TYPE_DICTIONARY:
+                container = new DictionaryContainer();
+                break;
+                
             default:
                 return null;
         }
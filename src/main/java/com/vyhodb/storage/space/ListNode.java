@@ -47,4 +47,16 @@ final class ListNode implements SystemSerializable {
         writer.putLong(next);
         writer.putLong(parent);
     }
+    
+    public void readCompact(SystemReader reader) {
+        prev = ListRoot.getId(reader);
+        next = ListRoot.getId(reader);
+        parent = ListRoot.getId(reader);
+    }
+    
+    public void writeCompact(SystemWriter writer) {
+        ListRoot.putId(writer, prev);
+        ListRoot.putId(writer, next);
+        ListRoot.putId(writer, parent);
+    }
 }
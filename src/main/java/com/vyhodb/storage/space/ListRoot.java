@@ -51,4 +51,31 @@ public final class ListRoot implements SystemSerializable {
         writer.putInt(mod);
     }
     
+    public void readCompact(SystemReader reader) {
+        first = getId(reader);
+        last = getId(reader);
+        size = reader.getVarLong();
+        mod = (int) (reader.getVarLong() + Integer.MIN_VALUE);
+    }
+    
+    public void writeCompact(SystemWriter writer) {
+        putId(writer, first);
+        putId(writer, last);
+        writer.putVarLong(size);
+        writer.putVarLong((long) mod - Integer.MIN_VALUE);
+    }
+    
+    /**
+     * Ids aren't negative, so {@linkplain SpaceInternal#NULL} is written as -1 
+     * and takes single byte.
+     */
+    static void putId(SystemWriter writer, long id) {
+        writer.putVarLong(id == SpaceInternal.NULL ? -1L : id);
+    }
+    
+    static long getId(SystemReader reader) {
+        final long id = reader.getVarLong();
+        return id == -1L ? SpaceInternal.NULL : id;
+    }
+    
 }
@@ -35,6 +35,7 @@ import com.vyhodb.storage.space.index.IndexRoot;
 import com.vyhodb.storage.space.index.iterator.IndexIterator;
 import com.vyhodb.storage.space.index.iterator.RangeIterator;
 import com.vyhodb.storage.space.index.iterator.RecordIdIterator;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 
 import java.util.*;
 import java.util.Map.Entry;
@@ -54,68 +55,346 @@ public final class RecordContainer extends Container {
     public final static String ROOT_RECORD_DELETED = "Root record can't be deleted.";
     public static final String PARENT_RECORD_DELETED = "Parent record has been deleted.";
     
-    public HashMap<String, Object> fields = new HashMap<>();
-    public HashMap<String, ListRoot> children = new HashMap<>();
-    public HashMap<String, ListNode> parents = new HashMap<>();
-    public HashMap<String, IndexRoot> indexes = new HashMap<>();
-    public HashSet<IndexDescriptorInternal> innerIndexDescriptors = new HashSet<>();
+    private final HashMap<String, Object> _fields;
+    private final HashMap<String, ListRoot> _children;
+    private final HashMap<String, ListNode> _parents;
+    private final HashMap<String, IndexRoot> _indexes;
+    public HashSet<IndexDescriptorInternal> innerIndexDescriptors;
     
+    /**
+     * Format of serialized record: legacy or v2 (compact). Records are always 
+     * written in v2 format.
+     */
+    private final boolean _compact;
+    
+    /**
+     * Serialized record, which is kept by read transactions until both 
+     * sections (fields and links) are decoded. Image isn't modified, so it's 
+     * shared by all views of cached record, each view reads it by own reader.
+     */
+    private SystemReader _image;
+    private SystemReader _raw;
+    private int _linksOffset = -1;
+    private boolean _fieldsDecoded = true;
+    private boolean _linksDecoded = true;
+    
+    public RecordContainer() {
+        this(true);
+    }
+    
+    RecordContainer(boolean compact) {
+        _compact = compact;
+        _fields = new HashMap<>();
+        _children = new HashMap<>();
+        _parents = new HashMap<>();
+        _indexes = new HashMap<>();
+        innerIndexDescriptors = new HashSet<>();
+    }
+    
+    /**
+     * View for read transactions. If source hasn't been decoded completely, view 
+     * shares serialized record only and decodes it on first access. Otherwise 
+     * fields, links and inner index descriptors are shared with source, index 
+     * roots are bound to specified space.
+     */
+    private RecordContainer(RecordContainer source, SpaceInternal space) {
+        _id = source._id;
+        _space = space;
+        _compact = source._compact;
+        innerIndexDescriptors = source.innerIndexDescriptors;
+        
+        if (source._image != null) {
+            _image = source._image;
+            _fieldsDecoded = false;
+            _linksDecoded = false;
+            _fields = new HashMap<>();
+            _children = new HashMap<>();
+            _parents = new HashMap<>();
+            _indexes = new HashMap<>();
+            return;
+        }
+        
+        _fields = source._fields;
+        _children = source._children;
+        _parents = source._parents;
+        
+        if (source._indexes.isEmpty()) {
+            _indexes = source._indexes;
+        }
+        else {
+            _indexes = new HashMap<>(source._indexes.size() * 2);
+            for (Entry<String, IndexRoot> entry : source._indexes.entrySet()) {
+                _indexes.put(entry.getKey(), new IndexRoot(space, entry.getValue()));
+            }
+        }
+    }
+    
+    /**
+     * Returns read only view of this container bound to specified space. Must 
+     * be used by read transactions only, because views might share decoded state.
+     */
+    public RecordContainer bind(SpaceInternal space) {
+        return new RecordContainer(this, space);
+    }
+    
+    public HashMap<String, Object> fields() {
+        ensureFields();
+        return _fields;
+    }
+    
+    public HashMap<String, ListRoot> children() {
+        ensureLinks();
+        return _children;
+    }
+    
+    public HashMap<String, ListNode> parents() {
+        ensureLinks();
+        return _parents;
+    }
+    
+    public HashMap<String, IndexRoot> indexes() {
+        ensureLinks();
+        return _indexes;
+    }
+    
+    /**
+     * Record format v2:
+     * <pre>
+     * int          offset of fields directory
+     * values       compact field values
+     * directory    varint count, {compact name, varint value offset}
+     * children     varint count, {compact name, compact list root}
+     * parents      varint count, {compact name, compact list node}
+     * indexes      varint count, {index root}
+     * inner        varint count, {inner index descriptor}
+     * </pre>
+     * Offsets are relative to record start, so single field is read without 
+     * decoding others.
+     */
     @Override
     public void read(SystemReader reader) {
-        String name;
-        int size = 0;
+        // Read transactions keep serialized record and decode it on first access.
+        // Inner index descriptors aren't used by read transactions at all.
+        if (((Space)_space).isReadOnly()) {
+            _image = reader.detach();
+            _fieldsDecoded = false;
+            _linksDecoded = false;
+            return;
+        }
+        
+        readFields(reader);
+        readLinks(reader);
         
-        // Reads fields
+        // Reads inner index descriptors
+        final int size = _compact ? (int) reader.getVarLong() : reader.getInt();
+        IndexDescriptorInternal innerDescriptor;
+        for (int i = 0; i < size; i++) {
+            innerDescriptor = new IndexDescriptorInternal();
+            innerDescriptor.read(reader);
+            innerIndexDescriptors.add(innerDescriptor);
+        }
+    }
+    
+    /**
+     * Reads fields section and leaves reader at the beginning of links section.
+     */
+    private void readFields(SystemReader reader) {
+        String name;
         Object fieldValue;
-        size = reader.getShort();
+        
+        if (_compact) {
+            // Values are stored in the same order as names in directory
+            final int start = reader.position();
+            reader.position(start + reader.getInt());
+            
+            final int size = (int) reader.getVarLong();
+            final String[] names = new String[size];
+            for (int i = 0; i < size; i++) {
+                names[i] = reader.getCompactStringConst();
+                reader.skipVarLong();
+            }
+            final int linksPosition = reader.position();
+            
+            reader.position(start + 4);
+            for (int i = 0; i < size; i++) {
+                _fields.put(names[i], reader.getCompactValue());
+            }
+            
+            reader.position(linksPosition);
+            return;
+        }
+        
+        final int size = reader.getShort();
         for (int i = 0; i < size; i++) {
             name = reader.getStringConst();
             fieldValue = reader.getValue();
-            fields.put(name, fieldValue);
+            _fields.put(name, fieldValue);
         }
+    }
+    
+    private void skipFields(SystemReader reader) {
+        if (_compact) {
+            final int start = reader.position();
+            reader.position(start + reader.getInt());
+            
+            final int size = (int) reader.getVarLong();
+            for (int i = 0; i < size; i++) {
+                reader.skipCompactStringConst();
+                reader.skipVarLong();
+            }
+            return;
+        }
+        
+        final int size = reader.getShort();
+        for (int i = 0; i < size; i++) {
+            reader.skipStringConst();
+            reader.skipValue();
+        }
+    }
+    
+    private void readLinks(SystemReader reader) {
+        String name;
+        int size = 0;
         
         // Reads children
         ListRoot listRoot;
-        size = reader.getInt();
+        size = _compact ? (int) reader.getVarLong() : reader.getInt();
         for (int i = 0; i < size; i++) {
-            name = reader.getStringConst();
+            name = readName(reader);
             listRoot = new ListRoot();
-            listRoot.read(reader);
-            children.put(name, listRoot);
+            if (_compact) {
+                listRoot.readCompact(reader);
+            } else {
+                listRoot.read(reader);
+            }
+            _children.put(name, listRoot);
         }
         
         // Reads parents
         ListNode listNode;
-        size = reader.getShort();
+        size = _compact ? (int) reader.getVarLong() : reader.getShort();
         for (int i = 0; i < size; i++) {
-            name = reader.getStringConst();
+            name = readName(reader);
             listNode = new ListNode();
-            listNode.read(reader);
-            parents.put(name, listNode);
+            if (_compact) {
+                listNode.readCompact(reader);
+            } else {
+                listNode.read(reader);
+            }
+            _parents.put(name, listNode);
         }
         
         // Reads indexes
         IndexRoot indexRoot = null;
-        size = reader.getShort();
+        size = _compact ? (int) reader.getVarLong() : reader.getShort();
         for (int i = 0; i < size; i++) {
             indexRoot = new IndexRoot(_space);
             indexRoot.read(reader);
-            indexes.put(indexRoot.getDescriptor().getIndexName(), indexRoot);
+            _indexes.put(indexRoot.getDescriptor().getIndexName(), indexRoot);
         }
+    }
+    
+    private String readName(SystemReader reader) {
+        return _compact ? reader.getCompactStringConst() : reader.getStringConst();
+    }
+    
+    private void ensureFields() {
+        if (_fieldsDecoded) 
+            return;
         
-        // Reads inner index descriptors
-        //
-        // Optimization for read transactions. 
-        // In read transactions we don't use inner index descriptors at all.
-        if (! ((Space)_space).isReadOnly()) {
-            size = reader.getInt();
-            IndexDescriptorInternal innerDescriptor;
+        final SystemReader raw = raw();
+        raw.position(0);
+        readFields(raw);
+        _linksOffset = raw.position();
+        
+        _fieldsDecoded = true;
+        releaseRaw();
+    }
+    
+    private void ensureLinks() {
+        if (_linksDecoded) 
+            return;
+        
+        final SystemReader raw = raw();
+        if (_linksOffset == -1) {
+            raw.position(0);
+            skipFields(raw);
+            _linksOffset = raw.position();
+        }
+        else {
+            raw.position(_linksOffset);
+        }
+        readLinks(raw);
+        
+        _linksDecoded = true;
+        releaseRaw();
+    }
+    
+    private SystemReader raw() {
+        if (_raw == null) {
+            _raw = _image.duplicate(_space);
+        }
+        return _raw;
+    }
+    
+    private void releaseRaw() {
+        if (_fieldsDecoded && _linksDecoded) {
+            _image = null;
+            _raw = null;
+        }
+    }
+    
+    /**
+     * Returns true if specified field has been already decoded. Absent field is 
+     * reported as decoded only after whole fields section has been decoded.
+     */
+    public boolean isFieldDecoded(String fieldName) {
+        return _fieldsDecoded || _fields.containsKey(fieldName);
+    }
+    
+    public boolean isLinksDecoded() {
+        return _linksDecoded;
+    }
+    
+    /**
+     * Returns field value without virtual link fallback. If fields section 
+     * hasn't been decoded yet, only requested field is decoded: v2 format 
+     * value is located through directory, legacy format values are skipped.
+     */
+    private Object lookupField(String fieldName) {
+        Object value = _fields.get(fieldName);
+        if (value != null || _fieldsDecoded) 
+            return value;
+        
+        final SystemReader raw = raw();
+        raw.position(0);
+        if (_compact) {
+            raw.position(raw.getInt());
+            final int size = (int) raw.getVarLong();
+            for (int i = 0; i < size; i++) {
+                if (fieldName.equals(raw.getCompactStringConst())) {
+                    raw.position((int) raw.getVarLong());
+                    value = raw.getCompactValue();
+                    _fields.put(fieldName, value);
+                    return value;
+                }
+                raw.skipVarLong();
+            }
+        }
+        else {
+            final int size = raw.getShort();
             for (int i = 0; i < size; i++) {
-                innerDescriptor = new IndexDescriptorInternal();
-                innerDescriptor.read(reader);
-                innerIndexDescriptors.add(innerDescriptor);
+                if (fieldName.equals(raw.getStringConst())) {
+                    value = raw.getValue();
+                    _fields.put(fieldName, value);
+                    return value;
+                }
+                raw.skipValue();
             }
         }
+        _linksOffset = raw.position();
+        
+        return null;
     }
 
     @Override
@@ -123,42 +402,55 @@ public final class RecordContainer extends Container {
         // Clears empty children
         removeEmptyChildrens();
         
-        // Writes fields
-        writer.putShort((short)fields.size());
-        for (Entry<String, Object> entry : fields.entrySet()) {
-            writer.putStringConst(entry.getKey());
-            writer.putValue(entry.getValue());
+        // Writes field values, then directory
+        final HashMap<String, Object> fields = fields();
+        final int start = writer.position();
+        writer.putInt(0);
+        
+        final int[] offsets = new int[fields.size()];
+        int i = 0;
+        for (Object value : fields.values()) {
+            offsets[i++] = writer.position() - start;
+            writer.putCompactValue(value);
+        }
+        
+        writer.putInt(start, writer.position() - start);
+        writer.putVarLong(fields.size());
+        i = 0;
+        for (String name : fields.keySet()) {
+            writer.putCompactStringConst(name);
+            writer.putVarLong(offsets[i++]);
         }
         
         // Writes children
-        writer.putInt(children.size());
-        for (Entry<String, ListRoot> entry : children.entrySet()) {
-            writer.putStringConst(entry.getKey());
-            entry.getValue().write(writer);
+        writer.putVarLong(children().size());
+        for (Entry<String, ListRoot> entry : children().entrySet()) {
+            writer.putCompactStringConst(entry.getKey());
+            entry.getValue().writeCompact(writer);
         }
 
         // Writes parents
-        writer.putShort((short)parents.size());
-        for (Entry<String, ListNode> entry : parents.entrySet()) {
-            writer.putStringConst(entry.getKey());
-            entry.getValue().write(writer);
+        writer.putVarLong(parents().size());
+        for (Entry<String, ListNode> entry : parents().entrySet()) {
+            writer.putCompactStringConst(entry.getKey());
+            entry.getValue().writeCompact(writer);
         }
         
         // Writes Indexes
-        writer.putShort((short)indexes.size());
-        for (IndexRoot indexRoot : indexes.values()) {
+        writer.putVarLong(indexes().size());
+        for (IndexRoot indexRoot : indexes().values()) {
             indexRoot.write(writer);
         }
         
         // Writes inner index descriptors
-        writer.putInt(innerIndexDescriptors.size());
+        writer.putVarLong(innerIndexDescriptors.size());
         for (IndexDescriptorInternal innerIndexDescriptor : innerIndexDescriptors) {
             innerIndexDescriptor.write(writer);
         }
     }
 
     private void removeEmptyChildrens() {
-        Iterator<Entry<String, ListRoot>> iterator = children.entrySet().iterator();
+        Iterator<Entry<String, ListRoot>> iterator = children().entrySet().iterator();
         Entry<String, ListRoot> entry;
         while (iterator.hasNext())
         {
@@ -173,17 +465,22 @@ public final class RecordContainer extends Container {
         return CONTAINER_TYPE_RECORD;
     }
     
+    @Override
+    public short getFormat() {
+        return CONTAINER_TYPE_RECORD_V2;
+    }
+    
     
     public Object getField(String fieldName) {
         if (fieldName == null) {
             _space.throwTRE(FIELD_NAME_NULL);
         }
         
-        Object value = fields.get(fieldName);
+        Object value = lookupField(fieldName);
         
         // Virtual link field
         if (value == null) {
-            ListNode listNode = parents.get(fieldName);
+            ListNode listNode = parents().get(fieldName);
             if (listNode != null) {
                 value = listNode.parent;
             }
@@ -207,14 +504,14 @@ public final class RecordContainer extends Container {
         {
             updateParentIndexesRemove(fieldName);
             
-            oldValue = fields.get(fieldName);
-            fields.remove(fieldName);
+            oldValue = fields().get(fieldName);
+            fields().remove(fieldName);
         }
         
         // Adding
         {
             if (value != null) {
-                fields.put(fieldName, value);
+                fields().put(fieldName, value);
             }
             
             updateParentIndexesAdd(fieldName);
@@ -223,7 +520,7 @@ public final class RecordContainer extends Container {
         unlock();
         
         // Checks for max field count
-        if (fields.size() > Short.MAX_VALUE) {
+        if (fields().size() > Short.MAX_VALUE) {
             _space.throwTRE("Maximum fields (" + Short.MAX_VALUE + ") per record has exceeded.");
         }
         
@@ -241,7 +538,7 @@ public final class RecordContainer extends Container {
                 parent.lock();
                 parent.setDirty();
                 
-                indexRoot = parent.indexes.get(descriptor.getIndexName());
+                indexRoot = parent.indexes().get(descriptor.getIndexName());
                 indexRoot.remove(descriptor.buildKey(this), _id);
                               
                 parent.unlock();
@@ -260,7 +557,7 @@ public final class RecordContainer extends Container {
                 parent.lock();
                 parent.setDirty();
                 
-                indexRoot = parent.indexes.get(descriptor.getIndexName());
+                indexRoot = parent.indexes().get(descriptor.getIndexName());
                 indexRoot.insert(descriptor.buildKey(this), _id);
                               
                 parent.unlock();
@@ -273,7 +570,7 @@ public final class RecordContainer extends Container {
             _space.throwTRE(LINK_NAME_NULL);
         }
         
-        ListNode listNode = parents.get(linkName);
+        ListNode listNode = parents().get(linkName);
         if (listNode != null) {
             return ((Space) _space).getRecord(listNode.parent);
         }
@@ -321,7 +618,7 @@ public final class RecordContainer extends Container {
     }
     
     private RecordContainer linkRemove(String linkName) {
-        ListNode listNode = parents.get(linkName);
+        ListNode listNode = parents().get(linkName);
         
         updateParentIndexesRemove(linkName);
         
@@ -344,7 +641,7 @@ public final class RecordContainer extends Container {
             
             // Remove ListNode
             listUnlink(parent, linkName, listNode);
-            parents.remove(linkName);
+            parents().remove(linkName);
             
             parent.unlock();
             
@@ -363,7 +660,7 @@ public final class RecordContainer extends Container {
             // Creates and insert ListNode
             ListNode childNode = new ListNode();
             listAddLast(parent, linkName, childNode);
-            parents.put(linkName, childNode);
+            parents().put(linkName, childNode);
                     
             // Get parent's indexes
             List<IndexRoot> parentIndexes = parent.getParentIndexes(linkName);
@@ -385,10 +682,10 @@ public final class RecordContainer extends Container {
        
     
     private List<IndexRoot> getParentIndexes(String childLinkName) {
-        if (indexes.isEmpty()) return Collections.emptyList();
+        if (indexes().isEmpty()) return Collections.emptyList();
         
         ArrayList<IndexRoot> result = new ArrayList<>();
-        for (IndexRoot indexRoot : indexes.values()) {
+        for (IndexRoot indexRoot : indexes().values()) {
             if (indexRoot.getDescriptor().getLinkName().equals(childLinkName)) {
                 result.add(indexRoot);
             }
@@ -404,12 +701,12 @@ public final class RecordContainer extends Container {
         
         // Check index name
         String indexName = descriptor.getIndexName();
-        if (indexes.containsKey(indexName)) {
+        if (indexes().containsKey(indexName)) {
             _space.throwTRE("Index with specified name already exists. Index name:" + indexName);
         }
         
         // Checks index count
-        if (indexes.size() == Short.MAX_VALUE) {
+        if (indexes().size() == Short.MAX_VALUE) {
             _space.throwTRE("Maximum index count (" + Short.MAX_VALUE + ") per record has exceeded");
         }
         
@@ -421,14 +718,14 @@ public final class RecordContainer extends Container {
                 
         // Creates index root
         IndexRoot indexRoot = new IndexRoot(_space, desc);
-        indexes.put(indexName, indexRoot);
+        indexes().put(indexName, indexRoot);
         
         // Modifies children and inserts field values into index
         RecordContainer childRC;
-        Iterator<RecordContainer> children = getRcIterator(desc.getLinkName(), Order.ASC);
-        while(children.hasNext())
+        Iterator<RecordContainer> childIter = getRcIterator(desc.getLinkName(), Order.ASC);
+        while(childIter.hasNext())
         {
-            childRC = children.next();
+            childRC = childIter.next();
             
             childRC.lock();
             childRC.setDirty();
@@ -447,7 +744,7 @@ public final class RecordContainer extends Container {
             _space.throwTRE(INDEX_NAME_NULL);
         }
         
-        IndexRoot indexRoot = indexes.get(indexName);
+        IndexRoot indexRoot = indexes().get(indexName);
         if (indexRoot == null) {
             _space.throwTRE(String.format(WRONG_INDEX_NAME, indexName));
         }
@@ -479,7 +776,7 @@ public final class RecordContainer extends Container {
         }
         
         // Removes index root
-        indexes.remove(indexName);
+        indexes().remove(indexName);
         
         unlock();
     }
@@ -489,7 +786,7 @@ public final class RecordContainer extends Container {
             _space.throwTRE(FIELD_NAME_NULL);
         }
         
-        ListRoot listRoot = children.get(childLinkName);
+        ListRoot listRoot = children().get(childLinkName);
         if (listRoot == null) {
             return;
         }
@@ -506,7 +803,7 @@ public final class RecordContainer extends Container {
         }
         
         // Removes list root
-        children.remove(childLinkName);
+        children().remove(childLinkName);
         
         unlock();
     }
@@ -514,15 +811,55 @@ public final class RecordContainer extends Container {
     public Set<String> getFieldNames() {
         return Collections.unmodifiableSet(
                 new HashSet<String>(
-                            fields.keySet()
+                            fields().keySet()
                         )
                 );
     }
     
+    @Override
+    public void addReferences(LongCollection references) {
+        for (ListRoot listRoot : children().values()) {
+            references.add(listRoot.first);
+            references.add(listRoot.last);
+        }
+        
+        for (ListNode listNode : parents().values()) {
+            references.add(listNode.prev);
+            references.add(listNode.next);
+            references.add(listNode.parent);
+        }
+        
+        for (IndexRoot indexRoot : indexes().values()) {
+            references.add(indexRoot.getRootId());
+        }
+    }
+    
+    /**
+     * Child is placed next to its previous sibling or, if it's the first 
+     * child, next to its parent.
+     */
+    @Override
+    public long getLocalityHint() {
+        // Parent link with the least name is used, so hint doesn't depend on hash map order
+        String hintLinkName = null;
+        ListNode hintNode = null;
+        for (Entry<String, ListNode> entry : parents().entrySet()) {
+            if (hintLinkName == null || entry.getKey().compareTo(hintLinkName) < 0) {
+                hintLinkName = entry.getKey();
+                hintNode = entry.getValue();
+            }
+        }
+        
+        if (hintNode == null)
+            return SpaceInternal.NULL;
+        
+        return (hintNode.prev != SpaceInternal.NULL) ? hintNode.prev : hintNode.parent;
+    }
+    
     public Set<String> getParentLinkNames() {
         return Collections.unmodifiableSet(
                 new HashSet<String>(
-                            parents.keySet()
+                            parents().keySet()
                         )
                 );
     }
@@ -530,7 +867,7 @@ public final class RecordContainer extends Container {
     public Set<String> getChildrenLinkNames() {
         return Collections.unmodifiableSet(
                 new HashSet<String>(
-                            children.keySet()
+                            children().keySet()
                         )
                 );
     }
@@ -538,13 +875,13 @@ public final class RecordContainer extends Container {
     public Set<String> getIndexNames() {
         return Collections.unmodifiableSet(
                 new HashSet<String>(
-                            indexes.keySet()
+                            indexes().keySet()
                         )
                 );
     }
     
     public boolean containsIndex(String indexName) {
-        return indexes.containsKey(indexName);
+        return indexes().containsKey(indexName);
     }
     
     public IndexDescriptor getIndexDescriptor(String indexName) {
@@ -552,7 +889,7 @@ public final class RecordContainer extends Container {
             _space.throwTRE(INDEX_NAME_NULL);
         }
         
-        IndexRoot indexRoot = indexes.get(indexName);
+        IndexRoot indexRoot = indexes().get(indexName);
         if (indexRoot == null) {
             _space.throwTRE(String.format(WRONG_INDEX_NAME, indexName));
         }
@@ -563,7 +900,7 @@ public final class RecordContainer extends Container {
     public Set<IndexDescriptor> getAllIndexDecsriptors() {
         HashSet<IndexDescriptor> descs = new HashSet<>();
         
-        for (IndexRoot indexRoot : indexes.values()) {
+        for (IndexRoot indexRoot : indexes().values()) {
             descs.add(indexRoot.getDescriptor().toIndexDescriptor());
         }
                 
@@ -593,7 +930,7 @@ public final class RecordContainer extends Container {
             _space.throwTRE(FIELD_NAME_NULL);
         }
         
-        ListRoot listRoot = children.get(fieldName);
+        ListRoot listRoot = children().get(fieldName);
         return (listRoot == null) ? 0 : listRoot.size;
     }
     
@@ -602,7 +939,7 @@ public final class RecordContainer extends Container {
         final long prevId = childNode.prev;
                                 
         // Retrieve and modify list root
-        final ListRoot listRoot = parent.children.get(fieldName);          
+        final ListRoot listRoot = parent.children().get(fieldName);          
                     
         // Prev
         if (prevId == SpaceInternal.NULL) {
@@ -614,7 +951,7 @@ public final class RecordContainer extends Container {
             prev.lock();
             prev.setDirty();
             
-            ListNode prevNode = prev.parents.get(fieldName);
+            ListNode prevNode = prev.parents().get(fieldName);
             prevNode.next = nextId;
             
             prev.unlock();
@@ -630,7 +967,7 @@ public final class RecordContainer extends Container {
             next.lock();
             next.setDirty();
             
-            ListNode nextNode = next.parents.get(fieldName);
+            ListNode nextNode = next.parents().get(fieldName);
             nextNode.prev = prevId;
             
             next.unlock();
@@ -641,10 +978,10 @@ public final class RecordContainer extends Container {
     }
     
     private void listAddLast(RecordContainer parent, String linkName, ListNode childNode) {
-        ListRoot root = parent.children.get(linkName);
+        ListRoot root = parent.children().get(linkName);
         if (root == null) {
             root = new ListRoot();
-            parent.children.put(linkName, root);
+            parent.children().put(linkName, root);
         }
         
         if (root.size == Long.MAX_VALUE) {
@@ -668,7 +1005,7 @@ public final class RecordContainer extends Container {
             last.lock();
             last.setDirty();
             
-            ListNode lastNode = last.parents.get(linkName);
+            ListNode lastNode = last.parents().get(linkName);
             lastNode.next = _id;
             
             last.unlock();
@@ -684,7 +1021,7 @@ public final class RecordContainer extends Container {
             _space.throwTRE(LINK_NAME_NULL);
         }
         
-        ListNode listNode = parents.get(linkName);
+        ListNode listNode = parents().get(linkName);
         if (listNode == null) {
             return Collections.emptyIterator();
         }
@@ -706,7 +1043,7 @@ public final class RecordContainer extends Container {
                 linkName, 
                 rcIterator, 
                 listNode.parent, 
-                parentRC.children.get(linkName).mod
+                parentRC.children().get(linkName).mod
         );
         
     }
@@ -716,10 +1053,10 @@ public final class RecordContainer extends Container {
             _space.throwTRE(LINK_NAME_NULL);
         }
         
-        ListRoot listRoot = children.get(linkName);
+        ListRoot listRoot = children().get(linkName);
         if (listRoot == null) {
             listRoot = new ListRoot();
-            children.put(linkName, listRoot);
+            children().put(linkName, listRoot);
         }
         
         boolean ascending = (Order.ASC == order);
@@ -738,12 +1075,12 @@ public final class RecordContainer extends Container {
                 linkName, 
                 rcIterator, 
                 _id, 
-                children.get(linkName).mod
+                children().get(linkName).mod
         );
     }
     
     public IndexIterator search(String indexName, Criterion criterion, Order order) {
-        IndexRoot indexRoot = indexes.get(indexName);
+        IndexRoot indexRoot = indexes().get(indexName);
         if (indexRoot == null) {
             _space.throwTRE(String.format(WRONG_INDEX_NAME, indexName));
         }
@@ -755,13 +1092,13 @@ public final class RecordContainer extends Container {
     }
     
     public Record getFirst(String linkName) {
-        Iterator<Record> children = getChildren(linkName, Order.ASC);
-        return children.hasNext() ? children.next() : null;
+        Iterator<Record> iterator = getChildren(linkName, Order.ASC);
+        return iterator.hasNext() ? iterator.next() : null;
     }
 
     public Record getLast(String linkName) {
-        Iterator<Record> children = getChildren(linkName, Order.DESC);
-        return children.hasNext() ? children.next() : null;
+        Iterator<Record> iterator = getChildren(linkName, Order.DESC);
+        return iterator.hasNext() ? iterator.next() : null;
     }
 
     public Record searchFirst(String indexName, Criterion criterion, Order order) {
@@ -796,7 +1133,7 @@ public final class RecordContainer extends Container {
     
     private void printFields(StringBuilder builder, String[] fieldNames)
     {
-        Collection<String> fieldNamesForPrint = fieldNames == null ? fields.keySet() : Arrays.asList(fieldNames);
+        Collection<String> fieldNamesForPrint = fieldNames == null ? fields().keySet() : Arrays.asList(fieldNames);
         
         boolean first = true;
         for (String fieldName : fieldNamesForPrint) {
@@ -808,7 +1145,7 @@ public final class RecordContainer extends Container {
             }
             
             builder.append(fieldName).append(FIELD_VALUE_SEPARATOR);
-            printValue(builder, fields.get(fieldName));
+            printValue(builder, lookupField(fieldName));
         }
     }
     
@@ -57,7 +57,7 @@ public final class RecordContainerIterator implements Iterator<RecordContainer>
         
         // Retrieves next/prev
         RecordContainer nextRC = (RecordContainer) _space.get(_next);
-        ListNode nextNode = nextRC.parents.get(_linkName);
+        ListNode nextNode = nextRC.parents().get(_linkName);
         _next = _asc ? nextNode.next : nextNode.prev;
 
         // TODO check for null here
@@ -29,6 +29,7 @@ import com.vyhodb.storage.rm.SystemWriter;
 import com.vyhodb.storage.space.Container;
 import com.vyhodb.storage.space.SpaceInternal;
 import com.vyhodb.storage.space.index.iterator.TupleIterator;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 
 import static com.vyhodb.utils.Utils.compare;
 import static com.vyhodb.utils.Utils.equal;
@@ -85,6 +86,18 @@ public final class IndexLeaf extends Container implements Node {
         return CONTAINER_TYPE_INDEX_LEAF;
     }
     
+    /**
+     * Links are ids of records for unique index and ids of link containers otherwise.
+     */
+    @Override
+    public void addReferences(LongCollection references) {
+        references.add(_prev);
+        references.add(_next);
+        for (int i = 0; i < _size; i++) {
+            references.add(_links[i]);
+        }
+    }
+    
     /**
      * Constructor is used only for read 
      */
@@ -28,6 +28,7 @@ import com.vyhodb.storage.rm.SystemReader;
 import com.vyhodb.storage.rm.SystemWriter;
 import com.vyhodb.storage.space.Container;
 import com.vyhodb.storage.space.SpaceInternal;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 
 import java.util.ArrayList;
 
@@ -59,6 +60,13 @@ public final class IndexLinks extends Container {
         return CONTAINER_TYPE_INDEX_LINKS;
     }
     
+    @Override
+    public void addReferences(LongCollection references) {
+        for (Long link : _links) {
+            references.add(link.longValue());
+        }
+    }
+    
     public void addLink(SpaceInternal space, long link)
     {
         if (_links.size() == MAX_LINKS_COUNT) {
@@ -29,6 +29,7 @@ import com.vyhodb.storage.rm.SystemWriter;
 import com.vyhodb.storage.space.Container;
 import com.vyhodb.storage.space.SpaceInternal;
 import com.vyhodb.storage.space.index.iterator.TupleIterator;
+import it.unimi.dsi.fastutil.longs.LongCollection;
 
 import static com.vyhodb.utils.Utils.compare;
 
@@ -85,6 +86,13 @@ public final class IndexNode extends Container implements Node {
         return CONTAINER_TYPE_INDEX_NODE;
     }
     
+    @Override
+    public void addReferences(LongCollection references) {
+        for (int i = 0; i <= _size; i++) {
+            references.add(_children[i]);
+        }
+    }
+    
     
     @SuppressWarnings("rawtypes")
     @Override
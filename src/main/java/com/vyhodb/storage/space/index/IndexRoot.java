@@ -60,6 +60,17 @@ public final class IndexRoot implements SystemSerializable {
         _descriptor = indexDescriptor;
     }
     
+    /**
+     * Copy constructor, binds read index root to another space.
+     */
+    public IndexRoot(SpaceInternal space, IndexRoot source) {
+        _space = space;
+        _descriptor = source._descriptor;
+        _mod = source._mod;
+        _height = source._height;
+        _rootId = source._rootId;
+    }
+    
     @Override
     public void read(SystemReader reader) {
         _mod = reader.getInt();
@@ -189,6 +200,11 @@ public final class IndexRoot implements SystemSerializable {
         return _descriptor;
     }
     
+    public long getRootId()
+    {
+        return _rootId;
+    }
+    
     private Node getRoot() {
         Node root = (Node) _space.get(_rootId);
         if (root == null) {
@@ -77,7 +77,7 @@ public final class IndexIterator implements Iterator<Record> {
             _space.throwTRE(RecordContainer.PARENT_RECORD_DELETED);
         }
         
-        IndexRoot root = parent.indexes.get(_indexName);
+        IndexRoot root = parent.indexes().get(_indexName);
         if (root == null || root._mod != _mod)
         {
             _space.throwTRE("Index concurrent modification.");
@@ -0,0 +1,139 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage.space.modify;
+
+import com.vyhodb.server.Server;
+import com.vyhodb.storage.space.Container;
+import com.vyhodb.storage.space.SpaceInternal;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+/**
+ * Online space compaction.
+ * <p>
+ * Record ids are descriptor offsets and can't be changed, so only container
+ * blocks are moved. Compactor walks containers reachable from root record and 
+ * dictionary through all links (children, parents, indexes and index nodes) 
+ * and moves their blocks into lower free blocks of the same slot type, a batch 
+ * of containers per modify transaction. Afterwards adjacent free blocks are merged, 
+ * free blocks left at the end of space are cut off and data file is truncated, 
+ * so backups shrink too. Blocks of records, which have no links to reachable 
+ * ones, aren't moved.
+ *
+ * @author Igor Vykhodtcev
+ */
+public final class Compactor {
+    
+    public static final int BATCH_SIZE = 1000;
+    
+    private final Server _server;
+    private final LongOpenHashSet _visited = new LongOpenHashSet();
+    private final LongArrayFIFOQueue _queue = new LongArrayFIFOQueue();
+    private final LongArrayList _references = new LongArrayList();
+    
+    private long _relocated = 0;
+    private long _reclaimed = 0;
+    
+    public Compactor(Server server)
+    {
+        _server = server;
+    }
+    
+    /**
+     * Runs compaction.
+     * 
+     * @return number of bytes cut off the end of space
+     */
+    public long compact()
+    {
+        _visited.add(0L);
+        _queue.enqueue(0L);
+        
+        while (!_queue.isEmpty())
+        {
+            TrxSpaceModify space = (TrxSpaceModify) _server.startModifyTrx();
+            try
+            {
+                enqueue(space.getDictionaryId());
+                for (int i = 0; i < BATCH_SIZE && !_queue.isEmpty(); i++) {
+                    relocate(space, _queue.dequeueLong());
+                }
+                space.commit();
+            }
+            finally
+            {
+                space.rollback();
+            }
+        }
+        
+        TrxSpaceModify space = (TrxSpaceModify) _server.startModifyTrx();
+        try
+        {
+            _reclaimed = space.trimSpace();
+            space.commit();
+        }
+        finally
+        {
+            space.rollback();
+        }
+        
+        return _reclaimed;
+    }
+    
+    public long getRelocated()
+    {
+        return _relocated;
+    }
+    
+    public long getReclaimed()
+    {
+        return _reclaimed;
+    }
+    
+    private void relocate(TrxSpaceModify space, long id)
+    {
+        Container container = space.get(id);
+        if (container == null) 
+            return;     // Removed since it had been queued
+        
+        _references.clear();
+        container.addReferences(_references);
+        for (int i = 0; i < _references.size(); i++) {
+            enqueue(_references.getLong(i));
+        }
+        
+        if (space.relocate(id)) {
+            _relocated++;
+        }
+    }
+    
+    private void enqueue(long id)
+    {
+        if (id != SpaceInternal.NULL && _visited.add(id)) {
+            _queue.enqueue(id);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import com.vyhodb.server.TransactionRolledbackException;
 import com.vyhodb.server.TrxSpace;
 import com.vyhodb.space.Record;
 import com.vyhodb.storage.StorageConfig;
+import com.vyhodb.storage.TrxDictionary;
 import com.vyhodb.storage.rm.ExpandableReaderWriter;
 import com.vyhodb.storage.rm.RecordManager;
 import com.vyhodb.storage.rm.SystemReader;
@@ -36,71 +37,117 @@ import com.vyhodb.storage.rm.SystemWriter;
 import com.vyhodb.storage.space.Container;
 import com.vyhodb.storage.space.RecordContainer;
 import com.vyhodb.storage.space.SpaceInternal;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 public final class TrxSpaceModify implements TrxSpace, SpaceInternal {
 
+    private static final Comparator<Container> ID_ORDER = new Comparator<Container>() {
+        @Override
+        public int compare(Container c1, Container c2) {
+            return Long.compare(c1.getId(), c2.getId());
+        }
+    };
+    
     private final int _maxCacheSize;
+    private final int _evictCount;
     private final transient RecordManager _rm;
+    private final transient TrxDictionary _dictionary;
     
     private boolean _isActive = true;
-    private transient Long2ObjectOpenHashMap<Container> _cache;
+    private transient Long2ObjectLinkedOpenHashMap<Container> _cache;
         
-    public TrxSpaceModify(RecordManager rm, StorageConfig config)
+    public TrxSpaceModify(RecordManager rm, TrxDictionary dictionary, StorageConfig config)
     {
         _rm = rm;
+        _dictionary = dictionary;
         _maxCacheSize = config.getRecordModifyCacheSize();
-        _cache = new Long2ObjectOpenHashMap<>(_maxCacheSize);
+        _evictCount = Math.max(1, _maxCacheSize / 4);
+        _cache = new Long2ObjectLinkedOpenHashMap<>(_maxCacheSize);
     }
     
-    private void flushCache(boolean isCommit)
+    /**
+     * Writes all dirty containers on commit.
+     */
+    private void flushCache()
     {
-        SystemWriter writer;
-        LinkedList<Container> lockedContainers = new LinkedList<>();
-                
-        for (Container container : _cache.values()) {
+        // Containers are written in creation order, so that new blocks 
+        // follow each other in the same order as their records were linked
+        long[] ids = _cache.keySet().toLongArray();
+        Arrays.sort(ids);
+        
+        for (long id : ids) {
+            Container container = _cache.get(id);
             if (container.isLocked()) {
-                if (isCommit) {
-                    throwTRE("Record container is locked during commit. Container:" + container + ", id:" + container.getId());
-                }
-                
-                lockedContainers.add(container);
+                throwTRE("Record container is locked during commit. Container:" + container + ", id:" + container.getId());
             }
-            else
-            {
-                if (container.isDirty())
-                {
-                    writer = _rm.startUpdate();
-                    ((ExpandableReaderWriter)writer).setSpace(this);
-                    Container.writeContainer(writer, container);
-                    _rm.endUpdate(container.getId());
+            
+            if (container.isDirty()) {
+                writeContainer(container);
+            }
+            
+            container.setFreed();
+        }
+        
+        _cache = null;
+    }
+    
+    /**
+     * Evicts least recently used containers. Clean containers are evicted first, 
+     * dirty ones are written back only if there are not enough clean ones. 
+     * Locked containers are kept in cache.
+     */
+    private void evict()
+    {
+        int count = 0;
+        ArrayList<Container> dirtyContainers = new ArrayList<>();
+        
+        ObjectIterator<Container> iterator = _cache.values().iterator();
+        while (iterator.hasNext() && count < _evictCount) {
+            Container container = iterator.next();
+            if (container.isLocked())
+                continue;
+            
+            if (container.isDirty()) {
+                if (dirtyContainers.size() < _evictCount) {
+                    dirtyContainers.add(container);
                 }
-                
+            }
+            else {
+                iterator.remove();
                 container.setFreed();
+                count++;
             }
         }
         
-        // Creating new arrays is better than filling them.
-        // See Long2ObjectOpenHashMap source code for clear() method
-        if (isCommit)
-        {    
-            _cache = null;
-        }
-        else 
-        {
-            _cache = new Long2ObjectOpenHashMap<>(_maxCacheSize);
+        if (count < _evictCount && ! dirtyContainers.isEmpty()) {
+            List<Container> victims = dirtyContainers.subList(0, Math.min(dirtyContainers.size(), _evictCount - count));
+            Collections.sort(victims, ID_ORDER);
             
-            for (Container container : lockedContainers) {
-                _cache.put(container.getId(), container);
+            for (Container container : victims) {
+                writeContainer(container);
+                _cache.remove(container.getId());
+                container.setFreed();
             }
         }
     }
     
+    private void writeContainer(Container container) {
+        SystemWriter writer = _rm.startUpdate();
+        ((ExpandableReaderWriter)writer).setSpace(this);
+        Container.writeContainer(writer, container);
+        _rm.endUpdate(container.getId(), container.getLocalityHint());
+    }
+    
     private void putInCache(Container container) {
         if (_cache.size() >= _maxCacheSize) {
-            flushCache(false);
+            evict();
         }
         _cache.put(container.getId(), container);
     }
@@ -140,8 +187,10 @@ public final class TrxSpaceModify implements TrxSpace, SpaceInternal {
         
         try
         {    
-            flushCache(true);
+            flushCache();
+            _dictionary.flush(_rm);
             _rm.commit();
+            _dictionary.committed();
             
             _isActive = false;
         }
@@ -175,7 +224,7 @@ public final class TrxSpaceModify implements TrxSpace, SpaceInternal {
     public Container get(long id) {
         if (!_isActive) throw new NotActiveTransactionException();
         
-        Container container = _cache.get(id);
+        Container container = _cache.getAndMoveToLast(id);
         if (container == null)
         {
             try
@@ -259,6 +308,64 @@ public final class TrxSpaceModify implements TrxSpace, SpaceInternal {
         }
     }
 
+    /**
+     * Moves container's block closer to the beginning of space (used by compaction).
+     * 
+     * @return true if block has been moved
+     */
+    public boolean relocate(long id) {
+        if (!_isActive) throw new NotActiveTransactionException();
+        
+        try
+        {
+            return _rm.relocate(id);
+        }
+        catch(TransactionRolledbackException tre)
+        {
+            rollback();
+            throw tre;
+        }
+        catch(Throwable th)
+        {
+            rollback();
+            throw new TransactionRolledbackException(th);
+        }
+    }
+    
+    /**
+     * Returns id of dictionary container or {@linkplain SpaceInternal#NULL} (used by compaction).
+     */
+    public long getDictionaryId() {
+        if (!_isActive) throw new NotActiveTransactionException();
+        
+        return _rm.getDictionaryId();
+    }
+    
+    /**
+     * Merges free blocks, cuts them off the end of space and truncates 
+     * data file on commit (used by compaction).
+     * 
+     * @return number of reclaimed bytes
+     */
+    public long trimSpace() {
+        if (!_isActive) throw new NotActiveTransactionException();
+        
+        try
+        {
+            return _rm.trimSpace();
+        }
+        catch(TransactionRolledbackException tre)
+        {
+            rollback();
+            throw tre;
+        }
+        catch(Throwable th)
+        {
+            rollback();
+            throw new TransactionRolledbackException(th);
+        }
+    }
+
     @Override
     public void throwTRE(String message) {
         rollback();
@@ -34,14 +34,23 @@ import com.vyhodb.storage.rm.SystemReader;
 import com.vyhodb.storage.space.Container;
 import com.vyhodb.storage.space.RecordContainer;
 import com.vyhodb.storage.space.SpaceInternal;
+import com.vyhodb.storage.space.readcache.RecordCache;
 
 public final class TrxSpaceRead implements TrxSpace, SpaceInternal {
 
     private boolean _isActive = true;
     private final transient RecordManager _rm;
+    private final transient RecordCache _recordCache;
+    private final long _snapshot;
     
-    public TrxSpaceRead(RecordManager rm) {
+    /**
+     * @param recordCache shared record cache or null
+     * @param snapshot snapshot of page transaction
+     */
+    public TrxSpaceRead(RecordManager rm, RecordCache recordCache, long snapshot) {
         _rm = rm;
+        _recordCache = recordCache;
+        _snapshot = snapshot;
     }
     
     @Override
@@ -80,6 +89,12 @@ public final class TrxSpaceRead implements TrxSpace, SpaceInternal {
         Container container;
         try
         {
+            if (_recordCache != null) {
+                final RecordContainer cached = _recordCache.get(id, _snapshot);
+                if (cached != null)
+                    return cached.bind(this);
+            }
+            
             final SystemReader reader = _rm.readRecord(id);
                         
             // Record with specified id doesn't exists
@@ -94,6 +109,10 @@ public final class TrxSpaceRead implements TrxSpace, SpaceInternal {
             // Record exists but it's type is unknown.
             if (container == null)
                 return null;
+            
+            if (_recordCache != null && container.getType() == Container.CONTAINER_TYPE_RECORD) {
+                _recordCache.put((RecordContainer) container, _snapshot, _rm.getRecordPages(id));
+            }
         }
         catch(TransactionRolledbackException tre)
         {
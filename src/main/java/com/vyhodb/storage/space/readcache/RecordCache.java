@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage.space.readcache;
+
+import com.vyhodb.storage.data.PageVersions;
+import com.vyhodb.storage.space.RecordContainer;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-wide cache of record containers, shared by read transactions.
+ * <p>
+ * Entry keeps serialized record only, so every read transaction gets own view, 
+ * which decodes fields and links on first access.
+ * <p>
+ * Every entry is tagged by snapshot it has been read at and keeps pages of 
+ * record descriptor and block. Entry is used by read transaction only if it has 
+ * been decoded at the same or older snapshot and none of its pages has been 
+ * modified since, so commits (including replicated ones) invalidate entries 
+ * through {@linkplain PageVersions} without any explicit notification.
+ * <p>
+ * Cache is split into stripes with own monitor, each stripe evicts least 
+ * recently used entries.
+ * 
+ * @author Igor Vykhodtcev
+ */
+public final class RecordCache {
+
+    private static final int STRIPES = 16;
+    
+    private final PageVersions _pageVersions;
+    private final Stripe[] _stripes;
+    
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    
+    public RecordCache(PageVersions pageVersions, int size) {
+        if (size < 1) throw new IllegalArgumentException("Illegal record cache size: " + size);
+        
+        _pageVersions = pageVersions;
+        _stripes = new Stripe[STRIPES];
+        
+        final int stripeSize = Math.max(1, size / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            _stripes[i] = new Stripe(stripeSize);
+        }
+    }
+    
+    /**
+     * Returns container, which isn't bound to any space, or null if there is no 
+     * entry valid for specified snapshot. Returned container must be bound 
+     * before use, see {@linkplain RecordContainer#bind(com.vyhodb.storage.space.SpaceInternal)}.
+     */
+    public RecordContainer get(long recordId, long snapshot) {
+        final Entry entry = stripe(recordId).get(recordId);
+        
+        if (entry != null && entry.version <= snapshot && isUnchanged(entry.pages, entry.version)) {
+            _hits.increment();
+            return entry.container;
+        }
+        
+        _misses.increment();
+        return null;
+    }
+    
+    /**
+     * Caches view of container read at specified snapshot. Container must not 
+     * be decoded yet. Valid entry isn't replaced: it's the same record state, 
+     * available for wider range of snapshots.
+     * 
+     * @param pages see {@linkplain com.vyhodb.storage.rm.RecordManager#getRecordPages(long)}
+     */
+    public void put(RecordContainer container, long snapshot, long[] pages) {
+        // Record has been already modified by newer transaction
+        if (!isUnchanged(pages, snapshot)) 
+            return;
+        
+        stripe(container.getId()).put(container, snapshot, pages);
+    }
+    
+    public long getHits() {
+        return _hits.sum();
+    }
+    
+    public long getMisses() {
+        return _misses.sum();
+    }
+    
+    private boolean isUnchanged(long[] pages, long version) {
+        return _pageVersions.isUnchanged(pages[0], pages[1], version) && _pageVersions.isUnchanged(pages[2], pages[3], version);
+    }
+    
+    private Stripe stripe(long recordId) {
+        return _stripes[(int) ((HashCommon.mix(recordId) & Long.MAX_VALUE) % STRIPES)];
+    }
+    
+    private static final class Entry {
+        private final RecordContainer container;
+        private final long version;
+        private final long[] pages;
+        
+        Entry(RecordContainer container, long version, long[] pages) {
+            this.container = container;
+            this.version = version;
+            this.pages = pages;
+        }
+    }
+    
+    private final class Stripe {
+        private final int _size;
+        private final Long2ObjectLinkedOpenHashMap<Entry> _entries;
+        
+        Stripe(int size) {
+            _size = size;
+            _entries = new Long2ObjectLinkedOpenHashMap<>(size + 1);
+        }
+        
+        synchronized Entry get(long recordId) {
+            return _entries.getAndMoveToLast(recordId);
+        }
+        
+        synchronized void put(RecordContainer container, long snapshot, long[] pages) {
+            final long recordId = container.getId();
+            final Entry existing = _entries.get(recordId);
+            
+            if (existing != null && isUnchanged(existing.pages, existing.version))
+                return;
+            
+            _entries.putAndMoveToLast(recordId, new Entry(container.bind(null), snapshot, pages));
+            if (_entries.size() > _size) {
+                _entries.removeFirst();
+            }
+        }
+    }
+}
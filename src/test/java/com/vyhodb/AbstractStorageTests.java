@@ -61,6 +61,47 @@ public class AbstractStorageTests {
         return props;
     }
     
+    /**
+     * @param nameValues property names followed by their values
+     */
+    public static Properties properties(String... nameValues) {
+        Properties props = new Properties();
+        for (int i = 0; i < nameValues.length; i += 2) {
+            props.setProperty(nameValues[i], nameValues[i + 1]);
+        }
+        return props;
+    }
+    
+    /**
+     * Recreates storage files.
+     * 
+     * @return default properties with [overrides] put over them
+     */
+    public static Properties newStorage(Properties overrides) throws IOException {
+        Admin admin = Admin.getInstance();
+        admin.removeStorageFiles(LOG_FILENAME, DATA_FILENAME);
+        admin.newStorage(LOG_FILENAME, DATA_FILENAME);
+        
+        Properties props = generateDefaultProperties(LOG_FILENAME, DATA_FILENAME);
+        props.putAll(overrides);
+        return props;
+    }
+    
+    /**
+     * Recreates storage files and starts server.
+     */
+    public static Server startStorage(Properties overrides) throws IOException {
+        return Server.start(newStorage(overrides));
+    }
+    
+    public static byte[] largeValue(int seed) {
+        byte[] value = new byte[20000];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte) (i * 31 + seed);
+        }
+        return value;
+    }
+    
     @AfterClass
     public static void closeStorage() throws IOException {
         if (_storage != null)
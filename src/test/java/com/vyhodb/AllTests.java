@@ -48,8 +48,11 @@ import com.vyhodb.rsi.RsiTests;
 import com.vyhodb.space.RecordTests;
 import com.vyhodb.space.index.IndexTestSuite;
 import com.vyhodb.space.links.LinksTests;
+import com.vyhodb.storage.CacheTests;
 import com.vyhodb.storage.Data2LogMappingTests;
+import com.vyhodb.storage.LogTests;
 import com.vyhodb.storage.RecoveryTests;
+import com.vyhodb.storage.SpaceTests;
 import com.vyhodb.storage.StorageTests;
 
 @RunWith(Suite.class)
@@ -64,6 +67,9 @@ import com.vyhodb.storage.StorageTests;
     FunctionTestSuite.class,
     RecoveryTests.class,
     StorageTests.class,
+    CacheTests.class,
+    LogTests.class,
+    SpaceTests.class,
     Data2LogMappingTests.class})
 public class AllTests {
 
@@ -71,6 +77,7 @@ public class AllTests {
     private final static String DEFAULT_TESTS_DIR = ".";
     
     private final static Path unitTestsPath;
+    private final static Path PROC_MAPS = Paths.get("/proc/self/maps");
     
     static {
         String strUnitTestsPath = System.getProperty(PROPERTY_TESTS_DIR, DEFAULT_TESTS_DIR);
@@ -99,6 +106,23 @@ public class AllTests {
         return unitTestsPath.resolve(filename).toString();
     }
     
+    /**
+     * Returns true if some file, which path starts with specified one, is mapped 
+     * into process memory. Works on Linux only (see {@linkplain #isMappingVisible()}).
+     */
+    public static boolean isMapped(String path) throws IOException {
+        final String absolutePath = Paths.get(path).toAbsolutePath().normalize().toString();
+        for (String line : Files.readAllLines(PROC_MAPS)) {
+            if (line.contains(absolutePath)) 
+                return true;
+        }
+        return false;
+    }
+    
+    public static boolean isMappingVisible() {
+        return Files.isReadable(PROC_MAPS);
+    }
+    
     public static String getURI(String filename) {
         return unitTestsPath.resolve(filename).toUri().toString();
     }
@@ -26,20 +26,48 @@ package com.vyhodb.admin;
 
 import static org.junit.Assert.*;
 import static com.vyhodb.AllTests.*;
+import static com.vyhodb.AbstractStorageTests.largeValue;
 import static com.vyhodb.admin.AdminTestDataHelper.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 
 import org.junit.Test;
 
 import com.vyhodb.admin.Admin;
 import com.vyhodb.admin.LogInfo;
 import com.vyhodb.admin.server.AdminClient;
+import com.vyhodb.admin.server.Request;
+import com.vyhodb.admin.server.Response;
 import com.vyhodb.server.Server;
 import com.vyhodb.server.TransactionRolledbackException;
+import com.vyhodb.server.TrxSpace;
+import com.vyhodb.space.CriterionFactory;
+import com.vyhodb.space.IndexDescriptor;
+import com.vyhodb.space.IndexedField;
+import com.vyhodb.space.Nullable;
+import com.vyhodb.space.Record;
+import com.vyhodb.space.Unique;
+import com.vyhodb.storage.pagefile.DestinationDeflater;
+import com.vyhodb.storage.pagefile.IOUtils;
+import com.vyhodb.storage.pagefile.PageHeader;
+import com.vyhodb.storage.pagefile.SourceInflater;
 
 public class AdminTests {
 
@@ -133,4 +161,308 @@ public class AdminTests {
             storage.close();
         }
     }
+    
+    @Test
+    public void test_Remote_Compact() throws IOException {
+        Admin admin = Admin.getInstance(localAddress);
+        
+        admin.removeStorageFiles(MASTER_LOG_FILENAME, MASTER_DATA_FILENAME);
+        admin.newStorage(MASTER_LOG_FILENAME, MASTER_DATA_FILENAME);
+        
+        Server storage = Server.start(newMasterProperties());
+        try {
+            // Records which will be removed go first
+            TrxSpace space = storage.startModifyTrx();
+            Record root = space.getRecord(0L);
+            for (int i = 0; i < 50; i++) {
+                space.newRecord().setParent("removed", root);
+            }
+            space.commit();
+            
+            space = storage.startModifyTrx();
+            root = space.getRecord(0L);
+            for (int i = 0; i < 50; i++) {
+                Record record = space.newRecord();
+                record.setField("value", i);
+                record.setParent("kept", root);
+            }
+            space.commit();
+            
+            space = storage.startModifyTrx();
+            ArrayList<Record> removed = new ArrayList<>();
+            for (Record record : space.getRecord(0L).getChildren("removed")) {
+                removed.add(record);
+            }
+            for (Record record : removed) {
+                record.delete();
+            }
+            space.commit();
+            
+            long reclaimed = admin.remoteCompact(masterAddress);
+            assertTrue("Nothing has been reclaimed", reclaimed > 0);
+            assertEquals("Second compaction has nothing to reclaim", 0L, admin.remoteCompact(masterAddress));
+            
+            // Appends into reclaimed space
+            space = storage.startModifyTrx();
+            root = space.getRecord(0L);
+            for (int i = 50; i < 100; i++) {
+                Record record = space.newRecord();
+                record.setField("value", i);
+                record.setParent("kept", root);
+            }
+            space.commit();
+            
+            space = storage.startReadTrx();
+            HashSet<Integer> values = new HashSet<>();
+            for (Record record : space.getRecord(0L).getChildren("kept")) {
+                values.add(record.<Integer>getField("value"));
+            }
+            assertEquals(0, space.getRecord(0L).getChildrenCount("removed"));
+            space.rollback();
+            
+            assertEquals(100, values.size());
+            for (int i = 0; i < 100; i++) {
+                assertTrue("Lost value " + i, values.contains(i));
+            }
+        }
+        finally {
+            storage.close();
+        }
+    }
+    
+    @Test
+    public void test_Remote_Compact_Truncates_Data() throws IOException {
+        Admin admin = Admin.getInstance(localAddress);
+        
+        admin.removeStorageFiles(MASTER_LOG_FILENAME, MASTER_DATA_FILENAME);
+        admin.newStorage(MASTER_LOG_FILENAME, MASTER_DATA_FILENAME);
+        
+        Server storage = Server.start(newMasterProperties());
+        try {
+            // Descriptors and blocks of records which will be removed go first
+            TrxSpace space = storage.startModifyTrx();
+            Record root = space.getRecord(0L);
+            root.createIndex(new IndexDescriptor("keptIndex", "kept", Unique.UNIQUE, new IndexedField("value", Integer.class, Nullable.NOT_NULL)));
+            for (int i = 0; i < 30; i++) {
+                Record record = space.newRecord();
+                record.setField("Large", largeValue(i));
+                record.setParent("removed", root);
+            }
+            for (int i = 0; i < 30; i++) {
+                Record record = space.newRecord();
+                record.setField("value", i);
+                record.setParent("kept", root);
+            }
+            space.commit();
+            
+            // Outgrown blocks of kept records are appended at the end of space
+            space = storage.startModifyTrx();
+            for (Record record : space.getRecord(0L).getChildren("kept")) {
+                record.setField("Large", largeValue(record.<Integer>getField("value")));
+            }
+            space.commit();
+            
+            space = storage.startModifyTrx();
+            ArrayList<Record> removed = new ArrayList<>();
+            for (Record record : space.getRecord(0L).getChildren("removed")) {
+                removed.add(record);
+            }
+            for (Record record : removed) {
+                record.delete();
+            }
+            space.commit();
+            
+            long before = admin.remoteGetLogInfo(masterAddress).getDataLength();
+            assertTrue("Nothing has been reclaimed", admin.remoteCompact(masterAddress) > 0);
+            
+            long after = admin.remoteGetLogInfo(masterAddress).getDataLength();
+            assertTrue("Data length hasn't been reduced. Before:" + before + ", after:" + after, after < before * 2 / 3);
+            assertEquals("Data file hasn't been truncated", (after + 1) * PageHeader.PAGE_SIZE, Files.size(Paths.get(MASTER_DATA_FILENAME)));
+        }
+        finally {
+            storage.close();
+        }
+        
+        // Reopened storage (and its index) sees all kept records
+        storage = Server.start(newMasterProperties());
+        try {
+            TrxSpace space = storage.startReadTrx();
+            Record root = space.getRecord(0L);
+            assertEquals(0, root.getChildrenCount("removed"));
+            for (int i = 0; i < 30; i++) {
+                Record record = root.searchChildren("keptIndex", CriterionFactory.equal(i)).iterator().next();
+                assertArrayEquals(largeValue(i), record.<byte[]>getField("Large"));
+            }
+            space.rollback();
+        }
+        finally {
+            storage.close();
+        }
+    }
+    
+    @Test
+    public void test_Protocol_Earlier_Client() throws IOException {
+        Admin admin = Admin.getInstance(localAddress);
+        
+        admin.removeStorageFiles(MASTER_LOG_FILENAME, MASTER_DATA_FILENAME);
+        admin.newStorage(MASTER_LOG_FILENAME, MASTER_DATA_FILENAME);
+        
+        Server storage = Server.start(newMasterProperties());
+        try (Socket socket = new Socket()) {
+            createTestData(storage, 10);
+            
+            socket.setSoTimeout(10000);
+            socket.connect(masterAddress);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            
+            // Response has layout of earlier versions, pages aren't compressed
+            writeEarlierRequest(out, Request.COMMAND_READ_DATA);
+            assertEquals(Response.PREAMBULA, in.readInt());
+            assertEquals(Response.RESULT_OK, in.readInt());
+            assertEquals(Response.PROTOCOL_VERSION, in.readShort());
+            assertEquals(0, in.readShort());
+            in.skipBytes(12 + 24);
+            long dataLength = in.readLong();
+            assertTrue(dataLength > 0);
+            in.skipBytes(1 + 16 + 1 + 2);
+            
+            byte[] page = new byte[PageHeader.PAGE_SIZE];
+            for (long i = 0; i < dataLength; i++) {
+                in.readFully(page);
+            }
+            
+            // Stream is still in sync
+            writeEarlierRequest(out, Request.COMMAND_PING);
+            assertEquals(Response.PREAMBULA, in.readInt());
+            assertEquals(Response.RESULT_OK, in.readInt());
+            in.skipBytes(Response.SIZE - 8);
+            
+            writeEarlierRequest(out, Request.COMMAND_CLOSE);
+        }
+        finally {
+            storage.close();
+        }
+    }
+    
+    @Test
+    public void test_Protocol_Earlier_Server() throws Exception {
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", 0));
+        
+        final AtomicInteger requestFlags = new AtomicInteger(-1);
+        final byte[] pattern = new byte[PageHeader.PAGE_SIZE];
+        Arrays.fill(pattern, (byte) 7);
+        
+        // Earlier server ignores compression flag and sends pages as is
+        Thread earlierServer = new Thread() {
+            @Override
+            public void run() {
+                try (SocketChannel sc = server.accept()) {
+                    ByteBuffer buffer = ByteBuffer.allocate(Response.SIZE + PageHeader.PAGE_SIZE);
+                    buffer.limit(Request.SIZE);
+                    IOUtils.readNIO(sc, buffer);
+                    requestFlags.set(buffer.getShort(34));
+                    
+                    buffer.clear();
+                    buffer.putInt(Response.PREAMBULA);
+                    buffer.putInt(Response.RESULT_OK);
+                    buffer.position(40);
+                    buffer.putLong(5L);
+                    buffer.position(Response.SIZE);
+                    buffer.put(pattern);
+                    buffer.flip();
+                    IOUtils.writeNIO(sc, buffer);
+                    
+                    buffer.clear();
+                    buffer.limit(Request.SIZE);
+                    IOUtils.readNIO(sc, buffer);
+                }
+                catch(IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        };
+        earlierServer.start();
+        
+        try (AdminClient client = new AdminClient((InetSocketAddress) server.getLocalAddress(), localAddress, true)) {
+            assertEquals(5L, client.syncLog(4L));
+            
+            ByteBuffer buffer = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+            client.read(buffer, 0, 1);
+            assertArrayEquals(pattern, buffer.array());
+        }
+        finally {
+            earlierServer.join(10000);
+            server.close();
+        }
+        
+        assertEquals(Request.FLAG_COMPRESSED, requestFlags.get());
+    }
+    
+    @Test
+    public void test_Compressed_Frames() throws IOException {
+        // Large write is split into several frames
+        final int count = 3000;
+        ByteBuffer pages = ByteBuffer.allocate(count * PageHeader.PAGE_SIZE);
+        for (int i = 0; i < pages.capacity(); i++) {
+            pages.put(i, (byte) (i * 31 + i / 7));
+        }
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DestinationDeflater deflater = new DestinationDeflater(Channels.newChannel(out))) {
+            deflater.write(pages, 0, count);
+        }
+        
+        ByteBuffer read = ByteBuffer.allocate(count * PageHeader.PAGE_SIZE);
+        try (SourceInflater inflater = new SourceInflater(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())))) {
+            inflater.read(read, 0, count);
+        }
+        assertArrayEquals(pages.array(), read.array());
+        
+        // Header beyond sender's max frame is rejected before allocation
+        assertCorruptedFrame(frame(1, Integer.MAX_VALUE, new byte[0]));
+        assertCorruptedFrame(frame(Integer.MAX_VALUE >> PageHeader.PAGE_SIZE_MULTIPLICATOR, 16, new byte[16]));
+        
+        // Frame compressed with preset dictionary
+        Deflater deflater = new Deflater();
+        deflater.setDictionary(new byte[] {1, 2, 3});
+        deflater.setInput(new byte[PageHeader.PAGE_SIZE]);
+        deflater.finish();
+        byte[] compressed = new byte[PageHeader.PAGE_SIZE];
+        int length = deflater.deflate(compressed);
+        deflater.end();
+        assertCorruptedFrame(frame(1, length, Arrays.copyOf(compressed, length)));
+        
+        // Empty frame can't be inflated
+        assertCorruptedFrame(frame(1, 0, new byte[0]));
+    }
+    
+    private static byte[] frame(int pageCount, int length, byte[] compressed) {
+        ByteBuffer frame = ByteBuffer.allocate(8 + compressed.length);
+        frame.putInt(pageCount);
+        frame.putInt(length);
+        frame.put(compressed);
+        return frame.array();
+    }
+    
+    private static void assertCorruptedFrame(byte[] frame) {
+        try (SourceInflater inflater = new SourceInflater(Channels.newChannel(new ByteArrayInputStream(frame)))) {
+            inflater.read(ByteBuffer.allocate(PageHeader.PAGE_SIZE), 0, 1);
+            fail("Corrupted frame has been read");
+        }
+        catch(IOException ex) {
+            // Expected
+        }
+    }
+    
+    /**
+     * Writes request of 68 bytes with zero fields, as earlier versions do.
+     */
+    private static void writeEarlierRequest(DataOutputStream out, int command) throws IOException {
+        out.writeInt(Request.PREAMBULA);
+        out.writeInt(command);
+        out.write(new byte[Request.SIZE - 8]);
+        out.flush();
+    }
 }
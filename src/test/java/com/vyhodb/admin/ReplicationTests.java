@@ -50,6 +50,15 @@ public class ReplicationTests {
     
     @Test
     public void test_Replication_Runtime() throws IOException, InterruptedException {
+        replication_Runtime(false);
+    }
+    
+    @Test
+    public void test_Replication_Runtime_Compressed() throws IOException, InterruptedException {
+        replication_Runtime(true);
+    }
+    
+    private void replication_Runtime(boolean compression) throws IOException, InterruptedException {
         Admin admin = Admin.getInstance();
         
         Files.deleteIfExists(Paths.get(BACKUP_FILENAME));
@@ -73,7 +82,9 @@ public class ReplicationTests {
             createTestData(master, 50);
             
             // Starts SLAVE and check its data
-            slave = Server.start(getRuntimeSlaveProps());
+            Properties slaveProps = getRuntimeSlaveProps();
+            slaveProps.setProperty("slave.compression", Boolean.toString(compression));
+            slave = Server.start(slaveProps);
             Thread.sleep(RUNTIME_REPLICATION_WAIT_TIME); // Wait until replication completed.
             assertEquals("Slave has incorrect data after replication", 100, getCount(slave));
             
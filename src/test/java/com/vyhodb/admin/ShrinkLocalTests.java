@@ -36,8 +36,13 @@ import static com.vyhodb.AllTests.sleep;
 import static com.vyhodb.admin.AdminTestDataHelper.createTestData;
 import static com.vyhodb.admin.AdminTestDataHelper.getCount;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import org.junit.Test;
 
@@ -66,6 +71,16 @@ public class ShrinkLocalTests {
         shrink_WithData(false);
     }
     
+    @Test
+    public void test_Shrink_Local_Segmented() throws IOException {
+        shrink_Segmented(true);
+    }
+    
+    @Test
+    public void test_Shrink_Remote_Segmented() throws IOException {
+        shrink_Segmented(false);
+    }
+    
     @Test
     public void test_Shrink_Local_Master() throws IOException {
         shrink_Master(true);
@@ -156,6 +171,78 @@ public class ShrinkLocalTests {
         }
     }
     
+    /**
+     * Steps:
+     * - create storage with small log segments
+     * - open
+     * - add data in several transactions
+     * - check that log occupies several segments
+     * 
+     * - shrink
+     * - check that only last segment is left
+     * 
+     * - open
+     * - read and test data
+     * - add data
+     * - reopen, read and test data
+     */
+    private void shrink_Segmented(boolean isLocal) throws IOException {
+        Admin admin = Admin.getInstance();
+        admin.removeStorageFiles(MASTER_LOG_FILENAME, MASTER_DATA_FILENAME);
+        
+        System.setProperty("com.vyhodb.logSegmentSize", "4");
+        try {
+            admin.newStorage(MASTER_LOG_FILENAME, MASTER_DATA_FILENAME);
+        }
+        finally {
+            System.clearProperty("com.vyhodb.logSegmentSize");
+        }
+        
+        try(Server server = Server.start(newMasterProperties())) {
+            for (int i = 0; i < 10; i++) {
+                createTestData(server, 10);
+            }
+            
+            assertTrue(getSegmentCount() > 2);
+            
+            if (!isLocal) {
+                admin.remoteShrink(newMasterAdminAddress(), ConsoleShrinkListener.SINGLETON);
+                assertEquals(1, getSegmentCount());
+                assertEquals(100, getCount(server));
+            }
+        }
+        
+        if (isLocal) {
+            admin.shrink(MASTER_LOG_FILENAME, 16, ConsoleShrinkListener.SINGLETON);
+            assertEquals(1, getSegmentCount());
+        }
+        
+        try(Server server = Server.start(newMasterProperties())) {
+            assertEquals(100, getCount(server));
+            createTestData(server, 10);
+        }
+        
+        try(Server server = Server.start(newMasterProperties())) {
+            assertEquals(110, getCount(server));
+        }
+    }
+    
+    private static int getSegmentCount() throws IOException {
+        Path logPath = Paths.get(MASTER_LOG_FILENAME).toAbsolutePath();
+        String prefix = logPath.getFileName().toString() + ".";
+        
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(logPath.getParent())) {
+            for (Path path : stream) {
+                if (path.getFileName().toString().startsWith(prefix)) {
+                    count++;
+                }
+            }
+        }
+        
+        return count;
+    }
+    
     /**
      * Steps:
      * - create master
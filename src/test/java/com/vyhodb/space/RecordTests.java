@@ -27,6 +27,10 @@ package com.vyhodb.space;
 import static com.vyhodb.space.RecordCommons.*;
 import static org.junit.Assert.*;
 
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.TimeZone;
+
 import org.junit.Test;
 
 import com.vyhodb.AbstractStorageTests;
@@ -34,6 +38,12 @@ import com.vyhodb.server.NotActiveTransactionException;
 import com.vyhodb.server.TransactionRolledbackException;
 import com.vyhodb.server.TrxSpace;
 import com.vyhodb.space.Record;
+import com.vyhodb.storage.rm.ExpandableReaderWriter;
+import com.vyhodb.storage.space.Container;
+import com.vyhodb.storage.space.Dictionary;
+import com.vyhodb.storage.space.ListRoot;
+import com.vyhodb.storage.space.RecordContainer;
+import com.vyhodb.storage.space.SpaceInternal;
 
 public class RecordTests extends AbstractStorageTests {
 
@@ -367,4 +377,171 @@ public class RecordTests extends AbstractStorageTests {
         }
     }
     
+    @Test
+    public void testLazyDecoding() {
+        TrxSpace space = _storage.startModifyTrx();
+        Record root = space.getRecord(0);
+        root.createIndex(new IndexDescriptor("Ref.Name", "Ref", new IndexedField("Name", String.class, Nullable.NULL)));
+        
+        Record record = space.newRecord();
+        record.setField("Strings", new String[]{"a", "b"});
+        record.setField("Decimal", new BigDecimal("12.345"));
+        record.setField("Longs", new long[]{1L, 2L, 3L});
+        record.setField("Date", new Date(1000L));
+        record.setField("Zone", TimeZone.getTimeZone("UTC"));
+        record.setField("Name", "Lazy");
+        record.setParent("Ref", root);
+        long id = record.getId();
+        
+        Record child = space.newRecord();
+        child.setParent("Child", record);
+        long childId = child.getId();
+        space.commit();
+        
+        // Single field is decoded, preceding ones are skipped
+        space = _storage.startReadTrx();
+        record = space.getRecord(id);
+        assertEquals("Lazy", record.getField("Name"));
+        assertNull(record.getField("Absent"));
+        assertEquals(Long.valueOf(0L), record.getField("Ref"));
+        assertEquals(childId, record.getChildFirst("Child").getId());
+        assertEquals(new BigDecimal("12.345"), record.getField("Decimal"));
+        assertEquals(6, record.getFieldNames().size());
+        space.rollback();
+        
+        // Links are decoded before fields
+        space = _storage.startReadTrx();
+        record = space.getRecord(id);
+        assertEquals(0L, record.getParent("Ref").getId());
+        assertEquals(id, space.getRecord(0).searchChildrenFirst("Ref.Name", CriterionFactory.equal("Lazy")).getId());
+        assertArrayEquals(new long[]{1L, 2L, 3L}, (long[]) record.getField("Longs"));
+        assertTrue(record.toString().contains("Name=\"Lazy\""));
+        space.rollback();
+    }
+    
+    @Test
+    public void testLocalityHint() {
+        TrxSpace space = _storage.startModifyTrx();
+        Record parent = space.newRecord();
+        Record sibling = space.newRecord();
+        sibling.setParent("Link A", parent);
+        
+        Record record = space.newRecord();
+        for (String linkName : new String[]{"Link Z", "Link M", "Link B", "Link Y"}) {
+            record.setParent(linkName, parent);
+        }
+        
+        // Parent link with the least name is used: record is the first child of "Link B"
+        RecordContainer rc = (RecordContainer) ((SpaceInternal) space).get(record.getId());
+        assertEquals(parent.getId(), rc.getLocalityHint());
+        
+        // Previous sibling of "Link A"
+        record.setParent("Link A", parent);
+        assertEquals(sibling.getId(), rc.getLocalityHint());
+        space.rollback();
+    }
+    
+    @Test
+    public void testCompactEncoding() {
+        TrxSpace space = _storage.startModifyTrx();
+        Record record = space.newRecord();
+        record.setField("LongMin", Long.MIN_VALUE);
+        record.setField("LongMax", Long.MAX_VALUE);
+        record.setField("IntMin", Integer.MIN_VALUE);
+        record.setField("ShortMin", Short.MIN_VALUE);
+        record.setField("Latin1", "caf\u00e9");
+        record.setField("Unicode", "\u041f\u0440\u0438\u0432\u0435\u0442 \ud83d\ude00");
+        record.setField("Empty", "");
+        record.setField("\u0418\u043c\u044f", -1L);
+        long id = record.getId();
+        space.commit();
+        
+        space = _storage.startModifyTrx();
+        checkCompactEncoding(space.getRecord(id));
+        space.rollback();
+        
+        space = _storage.startReadTrx();
+        checkCompactEncoding(space.getRecord(id));
+        space.rollback();
+    }
+    
+    private static void checkCompactEncoding(Record record) {
+        assertEquals(Long.valueOf(Long.MIN_VALUE), record.getField("LongMin"));
+        assertEquals(Long.valueOf(Long.MAX_VALUE), record.getField("LongMax"));
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), record.getField("IntMin"));
+        assertEquals(Short.valueOf(Short.MIN_VALUE), record.getField("ShortMin"));
+        assertEquals("caf\u00e9", record.getField("Latin1"));
+        assertEquals("\u041f\u0440\u0438\u0432\u0435\u0442 \ud83d\ude00", record.getField("Unicode"));
+        assertEquals("", record.getField("Empty"));
+        assertEquals(Long.valueOf(-1L), record.getField("\u0418\u043c\u044f"));
+    }
+    
+    @Test
+    public void testLegacyRecordFormat() {
+        final Dictionary dictionary = new Dictionary() {
+            @Override
+            public int resolve(String fieldName) {
+                return "Code".equals(fieldName) ? 7 : CODE_NOT_EXIST;
+            }
+            
+            @Override
+            public String resolve(int fieldNameKey) {
+                return fieldNameKey == 7 ? "Code" : null;
+            }
+        };
+        
+        TrxSpace space = _storage.startReadTrx();
+        checkLegacyRecord((SpaceInternal) space, dictionary);
+        space.rollback();
+        
+        space = _storage.startModifyTrx();
+        checkLegacyRecord((SpaceInternal) space, dictionary);
+        space.rollback();
+    }
+    
+    private static void checkLegacyRecord(SpaceInternal space, Dictionary dictionary) {
+        // Legacy layout: fields, children, parents, indexes, inner index descriptors
+        ExpandableReaderWriter legacy = new ExpandableReaderWriter(64, 1024, dictionary);
+        legacy.setSpace(space);
+        legacy.putShort(Container.CONTAINER_TYPE_RECORD);
+        legacy.putShort((short) 3);
+        legacy.putStringConst("Name");
+        legacy.putValue("Legacy");
+        legacy.putStringConst("Code");
+        legacy.putValue(42L);
+        legacy.putStringConst("Date");
+        legacy.putValue(new Date(1000L));
+        legacy.putInt(1);
+        legacy.putStringConst("Items");
+        ListRoot listRoot = new ListRoot();
+        listRoot.first = 5;
+        listRoot.last = 6;
+        listRoot.size = 2;
+        listRoot.write(legacy);
+        legacy.putShort((short) 0);
+        legacy.putShort((short) 0);
+        legacy.putInt(0);
+        legacy.getBuffer().flip();
+        
+        RecordContainer rc = (RecordContainer) Container.readContainer(space, legacy, 1);
+        checkLegacyFields(rc);
+        
+        // Rewritten record has v2 format
+        ExpandableReaderWriter v2 = new ExpandableReaderWriter(64, 1024, dictionary);
+        v2.setSpace(space);
+        Container.writeContainer(v2, rc);
+        v2.getBuffer().flip();
+        assertEquals(Container.CONTAINER_TYPE_RECORD_V2, v2.getBuffer().getShort(0));
+        
+        rc = (RecordContainer) Container.readContainer(space, v2, 1);
+        checkLegacyFields(rc);
+    }
+    
+    private static void checkLegacyFields(RecordContainer rc) {
+        assertEquals(Long.valueOf(42L), rc.getField("Code"));
+        assertEquals("Legacy", rc.getField("Name"));
+        assertEquals(new Date(1000L), rc.getField("Date"));
+        assertEquals(2, rc.getChildrenCount("Items"));
+        assertEquals(3, rc.getFieldNames().size());
+    }
 }
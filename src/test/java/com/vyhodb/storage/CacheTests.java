@@ -0,0 +1,464 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage;
+
+import static org.junit.Assert.*;
+import static com.vyhodb.AbstractStorageTests.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.vyhodb.admin.Admin;
+import com.vyhodb.server.Config;
+import com.vyhodb.server.Server;
+import com.vyhodb.server.TrxSpace;
+import com.vyhodb.space.Record;
+import com.vyhodb.storage.cache.CacheImpl;
+import com.vyhodb.storage.data.CacheWarmup;
+import com.vyhodb.storage.data.DataFile;
+import com.vyhodb.storage.data.ModifyCacheImpl;
+import com.vyhodb.storage.data.PageVersions;
+import com.vyhodb.storage.data.SyncDataFile;
+import com.vyhodb.storage.pagefile.PageHeader;
+import com.vyhodb.storage.pagefile.Source;
+
+public class CacheTests {
+
+    @Test
+    public void test_Colliding_Pages_Stay_In_Cache() {
+        // 4 sets, 4 ways
+        CacheImpl cache = new CacheImpl(16, 2, 4);
+        
+        // All pages are mapped to the same set
+        for (long pageId = 1; pageId < 16; pageId += 4) {
+            cache.putPage(pageId, page(pageId), 0);
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+        for (long pageId = 1; pageId < 16; pageId += 4) {
+            assertTrue(cache.getPage(pageId, buffer, 0));
+            assertEquals(pageId, buffer.getLong(0));
+        }
+        
+        assertEquals(4, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+    }
+    
+    @Test
+    public void test_Size_Rounded_Up() {
+        // 10 pages with 4 ways are 3 sets, not 2
+        CacheImpl cache = new CacheImpl(10, 1, 4);
+        for (long pageId = 1; pageId <= 10; pageId++) {
+            cache.putPage(pageId, page(pageId), 0);
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+        for (long pageId = 1; pageId <= 10; pageId++) {
+            assertTrue(cache.getPage(pageId, buffer, 0));
+        }
+        assertEquals(0, cache.getEvictions());
+    }
+    
+    @Test
+    public void test_Clock_Eviction() {
+        CacheImpl cache = new CacheImpl(16, 2, 4);
+        ByteBuffer buffer = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+        
+        cache.putPage(1, page(1), 0);
+        cache.putPage(5, page(5), 0);
+        cache.putPage(9, page(9), 0);
+        cache.putPage(13, page(13), 0);
+        
+        // References all pages except 13
+        assertTrue(cache.getPage(1, buffer, 0));
+        assertTrue(cache.getPage(5, buffer, 0));
+        assertTrue(cache.getPage(9, buffer, 0));
+        
+        // Not referenced page is evicted
+        cache.putPage(17, page(17), 0);
+        assertEquals(1, cache.getEvictions());
+        assertFalse(cache.getPage(13, buffer, 0));
+        
+        for (long pageId : new long[]{1, 5, 9, 17}) {
+            assertTrue(cache.getPage(pageId, buffer, 0));
+            assertEquals(pageId, buffer.getLong(0));
+        }
+        
+        assertEquals(1, cache.getMisses());
+    }
+    
+    @Test
+    public void test_Update_And_Remove() {
+        CacheImpl cache = new CacheImpl(8, 1, 8);
+        ByteBuffer buffer = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+        
+        cache.putPage(3, page(3), 0);
+        ByteBuffer updated = page(3);
+        updated.putLong(8, 42L);
+        cache.putPage(3, updated, 0);
+        
+        assertTrue(cache.getPage(3, buffer, 0));
+        assertEquals(42L, buffer.getLong(8));
+        
+        PageHeader.setPageId(3, updated, 0);
+        cache.removePages(updated, 0, 1);
+        assertFalse(cache.getPage(3, buffer, 0));
+        assertEquals(0, cache.getEvictions());
+    }
+    
+    @Test
+    public void test_Get_Payload() {
+        CacheImpl cache = new CacheImpl(8, 1, 8);
+        cache.putPage(3, filledPage(3), 0);
+        
+        ByteBuffer dest = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+        dest.position(16);
+        assertTrue(cache.getPayload(3, 960, dest));
+        assertEquals(16 + PageHeader.PAGE_PAYLOAD - 960, dest.position());
+        assertEquals(3L, dest.getLong(16));
+        assertEquals(3L, dest.getLong(40));
+        assertEquals(0L, dest.getLong(dest.position()));
+        
+        // Destination smaller than payload
+        dest = ByteBuffer.allocate(10);
+        assertTrue(cache.getPayload(3, 0, dest));
+        assertEquals(10, dest.position());
+        
+        assertFalse(cache.getPayload(4, 0, ByteBuffer.allocate(10)));
+        assertEquals(1, cache.getMisses());
+    }
+    
+    @Test
+    public void test_Page_Ids() {
+        CacheImpl cache = new CacheImpl(16, 2, 4);
+        assertEquals(0, cache.getPageIds().length);
+        
+        for (long pageId : new long[]{0, 3, 7, 21}) {
+            cache.putPage(pageId, page(pageId), 0);
+        }
+        ByteBuffer removed = page(7);
+        PageHeader.setPageId(7, removed, 0);
+        cache.removePages(removed, 0, 1);
+        
+        long[] pageIds = cache.getPageIds();
+        Arrays.sort(pageIds);
+        assertArrayEquals(new long[]{0, 3, 21}, pageIds);
+        
+        assertEquals(0, new CacheImpl(0, 1, 1).getPageIds().length);
+    }
+    
+    @Test
+    public void test_Bank_Larger_Than_Buffer_Limit() {
+        // Single bank of 3M slots, memory is allocated only for touched segments
+        CacheImpl cache = new CacheImpl(3000000, 1, 8);
+        ByteBuffer buffer = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+        
+        assertFalse(cache.containsPage(1));
+        assertFalse(cache.getPage(374999, buffer, 0));
+        
+        // First and last sets
+        cache.putPage(1, filledPage(1), 0);
+        cache.putPage(374999, filledPage(374999), 0);
+        
+        assertTrue(cache.getPage(1, buffer, 0));
+        assertEquals(1L, buffer.getLong(PageHeader.PAGE_SIZE - 8));
+        assertTrue(cache.getPage(374999, buffer, 0));
+        assertEquals(374999L, buffer.getLong(PageHeader.PAGE_SIZE - 8));
+        assertEquals(2, cache.getPageIds().length);
+    }
+    
+    @Test
+    public void test_Concurrent_Readers_Never_See_Torn_Pages() throws Throwable {
+        // 1 set, 4 ways: 8 pages permanently compete for the same slots
+        final CacheImpl cache = new CacheImpl(4, 1, 4);
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                long counter = 0;
+                while (!stop.get()) {
+                    long pageId = 1 + (counter++ % 8);
+                    cache.putPage(pageId, filledPage(pageId), 0);
+                    if (counter % 7 == 0) {
+                        ByteBuffer removed = filledPage(pageId);
+                        PageHeader.setPageId(pageId, removed, 0);
+                        cache.removePages(removed, 0, 1);
+                    }
+                }
+            }
+        };
+        
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread() {
+                @Override
+                public void run() {
+                    ByteBuffer buffer = ByteBuffer.allocate(PageHeader.PAGE_SIZE * 2);
+                    try {
+                        for (int i = 0; i < 200000; i++) {
+                            long pageId = 1 + (i % 8);
+                            if (cache.getPage(pageId, buffer, 1)) {
+                                for (int offset = PageHeader.PAGE_SIZE; offset < PageHeader.PAGE_SIZE * 2; offset += 8) {
+                                    assertEquals(pageId, buffer.getLong(offset));
+                                }
+                            }
+                        }
+                    } catch (Throwable th) {
+                        error.compareAndSet(null, th);
+                    }
+                }
+            };
+        }
+        
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        stop.set(true);
+        writer.join();
+        
+        if (error.get() != null) {
+            throw error.get();
+        }
+        assertTrue(cache.getHits() > 0);
+    }
+    
+    private static ByteBuffer filledPage(long pageId) {
+        ByteBuffer page = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+        for (int offset = 0; offset < PageHeader.PAGE_SIZE; offset += 8) {
+            page.putLong(offset, pageId);
+        }
+        return page;
+    }
+    
+    @Test
+    public void test_Large_Records_Prefetch() throws IOException {
+        Properties props = newStorage(properties("storage.cacheSize", "500"));
+        
+        Server storage = Server.start(props);
+        try {
+            TrxSpace space = storage.startModifyTrx();
+            Record root = space.getRecord(0L);
+            for (int i = 0; i < 30; i++) {
+                Record child = space.newRecord();
+                child.setField("Large", largeValue(i));
+                child.setParent("Large", root);
+            }
+            space.commit();
+        }
+        finally {
+            storage.close();
+        }
+        
+        // Cold cache: blocks are read from data file by runs, later ones evict earlier ones
+        Server reopened = Server.start(props);
+        try {
+            for (int pass = 0; pass < 2; pass++) {
+                TrxSpace space = reopened.startReadTrx();
+                int i = 0;
+                for (Record child : space.getRecord(0L).getChildren("Large")) {
+                    assertArrayEquals(largeValue(i++), (byte[]) child.getField("Large"));
+                }
+                assertEquals(30, i);
+                space.rollback();
+            }
+        }
+        finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void test_Cache_Warmup() throws IOException {
+        Properties props = newStorage(properties("storage.cacheSize", "500", "storage.cacheWarmup", "true"));
+        
+        Path warmupFile = CacheWarmup.getPath(DATA_FILENAME);
+        UUID logId;
+        
+        Server storage = Server.start(props);
+        try {
+            TrxSpace space = storage.startModifyTrx();
+            Record root = space.getRecord(0L);
+            for (int i = 0; i < 10; i++) {
+                Record child = space.newRecord();
+                child.setField("Large", largeValue(i));
+                child.setParent("Large", root);
+            }
+            space.commit();
+        }
+        finally {
+            storage.close();
+        }
+        
+        // Ids of cached pages are saved on close
+        try (DataFile dataFile = new DataFile(DATA_FILENAME, true, true)) {
+            logId = dataFile.getLogId();
+        }
+        long[] pageIds = CacheWarmup.load(warmupFile, logId);
+        assertNotNull(pageIds);
+        assertTrue(pageIds.length > 100);
+        assertNull(CacheWarmup.load(warmupFile, UUID.randomUUID()));
+        
+        // Warmed up storage reads the same data
+        Server reopened = Server.start(props);
+        try {
+            TrxSpace space = reopened.startReadTrx();
+            int i = 0;
+            for (Record child : space.getRecord(0L).getChildren("Large")) {
+                assertArrayEquals(largeValue(i++), (byte[]) child.getField("Large"));
+            }
+            assertEquals(10, i);
+            space.rollback();
+        }
+        finally {
+            reopened.close();
+        }
+        
+        Admin.getInstance().removeStorageFiles(LOG_FILENAME, DATA_FILENAME);
+        assertFalse(Files.exists(warmupFile));
+    }
+    
+    @Test
+    public void test_Cache_Warmup_Concurrent_Commits() throws Exception {
+        final int count = 100;
+        Properties props = newStorage(properties("storage.cacheSize", "5000", "storage.cacheWarmup", "true", "storage.cacheWarmupInterval", "0", "storage.modifyBufferSize", "200"));
+        
+        long[] ids = new long[count];
+        Server storage = Server.start(props);
+        try {
+            for (int i = 0; i < count; i++) {
+                TrxSpace space = storage.startModifyTrx();
+                Record child = space.newRecord();
+                child.setField("Large", largeValue(i));
+                ids[i] = child.getId();
+                space.commit();
+            }
+        }
+        finally {
+            storage.close();
+        }
+        
+        // Records are rewritten and checkpointed while warm-up loads their old pages
+        storage = Server.start(props);
+        try {
+            for (int pass = 1; pass <= 3; pass++) {
+                for (int i = 0; i < count; i++) {
+                    TrxSpace space = storage.startModifyTrx();
+                    space.getRecord(ids[i]).setField("Large", largeValue(i + pass * count));
+                    space.commit();
+                }
+            }
+            
+            // Warm-up thread stops after loading, periodic saving is off
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if ("vyhodb cache warmup".equals(thread.getName())) {
+                    thread.join();
+                }
+            }
+            
+            // Flushes the latest images into read cache
+            for (int i = 0; i < 20; i++) {
+                TrxSpace space = storage.startModifyTrx();
+                space.newRecord();
+                space.commit();
+            }
+            
+            // Warm-up hasn't overwritten checkpointed pages with stale ones
+            TrxSpace space = storage.startReadTrx();
+            for (int i = 0; i < count; i++) {
+                assertArrayEquals(largeValue(i + 3 * count), (byte[]) space.getRecord(ids[i]).getField("Large"));
+            }
+            space.rollback();
+        }
+        finally {
+            storage.close();
+        }
+    }
+    
+    @Test
+    public void test_Stale_Pages_Not_Put() throws IOException {
+        SyncDataFile file = new SyncDataFile(new Config(newStorage(properties())));
+        try {
+            CacheImpl readCache = new CacheImpl(16, 2, 4);
+            PageVersions versions = new PageVersions();
+            ModifyCacheImpl modifyCache = new ModifyCacheImpl(file, readCache, versions, 10);
+            
+            // Page is read from data file (by warm-up or prefetch)
+            final long version = versions.getVersion(0L, 0L);
+            ByteBuffer stale = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+            file.readPage(0L, stale, 0);
+            
+            // Meanwhile newer image is committed and checkpointed
+            final ByteBuffer latest = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+            PageHeader.copyPages(stale, 0, latest, 0, 1);
+            latest.put(PageHeader.PAGE_PAYLOAD - 1, (byte) 1);
+            modifyCache.apply(new Source() {
+                @Override
+                public int read(ByteBuffer buffer, int offset, int count) {
+                    PageHeader.copyPages(latest, 0, buffer, offset, count);
+                    return count;
+                }
+                
+                @Override
+                public void close() {
+                }
+            }, 1, version + 1);
+            modifyCache.swap();
+            modifyCache.flush();
+            
+            // Stale image doesn't replace checkpointed one
+            assertFalse(modifyCache.putReadPages(stale, 0, 1, version));
+            ByteBuffer cached = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+            assertTrue(readCache.getPage(0L, cached, 0));
+            assertEquals(1, cached.get(PageHeader.PAGE_PAYLOAD - 1));
+            
+            assertTrue(modifyCache.putReadPages(cached, 0, 1, version + 1));
+        }
+        finally {
+            file.close();
+        }
+    }
+    
+    private static ByteBuffer page(long pageId) {
+        ByteBuffer page = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+        page.putLong(0, pageId);
+        return page;
+    }
+}
@@ -27,6 +27,7 @@ package com.vyhodb.storage;
 import static com.vyhodb.space.index.utils.IndexUtils.compare;
 import static com.vyhodb.space.index.utils.IndexUtils.doCreateUniqueChildren;
 import static com.vyhodb.space.index.utils.IndexUtils.doCreateUniqueChildren0;
+import static org.junit.Assert.assertFalse;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -110,6 +111,11 @@ public class Data2LogMappingTests {
             
             try {
                 test_Create_LargeChildren(storage);
+                
+                // Spilled mapping file is unmapped when modify transaction is finished
+                if (AllTests.isMappingVisible()) {
+                    assertFalse(AllTests.isMapped(directory.toString()));
+                }
             } finally {
                 Files.delete(directory);
             }
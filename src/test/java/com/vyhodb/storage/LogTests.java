@@ -0,0 +1,408 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage;
+
+import static org.junit.Assert.*;
+import static com.vyhodb.AbstractStorageTests.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.vyhodb.server.Server;
+import com.vyhodb.server.ServerClosedException;
+import com.vyhodb.server.TransactionRolledbackException;
+import com.vyhodb.server.TrxSpace;
+import com.vyhodb.space.Record;
+import com.vyhodb.space.RecordCommons;
+import com.vyhodb.storage.pagefile.DeltaPage;
+import com.vyhodb.storage.pagefile.PageFile;
+import com.vyhodb.storage.pagefile.PageHeader;
+
+public class LogTests {
+
+    @Test
+    public void test_Read_Trx_Doesnt_Block_Commit() throws IOException {
+        Server storage = startStorage(properties("storage.lock.timeout", "5"));
+        try {
+            TrxSpace modifySpace = storage.startModifyTrx();
+            modifySpace.getRecord(0L).setField("Value", 1);
+            modifySpace.commit();
+            
+            TrxSpace readSpace = storage.startReadTrx();
+            assertEquals(Integer.valueOf(1), readSpace.getRecord(0L).getField("Value"));
+            
+            // Commits while read trx is active
+            for (int i = 2; i < 10; i++) {
+                modifySpace = storage.startModifyTrx();
+                Record root = modifySpace.getRecord(0L);
+                root.setField("Value", i);
+                modifySpace.newRecord().setParent("Snapshot", root);
+                modifySpace.commit();
+            }
+            
+            // Read trx still sees its snapshot
+            assertEquals(Integer.valueOf(1), readSpace.getRecord(0L).getField("Value"));
+            assertEquals(0L, readSpace.getRecord(0L).getChildrenCount("Snapshot"));
+            readSpace.rollback();
+            
+            readSpace = storage.startReadTrx();
+            assertEquals(Integer.valueOf(9), readSpace.getRecord(0L).getField("Value"));
+            assertEquals(8L, readSpace.getRecord(0L).getChildrenCount("Snapshot"));
+            readSpace.rollback();
+        }
+        finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void test_Group_Commit() throws Exception {
+        final int threadCount = 8;
+        final int trxCount = 25;
+        
+        Properties props = newStorage(properties("storage.durable", "true", "storage.groupCommit.maxBatch", "4", "storage.groupCommit.maxWait", "500"));
+        
+        final Server storage = Server.start(props);
+        try {
+            Thread[] threads = new Thread[threadCount];
+            final Throwable[] errors = new Throwable[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                final int threadIndex = t;
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < trxCount; i++) {
+                                TrxSpace space = storage.startModifyTrx();
+                                space.newRecord().setParent("Group Commit", space.getRecord(0L));
+                                space.commit();
+                            }
+                        }
+                        catch(Throwable ex) {
+                            errors[threadIndex] = ex;
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            
+            for (int t = 0; t < threadCount; t++) {
+                threads[t].join();
+                assertNull(errors[t]);
+            }
+            
+            TrxSpace space = storage.startReadTrx();
+            assertEquals(threadCount * trxCount, space.getRecord(0L).getChildrenCount("Group Commit"));
+            space.rollback();
+        }
+        finally {
+            storage.close();
+        }
+        
+        Server reopened = Server.start(props);
+        try {
+            TrxSpace space = reopened.startReadTrx();
+            assertEquals(threadCount * trxCount, space.getRecord(0L).getChildrenCount("Group Commit"));
+            space.rollback();
+        }
+        finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void test_Background_Checkpoint_Consistent_Reads() throws Exception {
+        Properties props = newStorage(properties("storage.modifyBufferSize", "40", "storage.cacheSize", "100"));
+        
+        final Server storage = Server.start(props);
+        try {
+            final boolean[] stop = new boolean[1];
+            final Throwable[] error = new Throwable[1];
+            
+            // Reader checks that field value is always equal to children count
+            Thread reader = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (!stop[0]) {
+                            TrxSpace space = storage.startReadTrx();
+                            Record root = space.getRecord(0L);
+                            Integer value = root.getField("Value");
+                            assertEquals(value == null ? 0L : value.longValue(), root.getChildrenCount("Background"));
+                            space.rollback();
+                        }
+                    }
+                    catch(Throwable ex) {
+                        error[0] = ex;
+                    }
+                }
+            };
+            reader.start();
+            
+            for (int i = 1; i <= 300; i++) {
+                TrxSpace space = storage.startModifyTrx();
+                Record root = space.getRecord(0L);
+                root.setField("Value", i);
+                Record child = space.newRecord();
+                RecordCommons.setPrivitiveFields(child);
+                child.setParent("Background", root);
+                space.commit();
+            }
+            
+            stop[0] = true;
+            reader.join();
+            assertNull(error[0]);
+        }
+        finally {
+            storage.close();
+        }
+        
+        Server reopened = Server.start(props);
+        try {
+            TrxSpace space = reopened.startReadTrx();
+            assertEquals(300L, space.getRecord(0L).getChildrenCount("Background"));
+            space.rollback();
+        }
+        finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void test_Background_Checkpoint_Leaked_Reader() throws Exception {
+        Properties props = newStorage(properties("storage.modifyBufferSize", "40", "storage.lock.timeout", "1"));
+        
+        Server storage = Server.start(props);
+        try {
+            // Read transaction is never finished
+            storage.startReadTrx().getRecord(0L);
+            
+            // Checkpoints don't wait for it longer than lock timeout
+            for (int i = 1; i <= 30; i++) {
+                TrxSpace space = storage.startModifyTrx();
+                Record child = space.newRecord();
+                RecordCommons.setPrivitiveFields(child);
+                child.setParent("Leaked", space.getRecord(0L));
+                space.commit();
+            }
+        }
+        finally {
+            storage.close();
+        }
+        
+        try {
+            storage.startReadTrx();
+            fail("Read transaction has been started on closed server");
+        }
+        catch(ServerClosedException ex) {
+        }
+        
+        Server reopened = Server.start(props);
+        try {
+            TrxSpace space = reopened.startReadTrx();
+            assertEquals(30L, space.getRecord(0L).getChildrenCount("Leaked"));
+            space.rollback();
+        }
+        finally {
+            reopened.close();
+        }
+    }
+    
+    @Test
+    public void test_Background_Checkpoint_Stale_Reader() throws Exception {
+        Server storage = startStorage(properties("storage.modifyBufferSize", "40", "storage.lock.timeout", "1"));
+        try {
+            TrxSpace space = storage.startModifyTrx();
+            Record child = space.newRecord();
+            child.setField("Large", largeValue(1));
+            child.setParent("Stale", space.getRecord(0L));
+            space.commit();
+            
+            TrxSpace readSpace = storage.startReadTrx();
+            assertEquals(1L, readSpace.getRecord(0L).getChildrenCount("Stale"));
+            
+            // Checkpoint doesn't wait for reader longer than half of lock timeout
+            for (int i = 0; i < 30; i++) {
+                space = storage.startModifyTrx();
+                Record next = space.newRecord();
+                RecordCommons.setPrivitiveFields(next);
+                next.setParent("Stale", space.getRecord(0L));
+                space.commit();
+            }
+            
+            // Reader's snapshot is invalidated, so it doesn't read newer pages
+            try {
+                readSpace.getRecord(child.getId()).getField("Large");
+                fail("Stale reader has read pages after checkpoint");
+            }
+            catch(TransactionRolledbackException ex) {
+            }
+            
+            // New readers aren't affected
+            readSpace = storage.startReadTrx();
+            assertEquals(31L, readSpace.getRecord(0L).getChildrenCount("Stale"));
+            readSpace.rollback();
+        }
+        finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void test_Unchanged_Pages_Not_Logged() throws IOException {
+        ServerImpl storage = (ServerImpl) startStorage(properties());
+        try {
+            TrxSpace space = storage.startModifyTrx();
+            Record record = space.newRecord();
+            record.setField("Field", "value");
+            space.commit();
+            
+            // Record is rewritten with the same content
+            long next = storage.getNext();
+            space = storage.startModifyTrx();
+            space.getRecord(record.getId()).setField("Field", "value");
+            space.commit();
+            assertEquals("Unchanged page has been logged", next, storage.getNext());
+            
+            space = storage.startModifyTrx();
+            space.getRecord(record.getId()).setField("Field", "new value");
+            space.commit();
+            assertEquals(next + 1, storage.getNext());
+            
+            space = storage.startReadTrx();
+            assertEquals("new value", space.getRecord(record.getId()).getField("Field"));
+            space.rollback();
+        }
+        finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void test_Delta_Pages_Logged() throws IOException {
+        final int count = 40;
+        final long[] ids = new long[count];
+        final char[] filler = new char[PageHeader.PAGE_PAYLOAD * 2 / 3];
+        Arrays.fill(filler, 'x');
+        
+        Properties props = newStorage(properties());
+        ServerImpl storage = (ServerImpl) Server.start(props);
+        try {
+            TrxSpace space = storage.startModifyTrx();
+            Record record;
+            for (int i = 0; i < count; i++) {
+                record = space.newRecord();
+                record.setField("Filler", new String(filler));
+                record.setField("Counter", 0);
+                ids[i] = record.getId();
+            }
+            space.commit();
+            
+            // Every record is larger than half of page, so at least [count / 2] data pages 
+            // are changed, their deltas are packed into few log pages
+            long next = storage.getNext();
+            space = storage.startModifyTrx();
+            for (int i = 0; i < count; i++) {
+                space.getRecord(ids[i]).setField("Counter", 1);
+            }
+            space.commit();
+            assertTrue("Full page images have been logged", storage.getNext() - next < count / 4);
+            
+            space = storage.startReadTrx();
+            for (int i = 0; i < count; i++) {
+                assertEquals(Integer.valueOf(1), space.getRecord(ids[i]).getField("Counter"));
+            }
+            space.rollback();
+        }
+        finally {
+            storage.close();
+        }
+        
+        // Checkpointed pages
+        storage = (ServerImpl) Server.start(props);
+        try {
+            TrxSpace space = storage.startReadTrx();
+            for (int i = 0; i < count; i++) {
+                assertEquals(Integer.valueOf(1), space.getRecord(ids[i]).getField("Counter"));
+                assertEquals(new String(filler), space.getRecord(ids[i]).getField("Filler"));
+            }
+            space.rollback();
+        }
+        finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void test_Delta_Page_Applier() throws IOException {
+        Path path = Files.createTempFile("vyhodb", ".pages");
+        Files.delete(path);
+        
+        PageFile file = new PageFile(path.toString(), false);
+        try {
+            ByteBuffer original = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+            PageHeader.setPageId(0L, original, 0);
+            file.position(0L);
+            file.write(original, 0, 1);
+            
+            ByteBuffer page = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+            PageHeader.copyPages(original, 0, page, 0, 1);
+            page.put(10, (byte) 1);
+            page.put(13, (byte) 2);
+            page.put(PageHeader.PAGE_PAYLOAD - 1, (byte) 3);
+            
+            // Delta page is applied to page of file
+            ByteBuffer record = ByteBuffer.allocate(DeltaPage.MAX_RECORD);
+            assertTrue(DeltaPage.diff(0L, original, page, record) > 0);
+            ByteBuffer delta = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+            DeltaPage.init(UUID.randomUUID(), delta, 0);
+            assertTrue(DeltaPage.append(record, delta, 0));
+            file.getApplier().write(delta, 0, 1);
+            
+            ByteBuffer result = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+            file.position(0L);
+            file.read(result, 0, 1);
+            for (int i = 0; i < PageHeader.PAGE_PAYLOAD; i++) {
+                assertEquals(page.get(i), result.get(i));
+            }
+            
+            // Delta larger than half of page isn't built
+            for (int i = 0; i < PageHeader.PAGE_PAYLOAD; i++) {
+                page.put(i, (byte) 7);
+            }
+            assertEquals(-1, DeltaPage.diff(0L, original, page, record));
+        }
+        finally {
+            file.delete();
+        }
+    }
+}
@@ -24,6 +24,7 @@
 
 package com.vyhodb.storage;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -34,6 +35,9 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
@@ -132,6 +136,145 @@ public class RecoveryTests {
         }
     }
     
+    /**
+     * Tests recovery of transactions, which changes are logged as delta pages.
+     * 
+     * Steps:
+     * 1. Starts stand-alone server, modify buffer is large enough to prevent checkpoint.
+     * 2. RSI. Creates records and then changes single field of each record several times,
+     *    pages are already in modify buffer, so their changes are logged as deltas.
+     * 3. Kills stand-alone server.
+     * 4. Opens storage locally and checks that the latest field values are recovered.
+     * 
+     * @throws Exception 
+     */
+    @Test
+    public void test_Recovery_Delta_Pages_Successful() throws Exception {
+        Admin admin = Admin.getInstance();
+        admin.removeStorageFiles(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
+        admin.newStorage(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
+        
+        Properties props = AbstractStorageTests.generateDefaultProperties(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
+        props.setProperty("rsi.enabled", "true");
+        props.setProperty("storage.cacheSize", "1000");
+        props.setProperty("storage.modifyBufferSize", "40000");    // Prevents from checkpoint
+        props.setProperty("storage.logBufferSize", "1000");
+        props.setProperty("space.record.modifyCacheSize", "50");
+        
+        try (FileOutputStream out = new FileOutputStream(PROPERTY_FILE_PATH)) {
+            props.store(out, "");
+        }
+        
+        Process vyhodb = null;
+        Server recoveredStorage = null;
+        try {
+            vyhodb = startVyhodb();
+            Thread.sleep(3000);     // wait for starting server
+            
+            // Obtains connection
+            Connection connection = ConnectionFactory.newConnection("tcp://localhost:47777/");
+            RecoveryTestsService service = connection.getService(RecoveryTestsService.class);
+            
+            // Creates records and updates them
+            service.createIndex();
+            service.addRecords(500);
+            for (int i = 1; i <= 5; i++) {
+                service.updateRecords(i);
+            }
+            
+            // Kills server
+            kill(vyhodb);
+            
+            // Starts storage and checks data
+            props.setProperty("rsi.enabled", "false");
+            recoveredStorage = Server.start(props);
+            TrxSpace space = recoveredStorage.startReadTrx();
+            check(space, 500);
+            for (Record child : space.getRecord(0L).getChildren(RecoveryTestsService.LINK_NAME)) {
+                assertEquals(Integer.valueOf(5), child.getField(RecoveryTestsService.COUNTER_FIELD_NAME));
+            }
+            space.rollback();
+        }
+        finally {
+            if (vyhodb != null) {
+                kill(vyhodb);
+            }
+            
+            if (recoveredStorage != null) {
+                recoveredStorage.close();
+            }
+        }
+    }
+    
+    /**
+     * Tests successful recovery after background checkpoints.
+     * 
+     * Steps:
+     * 0. Creates storage.
+     * 1. Starts stand-alone server.
+     * 2. RSI. Creates several transactions, each of them fits into modify buffer half, 
+     *    so modify buffer halves are swapped and checkpointed in background.
+     * 3. Kills stand-alone server.
+     * 4. Opens storage locally and check data.
+     * 
+     * @throws Exception 
+     */
+    @Test
+    public void test_Recovery_After_Background_Checkpoint_Successful() throws Exception {
+        Admin admin = Admin.getInstance();
+        admin.removeStorageFiles(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
+        admin.newStorage(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
+        
+        Properties props = AbstractStorageTests.generateDefaultProperties(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
+        props.setProperty("rsi.enabled", "true");
+        props.setProperty("storage.cacheSize", "1000");
+        props.setProperty("storage.modifyBufferSize", "400");
+        props.setProperty("storage.logBufferSize", "1000");
+        props.setProperty("space.record.modifyCacheSize", "50");
+        
+        try (FileOutputStream out = new FileOutputStream(PROPERTY_FILE_PATH)) {
+            props.store(out, "");
+        }
+        
+        Process vyhodb = null;
+        Server recoveredStorage = null;
+        try {
+            vyhodb = startVyhodb();
+            Thread.sleep(3000);     // wait for starting server
+            
+            // Obtains connection
+            Connection connection = ConnectionFactory.newConnection("tcp://localhost:47777/");
+            RecoveryTestsService service = connection.getService(RecoveryTestsService.class);
+            
+            // Creates index
+            service.createIndex();
+            
+            // Creates records
+            for (int i = 0; i < 10; i++) {
+                service.addRecords(60);
+            }
+            
+            // Kills server
+            kill(vyhodb);
+            
+            // Starts storage and checks data
+            props.setProperty("rsi.enabled", "false");
+            recoveredStorage = Server.start(props);
+            TrxSpace space = recoveredStorage.startReadTrx();
+            check(space, 600);
+            space.rollback();
+        }
+        finally {
+            if (vyhodb != null) {
+                kill(vyhodb);
+            }
+            
+            if (recoveredStorage != null) {
+                recoveredStorage.close();
+            }
+        }
+    }
+    
     /**
      * Test successful recovery after first transaction in storage.
      * 
@@ -205,6 +348,74 @@ public class RecoveryTests {
         
     }
     
+    /**
+     * Tests recovery of many transactions which rewrite the same pages (root record, 
+     * index nodes), so only the latest page images must get into data file. Recovered 
+     * pages span several recovery batches.
+     * 
+     * Steps:
+     * 0. Creates storage.
+     * 1. Starts stand-alone server.
+     * 2. RSI. Creates index and adds records by 25 transactions.
+     * 3. Kills stand-alone server.
+     * 4. Opens storage locally and checks data.
+     * 
+     * @throws Exception 
+     */
+    @Test
+    public void test_Recovery_Many_Transactions_Successful() throws Exception {
+        Admin admin = Admin.getInstance();
+        admin.removeStorageFiles(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
+        admin.newStorage(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
+        
+        Properties props = AbstractStorageTests.generateDefaultProperties(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
+        props.setProperty("rsi.enabled", "true");
+        props.setProperty("storage.cacheSize", "1000");
+        props.setProperty("storage.modifyBufferSize", "40000");    // Prevents from checkpoint
+        props.setProperty("storage.logBufferSize", "2000");
+        props.setProperty("space.record.modifyCacheSize", "50");
+        
+        try (FileOutputStream out = new FileOutputStream(PROPERTY_FILE_PATH)) {
+            props.store(out, "");
+        }
+        
+        Process vyhodb = null;
+        Server recoveredStorage = null;
+        try {
+            vyhodb = startVyhodb();
+            Thread.sleep(3000);     // wait for starting server
+            
+            // Obtains connection
+            Connection connection = ConnectionFactory.newConnection("tcp://localhost:47777/");
+            RecoveryTestsService service = connection.getService(RecoveryTestsService.class);
+            
+            // Creates index and records
+            service.createIndex();
+            for (int i = 0; i < 25; i++) {
+                service.addRecords(200);
+            }
+            
+            // Kills server
+            kill(vyhodb);
+            
+            // Starts storage and checks data
+            props.setProperty("rsi.enabled", "false");
+            recoveredStorage = Server.start(props);
+            TrxSpace space = recoveredStorage.startReadTrx();
+            check(space, 5000);
+            space.rollback();
+        }
+        finally {
+            if (vyhodb != null) {
+                kill(vyhodb);
+            }
+            
+            if (recoveredStorage != null) {
+                recoveredStorage.close();
+            }
+        }
+    }
+    
     
     /**
      * Large uncommitted transaction should be completely rolled back during recovery process.
@@ -411,8 +622,8 @@ public class RecoveryTests {
             // Kills server
             kill(vyhodb);
             
-            // Truncate log
-            try (FileChannel fc = FileChannel.open(Paths.get(AbstractStorageTests.LOG_FILENAME), StandardOpenOption.WRITE)) {
+            // Truncate last log segment
+            try (FileChannel fc = FileChannel.open(getLastLogSegment(), StandardOpenOption.WRITE)) {
                 fc.truncate(fc.size() - 500);
             }
             
@@ -578,6 +789,23 @@ public class RecoveryTests {
         assertFalse(indexIter.hasNext());
     }
     
+    private static Path getLastLogSegment() throws IOException {
+        Path logPath = Paths.get(AbstractStorageTests.LOG_FILENAME).toAbsolutePath();
+        String prefix = logPath.getFileName().toString() + ".";
+        
+        Path last = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(logPath.getParent(), prefix + "*")) {
+            for (Path path : stream) {
+                if (last == null || path.getFileName().toString().compareTo(last.getFileName().toString()) > 0) {
+                    last = path;
+                }
+            }
+        }
+        
+        assertNotNull("Log has no segments", last);
+        return last;
+    }
+    
     private void kill(Process process) throws Exception {
 //        ProcessHandle handle = process.toHandle();
 //        handle.destroyForcibly();
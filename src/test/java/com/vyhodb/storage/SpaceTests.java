@@ -0,0 +1,429 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015-present Igor Vykhodtsev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vyhodb.storage;
+
+import static org.junit.Assert.*;
+import static com.vyhodb.AbstractStorageTests.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.vyhodb.server.Server;
+import com.vyhodb.server.TrxSpace;
+import com.vyhodb.space.CriterionFactory;
+import com.vyhodb.space.IndexDescriptor;
+import com.vyhodb.space.IndexedField;
+import com.vyhodb.space.Nullable;
+import com.vyhodb.space.Record;
+import com.vyhodb.storage.pagefile.PageHeader;
+import com.vyhodb.storage.pagestorage.PageTrx;
+import com.vyhodb.storage.rm.BlockManager;
+import com.vyhodb.storage.space.RecordContainer;
+import com.vyhodb.storage.space.SpaceInternal;
+
+public class SpaceTests {
+
+    @Test
+    public void test_Record_Cache() throws IOException {
+        Server storage = startStorage(properties("space.record.readCacheSize", "100"));
+        try {
+            TrxSpace modifySpace = storage.startModifyTrx();
+            Record root = modifySpace.getRecord(0L);
+            root.createIndex(new IndexDescriptor("Ref.Name", "Ref", new IndexedField("Name", String.class, Nullable.NULL)));
+            for (int i = 0; i < 10; i++) {
+                Record child = modifySpace.newRecord();
+                child.setField("Name", "Name" + i);
+                child.setParent("Ref", root);
+            }
+            modifySpace.commit();
+            
+            // Cached records are bound to reading space
+            for (int pass = 0; pass < 2; pass++) {
+                TrxSpace readSpace = storage.startReadTrx();
+                Record readRoot = readSpace.getRecord(0L);
+                assertSame(readSpace, readRoot.getSpace());
+                assertEquals(10L, readRoot.getChildrenCount("Ref"));
+                Record found = readRoot.searchChildren("Ref.Name", CriterionFactory.equal("Name5")).iterator().next();
+                assertEquals("Name5", found.getField("Name"));
+                assertSame(readSpace, found.getSpace());
+                readSpace.rollback();
+            }
+            
+            TrxSpace oldSpace = storage.startReadTrx();
+            long childId = oldSpace.getRecord(0L).getChildren("Ref").iterator().next().getId();
+            assertEquals("Name0", oldSpace.getRecord(childId).getField("Name"));
+            
+            modifySpace = storage.startModifyTrx();
+            modifySpace.getRecord(childId).setField("Name", "Changed");
+            modifySpace.commit();
+            
+            // New snapshot doesn't see stale entry, old one doesn't see entry cached by new one
+            TrxSpace newSpace = storage.startReadTrx();
+            assertEquals("Changed", newSpace.getRecord(childId).getField("Name"));
+            assertEquals("Name0", oldSpace.getRecord(childId).getField("Name"));
+            assertEquals("Changed", newSpace.getRecord(childId).getField("Name"));
+            newSpace.rollback();
+            oldSpace.rollback();
+        }
+        finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void test_Record_Cache_Lazy_Views() throws IOException {
+        Server storage = startStorage(properties("space.record.readCacheSize", "100"));
+        try {
+            TrxSpace modifySpace = storage.startModifyTrx();
+            Record record = modifySpace.newRecord();
+            record.setField("Name", "Lazy");
+            record.setField("Code", 42L);
+            record.setField("Note", "Skipped");
+            record.setParent("Ref", modifySpace.getRecord(0L));
+            long id = record.getId();
+            modifySpace.commit();
+            
+            // Cache miss: record is cached before it's decoded
+            TrxSpace first = storage.startReadTrx();
+            RecordContainer firstView = (RecordContainer) ((SpaceInternal) first).get(id);
+            assertEquals("Lazy", firstView.getField("Name"));
+            assertEquals(0L, firstView.getParent("Ref").getId());
+            
+            // Cache hit: view doesn't inherit state decoded by other transaction
+            TrxSpace second = storage.startReadTrx();
+            RecordContainer secondView = (RecordContainer) ((SpaceInternal) second).get(id);
+            assertNotSame(firstView, secondView);
+            assertFalse(secondView.isFieldDecoded("Name"));
+            assertFalse(secondView.isLinksDecoded());
+            
+            assertEquals(Long.valueOf(42L), secondView.getField("Code"));
+            assertTrue(secondView.isFieldDecoded("Code"));
+            assertFalse(secondView.isFieldDecoded("Name"));
+            assertFalse(secondView.isFieldDecoded("Note"));
+            assertFalse(secondView.isLinksDecoded());
+            
+            assertEquals(0L, secondView.getParent("Ref").getId());
+            assertTrue(secondView.isLinksDecoded());
+            assertFalse(secondView.isFieldDecoded("Note"));
+            
+            first.rollback();
+            second.rollback();
+        }
+        finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void test_Free_Blocks_Reused() throws IOException {
+        Server storage = startStorage(properties());
+        try {
+            // Block of removed record
+            TrxSpace space = storage.startModifyTrx();
+            Record removed = space.newRecord();
+            removed.setField("Large", largeValue(1));
+            space.commit();
+            
+            space = storage.startModifyTrx();
+            space.getRecord(removed.getId()).delete();
+            space.commit();
+            
+            space = storage.startModifyTrx();
+            Record reusing = space.newRecord();
+            reusing.setField("Large", largeValue(2));
+            space.commit();
+            
+            // Only descriptor has been appended for [reusing] record
+            space = storage.startModifyTrx();
+            Record next = space.newRecord();
+            assertEquals(reusing.getId() + 11, next.getId());
+            
+            // Outgrown block
+            next.setField("Small", "small");
+            space.commit();
+            
+            space = storage.startModifyTrx();
+            space.getRecord(next.getId()).setField("Large", largeValue(3));
+            space.commit();
+            
+            space = storage.startModifyTrx();
+            Record small = space.newRecord();
+            small.setField("Small", "small");
+            space.commit();
+            
+            // [small] reuses outgrown block of [next]
+            space = storage.startModifyTrx();
+            assertEquals(small.getId() + 11, space.newRecord().getId());
+            space.rollback();
+            
+            space = storage.startReadTrx();
+            assertNull(space.getRecord(removed.getId()));
+            assertArrayEquals(largeValue(2), (byte[]) space.getRecord(reusing.getId()).getField("Large"));
+            assertArrayEquals(largeValue(3), (byte[]) space.getRecord(next.getId()).getField("Large"));
+            assertEquals("small", space.getRecord(next.getId()).getField("Small"));
+            assertEquals("small", space.getRecord(small.getId()).getField("Small"));
+            space.rollback();
+        }
+        finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void test_Dictionary() throws IOException {
+        Properties props = newStorage(properties("space.dictionary.autoSize", "3"));
+        
+        long id;
+        Server storage = Server.start(props);
+        try {
+            TrxSpace space = storage.startModifyTrx();
+            Record record = space.newRecord();
+            record.setField("Name 1", "Value 1");
+            record.setField("Name 2", 2L);
+            id = record.getId();
+            space.commit();
+            
+            // Interned name is discarded on rollback
+            space = storage.startModifyTrx();
+            space.getRecord(id).setField("Rolled back", "Lost");
+            space.rollback();
+            
+            // Dictionary is full after "Name 3", so "Name 4" is stored inline
+            space = storage.startModifyTrx();
+            record = space.getRecord(id);
+            record.setField("Name 3", 3);
+            record.setField("Name 4", "Value 4");
+            space.commit();
+            
+            space = storage.startReadTrx();
+            record = space.getRecord(id);
+            assertEquals("Value 1", record.getField("Name 1"));
+            assertNull(record.getField("Rolled back"));
+            space.rollback();
+        }
+        finally {
+            storage.close();
+        }
+        
+        Server reopened = Server.start(props);
+        try {
+            TrxSpace space = reopened.startReadTrx();
+            checkDictionaryRecord(space.getRecord(id), 4);
+            space.rollback();
+            
+            space = reopened.startModifyTrx();
+            Record record = space.getRecord(id);
+            checkDictionaryRecord(record, 4);
+            record.setField("Name 5", "Value 5");
+            space.commit();
+            
+            space = reopened.startReadTrx();
+            record = space.getRecord(id);
+            checkDictionaryRecord(record, 5);
+            assertEquals("Value 5", record.getField("Name 5"));
+            space.rollback();
+        }
+        finally {
+            reopened.close();
+        }
+    }
+
+    private static void checkDictionaryRecord(Record record, int fieldCount) {
+        assertEquals(fieldCount, record.getFieldNames().size());
+        assertEquals("Value 1", record.getField("Name 1"));
+        assertEquals(Long.valueOf(2L), record.getField("Name 2"));
+        assertEquals(Integer.valueOf(3), record.getField("Name 3"));
+        assertEquals("Value 4", record.getField("Name 4"));
+        assertNull(record.getField("Rolled back"));
+    }
+
+    @Test
+    public void test_Modify_Cache_Eviction() throws IOException {
+        Server storage = startStorage(properties("space.record.modifyCacheSize", "10"));
+        try {
+            // Root is used all the time, children are evicted and written back
+            TrxSpace space = storage.startModifyTrx();
+            Record root = space.getRecord(0L);
+            for (int i = 0; i < 200; i++) {
+                Record child = space.newRecord();
+                child.setField("Value", i);
+                child.setParent("Eviction", root);
+                root.setField("Count", i + 1);
+            }
+            
+            // Evicted dirty children are read back
+            int i = 0;
+            for (Record child : root.getChildren("Eviction")) {
+                assertEquals(Integer.valueOf(i), child.getField("Value"));
+                child.setField("Value", i * 2);
+                i++;
+            }
+            assertEquals(200, i);
+            space.commit();
+            
+            // Written back containers are discarded on rollback
+            space = storage.startModifyTrx();
+            root = space.getRecord(0L);
+            for (Record child : root.getChildren("Eviction")) {
+                child.setField("Value", -1);
+            }
+            root.setField("Count", -1);
+            space.rollback();
+            
+            space = storage.startReadTrx();
+            root = space.getRecord(0L);
+            assertEquals(Integer.valueOf(200), root.getField("Count"));
+            i = 0;
+            for (Record child : root.getChildren("Eviction")) {
+                assertEquals(Integer.valueOf(i * 2), child.getField("Value"));
+                i++;
+            }
+            assertEquals(200, i);
+            space.rollback();
+        }
+        finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void test_Block_Locality() {
+        MemoryPageTrx pageTrx = new MemoryPageTrx();
+        BlockManager.initSpaceHeader(pageTrx.getPageForModify(0L));
+        BlockManager bm = new BlockManager(pageTrx);
+        
+        final long parent = bm.allocate(block(128), 0, BlockManager.NO_FREE_BLOCK);
+        
+        // First child reserves extent
+        long prev = bm.allocate(block(128), 0, parent);
+        for (int i = 0; i < 5; i++) {
+            // Unrelated blocks of other slot type are appended in between
+            bm.allocate(block(256), 1, BlockManager.NO_FREE_BLOCK);
+            
+            long child = bm.allocate(block(128), 0, prev);
+            assertEquals("Child isn't placed next to previous sibling", prev + 128, child);
+            prev = child;
+        }
+        
+        // Free block near hint is preferred to list head
+        bm.free(parent, 0);
+        long far = bm.allocate(block(256), 1, BlockManager.NO_FREE_BLOCK);
+        bm.free(far, 1);
+        bm.free(far - 1024, 1);
+        assertEquals(far, bm.allocate(block(256), 1, far + 256));
+        assertEquals(parent, bm.allocate(block(128), 0, BlockManager.NO_FREE_BLOCK));
+    }
+
+    @Test
+    public void test_Free_Blocks_Coalesced() {
+        MemoryPageTrx pageTrx = new MemoryPageTrx();
+        BlockManager.initSpaceHeader(pageTrx.getPageForModify(0L));
+        BlockManager bm = new BlockManager(pageTrx);
+        
+        long[] blocks = new long[4];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = bm.allocate(block(128), 0, BlockManager.NO_FREE_BLOCK);
+        }
+        final long tail = bm.allocate(block(128), 0, BlockManager.NO_FREE_BLOCK);
+        
+        bm.free(blocks[2], 0);
+        bm.free(blocks[0], 0);
+        bm.free(blocks[3], 0);
+        bm.free(blocks[1], 0);
+        
+        // Two pairs of 128 byte blocks and then the pair of merged ones
+        assertEquals(3, bm.coalesce());
+        assertEquals(blocks[0], bm.allocate(block(512), 2, BlockManager.NO_FREE_BLOCK));
+        assertEquals("Merged blocks are left in free list", tail + 128, bm.allocate(block(128), 0, BlockManager.NO_FREE_BLOCK));
+        
+        bm.free(tail + 128, 0);
+        bm.free(tail, 0);
+        assertEquals(256, bm.trimTail());
+        assertEquals(tail, bm.getAllocator());
+        
+        bm.free(blocks[0], 2);
+        assertEquals(BlockManager.NO_FREE_BLOCK, bm.takeFreeBelow(blocks[0], 2));
+        assertEquals(blocks[0], bm.takeFreeBelow(tail, 2));
+    }
+    
+    private static ByteBuffer block(int size) {
+        return ByteBuffer.allocate(size);
+    }
+    
+    /**
+     * Page transaction over pages kept in memory.
+     */
+
+    private static class MemoryPageTrx implements PageTrx {
+        private final HashMap<Long, ByteBuffer> _pages = new HashMap<>();
+        
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void rollback() {
+        }
+
+        @Override
+        public ByteBuffer getPage(long pageId) {
+            ByteBuffer page = _pages.get(pageId);
+            if (page == null) {
+                page = ByteBuffer.allocate(PageHeader.PAGE_SIZE);
+                _pages.put(pageId, page);
+            }
+            
+            page.clear();
+            page.limit(PageHeader.PAGE_PAYLOAD);
+            return page;
+        }
+
+        @Override
+        public void read(long pageId, int offset, ByteBuffer destBuffer) {
+            PageHeader.copyPayload(getPage(pageId), 0, offset, destBuffer);
+        }
+
+        @Override
+        public void prefetch(long pageId, int count) {
+        }
+
+        @Override
+        public ByteBuffer getPageForModify(long pageId) {
+            return getPage(pageId);
+        }
+        
+        @Override
+        public void truncate(long dataLength) {
+        }
+    }
+}
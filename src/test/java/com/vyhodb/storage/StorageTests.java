@@ -25,14 +25,16 @@
 package com.vyhodb.storage;
 
 import static org.junit.Assert.*;
+import static com.vyhodb.AbstractStorageTests.*;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.Properties;
 
 import org.junit.Test;
 
-import com.vyhodb.AbstractStorageTests;
+import com.vyhodb.AllTests;
 import com.vyhodb.admin.Admin;
 import com.vyhodb.server.Server;
 import com.vyhodb.server.ServerClosedException;
@@ -44,11 +46,7 @@ public class StorageTests {
 
     @Test
     public void test_Corruppted_Storage() throws IOException {
-        Admin admin = Admin.getInstance();
-        admin.removeStorageFiles(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
-        admin.newStorage(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
-
-        Properties props = AbstractStorageTests.generateDefaultProperties(AbstractStorageTests.LOG_FILENAME, AbstractStorageTests.DATA_FILENAME);
+        Properties props = newStorage(properties());
         
         // Writes some records into storage
         {
@@ -82,9 +80,130 @@ public class StorageTests {
             assertTrue(storage.isClosed());
         }
     }
-    
+
+    @Test
+    public void test_Mapped_Data_File() throws IOException {
+        Properties props = newStorage(properties("storage.dataMapped", "true", "storage.modifyBufferSize", "40", "storage.cacheSize", "0"));
+        
+        Server storage = Server.start(props);
+        try {
+            for (int i = 1; i <= 100; i++) {
+                TrxSpace space = storage.startModifyTrx();
+                Record root = space.getRecord(0L);
+                Record child = space.newRecord();
+                RecordCommons.setPrivitiveFields(child);
+                child.setParent("Mapped", root);
+                space.commit();
+                
+                // Data file grows, pages beyond mapped part are read after remapping
+                space = storage.startReadTrx();
+                assertEquals(i, space.getRecord(0L).getChildrenCount("Mapped"));
+                space.rollback();
+            }
+        }
+        finally {
+            storage.close();
+        }
+        
+        // Segments are unmapped on closing
+        if (AllTests.isMappingVisible()) {
+            assertFalse(AllTests.isMapped(DATA_FILENAME));
+        }
+        
+        Server reopened = Server.start(props);
+        try {
+            TrxSpace space = reopened.startReadTrx();
+            assertEquals(100L, space.getRecord(0L).getChildrenCount("Mapped"));
+            for (Record child : space.getRecord(0L).getChildren("Mapped")) {
+                RecordCommons.checkPrimitiveFields(space, child.getId());
+            }
+            space.rollback();
+        }
+        finally {
+            reopened.close();
+        }
+        
+        // Corrupted page is detected
+        corrupt();
+        Server corrupted = Server.start(props);
+        try {
+            TrxSpace space = corrupted.startReadTrx();
+            space.getRecord(0L);
+            fail("Storage can operate on corrupted pages.");
+        }
+        catch(ServerClosedException sce) {
+        }
+        
+        assertTrue(corrupted.isClosed());
+    }
+
+    @Test
+    public void test_Page_Size() throws Exception {
+        // Page size is set for whole JVM, so storage with large pages is created and used in another JVM
+        Process process = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-Dcom.vyhodb.pageSize=4096",
+                "-cp", System.getProperty("java.class.path"),
+                LargePageStorage.class.getName(),
+                LOG_FILENAME,
+                DATA_FILENAME)
+            .inheritIO()
+            .start();
+        assertEquals("Storage with 4096 byte pages doesn't work", 0, process.waitFor());
+        
+        // Storage can't be opened with other page size
+        Properties props = generateDefaultProperties(LOG_FILENAME, DATA_FILENAME);
+        try {
+            Server.start(props).close();
+            fail("Storage with 4096 byte pages has been opened with 1024 byte pages");
+        }
+        catch(IOException ex) {
+            Throwable cause = ex;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            assertTrue(cause.getMessage(), cause.getMessage().contains("page size 4096"));
+        }
+    }
+
+    public static class LargePageStorage {
+        public static void main(String[] args) throws Exception {
+            Admin admin = Admin.getInstance();
+            admin.removeStorageFiles(args[0], args[1]);
+            admin.newStorage(args[0], args[1]);
+            
+            Properties props = generateDefaultProperties(args[0], args[1]);
+            props.setProperty("storage.modifyBufferSize", "10");
+            
+            Server storage = Server.start(props);
+            for (int i = 0; i < 50; i++) {
+                TrxSpace space = storage.startModifyTrx();
+                Record root = space.getRecord(0L);
+                Record child = space.newRecord();
+                RecordCommons.setPrivitiveFields(child);
+                child.setField("Large", new byte[3000]);
+                child.setParent("Large Pages", root);
+                space.commit();
+            }
+            storage.close();
+            
+            storage = Server.start(props);
+            TrxSpace space = storage.startReadTrx();
+            Record root = space.getRecord(0L);
+            int count = 0;
+            for (Record child : root.getChildren("Large Pages")) {
+                RecordCommons.checkPrimitiveFields(space, child.getId());
+                count++;
+            }
+            space.rollback();
+            storage.close();
+            
+            System.exit(count == 50 ? 0 : 1);
+        }
+    }
+
     private void corrupt() throws IOException {
-        RandomAccessFile file = new RandomAccessFile(AbstractStorageTests.DATA_FILENAME, "rw");
+        RandomAccessFile file = new RandomAccessFile(DATA_FILENAME, "rw");
         try {
             file.seek(1750);
             file.write(new byte[]{67, 68, 69, 70, -70, -69, -68, -67});
@@ -33,6 +33,7 @@ public interface RecoveryTestsService {
     public final static String INDEX_NAME = "Index_Recovery";
     public final static String LINK_NAME = "Link_Recovery";
     public final static String RANDOM_FIELD_NAME = "Random";
+    public final static String COUNTER_FIELD_NAME = "Counter";
     
     @Modify
     public void createIndex();
@@ -45,4 +46,7 @@ public interface RecoveryTestsService {
     
     @Modify
     public void addRecordsAndPause(int count, long pause);
+    
+    @Modify
+    public void updateRecords(int counter);
 }
@@ -71,6 +71,14 @@ public class RecoveryTestsServiceImpl implements RecoveryTestsService, ServiceLi
         }
     }
 
+    @Override
+    public void updateRecords(int counter) {
+        Record root = _space.getRecord(0L);
+        for (Record child : root.getChildren(LINK_NAME)) {
+            child.setField(COUNTER_FIELD_NAME, counter);
+        }
+    }
+
     @Override
     public void setSpace(Space space) {
         _space = space;